@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Runs the body of a test concurrently on several threads against the same
+ * embedded framework, example:
+ *
+ * <pre>
+ * &#64;Test
+ * &#64;ConcurrentStress(threads = 8, iterations = 1000)
+ * void testService() {
+ *
+ * }
+ * </pre>
+ * 
+ * Each thread invokes the test method the given number of times on the same
+ * test instance, <code>FrameworkUtil</code> lookups on these threads resolve
+ * against the framework of the test. The throughput and latency percentiles
+ * are published as report entries, the test fails with the first failure of
+ * any invocation. Before and after each callbacks run only once around all
+ * invocations.
+ */
+@Target({
+	ElementType.METHOD
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+public @interface ConcurrentStress {
+
+	/**
+	 * @return the number of threads invoking the test concurrently
+	 */
+	int threads() default 4;
+
+	/**
+	 * @return the number of invocations per thread
+	 */
+	int iterations() default 100;
+
+	/**
+	 * @return <code>true</code> if virtual threads should be used, on JVMs
+	 *         without virtual threads platform threads are used instead
+	 */
+	boolean virtualThreads() default false;
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Enables a leak check when the embedded framework is closed, the framework,
+ * its OSGi managed classloaders and the test probe bundle are verified to be
+ * collectable and threads started by its bundles while the framework was
+ * running must have terminated, example:
+ *
+ * <pre>
+ * &#64;DetectFrameworkLeaks(failOnLeak = true)
+ * class MyTests {
+ *
+ * }
+ * </pre>
+ * 
+ * Frameworks can only become collectable after JUnit has released the test
+ * class, so the framework of a previous test class is verified when the next
+ * class using this annotation closes its framework and the last one when all
+ * tests have finished. Leaks that do not fail the test are published as report
+ * entry <code>frameworkLeaks</code>.
+ */
+@Inherited
+@Target({
+	ElementType.TYPE
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+public @interface DetectFrameworkLeaks {
+
+	/**
+	 * @return <code>true</code> if detected leaks should fail the test class or
+	 *         <code>false</code> if they should only be reported
+	 */
+	boolean failOnLeak() default false;
+
+	/**
+	 * @return the time in milliseconds to wait for garbage collection and
+	 *         lingering threads before something is reported as a leak
+	 */
+	long timeout() default 5000;
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Aborts the creation of the framework if any bundle fails to start or to
+ * resolve or an error is reported while the framework boots, example:
+ *
+ * <pre>
+ * &#64;FailOnBootErrors
+ * class MyTests {
+ *
+ * }
+ * </pre>
+ * 
+ * Instead of failing with the first exception all problems are collected into
+ * one report that lists the unsatisfied requirements of each unresolved bundle
+ * and the exceptions thrown by activators. This can be enabled for all tests
+ * with the configuration parameter {@value #FAIL_ON_BOOT_ERRORS_PARAMETER} set
+ * to <code>true</code>.
+ */
+@Inherited
+@Target({
+	ElementType.TYPE
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+public @interface FailOnBootErrors {
+
+	/**
+	 * The JUnit configuration parameter (or system property) to fail on boot
+	 * errors for all tests
+	 */
+	String FAIL_ON_BOOT_ERRORS_PARAMETER = "osgi.junit5.framework.failOnBootErrors";
+}
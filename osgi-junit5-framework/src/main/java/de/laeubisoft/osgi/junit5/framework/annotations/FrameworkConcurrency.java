@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Configures the number of threads the framework uses to resolve and to
+ * activate bundles independent of the framework implementation, example:
+ *
+ * <pre>
+ * &#64;FrameworkConcurrency(resolverThreads = 4, startLevelThreads = 4)
+ * class MyTests {
+ *
+ * }
+ * </pre>
+ * 
+ * Bundles marked to {@link WithBundle#start() start} are activated by the
+ * framework when it reaches its beginning start level (in parallel if supported
+ * by the implementation), unless a single start level thread is configured,
+ * then they are started one after another. A start level reports failing
+ * activators only as framework errors, these are checked once the framework
+ * has started and fail its creation just like a failing start does. The
+ * settings can be given for all tests with the configuration parameters
+ * {@value #RESOLVER_THREADS_PARAMETER} and
+ * {@value #START_LEVEL_THREADS_PARAMETER}, explicit framework properties always
+ * take precedence. The threads dispatching asynchronous events are not
+ * configurable in Equinox and Felix, so they are left out.
+ */
+@Inherited
+@Target({
+	ElementType.TYPE
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+public @interface FrameworkConcurrency {
+
+	/**
+	 * The JUnit configuration parameter (or system property) to set the resolver
+	 * threads for all tests
+	 */
+	String RESOLVER_THREADS_PARAMETER = "osgi.junit5.framework.concurrency.resolverThreads";
+
+	/**
+	 * The JUnit configuration parameter (or system property) to set the start
+	 * level threads for all tests
+	 */
+	String START_LEVEL_THREADS_PARAMETER = "osgi.junit5.framework.concurrency.startLevelThreads";
+
+	/**
+	 * @return the number of threads used to resolve bundles, a value &lt;= 0
+	 *         uses the number of available processors
+	 */
+	int resolverThreads() default 0;
+
+	/**
+	 * @return the number of threads used to activate bundles of the same start
+	 *         level, a value &lt;= 0 uses the number of available processors,
+	 *         <code>1</code> starts the bundles one after another without the
+	 *         start level
+	 */
+	int startLevelThreads() default 0;
+}
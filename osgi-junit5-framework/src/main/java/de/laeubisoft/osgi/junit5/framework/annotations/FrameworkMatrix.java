@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.TestTemplate;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Runs a test method once for each {@link FrameworkVariant} of the test class,
+ * example:
+ *
+ * <pre>
+ * &#64;FrameworkMatrix
+ * void testService(&#64;EmbeddedFramework Framework framework) {
+ *
+ * }
+ * </pre>
+ * 
+ * All variants are booted concurrently before the first test of the class
+ * runs, the tests are labeled with the name of their variant. Inside a variant
+ * the framework is available through {@link EmbeddedFramework} parameters and
+ * <code>FrameworkUtil</code> lookups, injections that are bound to the test
+ * class (e.g. <code>&#64;InjectService</code> fields) are not supported.
+ */
+@Target({
+	ElementType.METHOD
+})
+@Retention(RUNTIME)
+@TestTemplate
+@ExtendWith(FrameworkExtension.class)
+@Documented
+public @interface FrameworkMatrix {
+
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Measures the memory retained by the embedded framework after it was booted
+ * and compares it against a budget, example:
+ *
+ * <pre>
+ * &#64;FrameworkMemoryBudget(maxRetainedMb = 32, failOnExceed = true)
+ * class MyTests {
+ *
+ * }
+ * </pre>
+ * 
+ * The retained memory is the growth of the used heap after a garbage
+ * collection plus the growth of the metaspace (e.g. classes loaded by isolated
+ * bundles) while the framework was created. The figures are appended to a
+ * trend file so memory creep can be observed over time. The measurement is
+ * only meaningful if no other tests run concurrently in the same JVM, pooled
+ * frameworks are only measured when they are created.
+ */
+@Inherited
+@Target({
+	ElementType.TYPE
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+public @interface FrameworkMemoryBudget {
+
+	/**
+	 * @return the maximum memory in megabytes the framework may retain
+	 */
+	long maxRetainedMb();
+
+	/**
+	 * @return <code>true</code> if exceeding the budget should fail the test
+	 *         class or <code>false</code> if it should only be reported
+	 */
+	boolean failOnExceed() default false;
+
+	/**
+	 * @return the file the measurements are appended to, relative paths are
+	 *         resolved against the working directory, an empty string disables
+	 *         the trend file
+	 */
+	String trendFile() default "target/osgi-framework-memory.csv";
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Compares the time it takes to boot and start the embedded framework against
+ * a budget, example:
+ *
+ * <pre>
+ * &#64;FrameworkStartupBudget(millis = 500, failOnExceed = true)
+ * class MyTests {
+ *
+ * }
+ * </pre>
+ * 
+ * The annotation can also be placed on a package (in its
+ * <code>package-info.java</code>) to apply to all test classes of the package
+ * that use the {@link FrameworkExtension} and do not declare their own budget.
+ * Each measurement is appended to a history file, if it exceeds the given
+ * percentile of the previous measurements of the same test class a regression
+ * is reported even if the budget is not exceeded. Pooled frameworks are only
+ * measured when they are created.
+ */
+@Inherited
+@Target({
+	ElementType.TYPE, ElementType.PACKAGE
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+public @interface FrameworkStartupBudget {
+
+	/**
+	 * @return the maximum time in milliseconds to boot and start the framework
+	 */
+	long millis();
+
+	/**
+	 * @return <code>true</code> if exceeding the budget should fail the test
+	 *         class or <code>false</code> if it should only be reported
+	 */
+	boolean failOnExceed() default false;
+
+	/**
+	 * @return the file the measurements are appended to, relative paths are
+	 *         resolved against the working directory, an empty string disables
+	 *         the history
+	 */
+	String historyFile() default "target/osgi-framework-startup.csv";
+
+	/**
+	 * @return the percentile of the previous measurements a measurement must
+	 *         not exceed to not be reported as a regression
+	 */
+	int percentile() default 90;
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Declares a variant of the framework configured by the test class, each
+ * {@link FrameworkMatrix} method runs once per variant, example:
+ *
+ * <pre>
+ * &#64;WithBundle(value = "my.bundle.under.test", start = true)
+ * &#64;FrameworkVariant(name = "equinox", implementation = "equinox")
+ * &#64;FrameworkVariant(name = "felix", implementation = "felix")
+ * &#64;FrameworkVariant(name = "isolated", isolated = "my.bundle.under.test")
+ * class MyTests {
+ *
+ * }
+ * </pre>
+ * 
+ * The variants of a test class do not apply to its <code>@Nested</code> test
+ * classes, they inherit the configuration of the test class without the
+ * variants and may declare variants of their own.
+ */
+@Inherited
+@Target({
+	ElementType.TYPE
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+@Repeatable(FrameworkVariants.class)
+public @interface FrameworkVariant {
+
+	/**
+	 * @return the name of the variant used to label its tests
+	 */
+	String name();
+
+	/**
+	 * @return the framework implementation of the variant, an empty string
+	 *         uses the one of the test class
+	 * @see WithFrameworkImplementation
+	 */
+	String implementation() default "";
+
+	/**
+	 * @return the names of bundles that use an isolated classloader in this
+	 *         variant
+	 * @see WithBundle#isolated()
+	 */
+	String[] isolated() default {};
+
+	/**
+	 * @return additional framework properties of this variant in the form
+	 *         <code>key=value</code>
+	 * @see WithFrameworkProperty
+	 */
+	String[] properties() default {};
+}
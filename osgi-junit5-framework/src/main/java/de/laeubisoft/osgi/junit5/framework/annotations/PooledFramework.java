@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Keeps the framework running after the test class has finished so the next
+ * test class in the same JVM with the same framework configuration can reuse
+ * it instead of booting a new one, example:
+ *
+ * <pre>
+ * &#64;PooledFramework
+ * class MyTests {
+ *
+ * }
+ * </pre>
+ * 
+ * Only the test probe is exchanged between test classes, all other bundles stay
+ * installed and wired, so tests must not leave state behind that affects
+ * other test classes. Pooling can be enabled for all tests with the
+ * configuration parameter {@value #POOLED_PARAMETER} set to <code>true</code>.
+ * At most {@value #POOL_SIZE_PARAMETER} idle frameworks (4 by default) are
+ * kept, when more are released the least recently used one is stopped.
+ */
+@Inherited
+@Target({
+	ElementType.TYPE
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+public @interface PooledFramework {
+
+	/**
+	 * The JUnit configuration parameter (or system property) to enable pooling
+	 * for all tests
+	 */
+	String POOLED_PARAMETER = "osgi.junit5.framework.pooled";
+
+	/**
+	 * The JUnit configuration parameter (or system property) for the maximum
+	 * number of idle frameworks kept in the pool
+	 */
+	String POOL_SIZE_PARAMETER = "osgi.junit5.framework.pool.size";
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Reuses the framework storage across test runs as long as the configuration
+ * and the bundles on the classpath are unchanged, so the framework can restart
+ * from its persisted state instead of installing and resolving all bundles
+ * again, example:
+ *
+ * <pre>
+ * &#64;ReuseFrameworkStorage
+ * class MyTests {
+ *
+ * }
+ * </pre>
+ * 
+ * The storage is locked while in use, if another process currently uses the
+ * same storage a fresh temporary one is used instead.
+ */
+@Inherited
+@Target({
+	ElementType.TYPE
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+public @interface ReuseFrameworkStorage {
+
+	/**
+	 * @return the directory where reusable storages are kept, if empty the
+	 *         <code>java.io.tmpdir</code> is used
+	 */
+	String directory() default "";
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Records the footprint of each test, that is the jars and class directories
+ * of the bundles the framework resolved or loaded classes and resources from
+ * while the test was running, example:
+ *
+ * <pre>
+ * &#64;TestImpactAnalysis
+ * class MyTests {
+ *
+ * }
+ * </pre>
+ * 
+ * If the configuration parameter {@value #SELECT_PARAMETER} is set to
+ * <code>true</code> only tests whose footprint contains a location that has
+ * changed since it was recorded (or that have no footprint yet because they are
+ * new or failed last time) are executed, all others are skipped.
+ */
+@Inherited
+@Target({
+	ElementType.TYPE
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+public @interface TestImpactAnalysis {
+
+	/**
+	 * The JUnit configuration parameter (or system property) to only execute
+	 * tests affected by changes
+	 */
+	String SELECT_PARAMETER = "osgi.junit5.framework.impact.select";
+
+	/**
+	 * @return the file where footprints are stored, relative paths are resolved
+	 *         against the working directory
+	 */
+	String file() default "target/osgi-test-impact.properties";
+}
@@ -66,4 +66,12 @@ public @interface WithBundle {
 	 *         classloader or <code>false</code> otherwise
 	 */
 	boolean isolated() default false;
+
+	/**
+	 * @return <code>true</code> if the bundle should be started according to its
+	 *         <code>Bundle-ActivationPolicy</code>, a bundle with a lazy
+	 *         activation policy is then only activated once a class is loaded
+	 *         from it, <code>false</code> otherwise
+	 */
+	boolean lazy() default false;
 }
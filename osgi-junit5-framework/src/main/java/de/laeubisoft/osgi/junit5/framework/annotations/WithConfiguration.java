@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.composites.UseFelixConfigurationAdmin;
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Provides a configuration through the Configuration Admin of the framework,
+ * example:
+ *
+ * <pre>
+ * &#64;WithConfiguration(pid = "my.component", properties = { "greeting=Hello", "count=3" })
+ * class MyTests {
+ *
+ * }
+ * </pre>
+ * 
+ * All configurations are applied at once right after the Configuration Admin
+ * has started and before any other bundle is started, so components are
+ * activated with their final configuration instead of being reactivated for
+ * each configuration. A bundle providing the Configuration Admin must be
+ * started, e.g. with {@link UseFelixConfigurationAdmin}.
+ */
+@Inherited
+@Target({
+	ElementType.TYPE
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+@Repeatable(WithConfigurations.class)
+public @interface WithConfiguration {
+
+	/**
+	 * @return the persistent identity of the configuration
+	 */
+	String pid();
+
+	/**
+	 * @return the properties of the configuration in the form
+	 *         <code>key=value</code>, values are passed as strings
+	 */
+	String[] properties() default {};
+
+	/**
+	 * @return the bundle location the configuration is bound to, the default
+	 *         (<code>?</code>) makes it visible to all bundles
+	 */
+	String location() default "?";
+}
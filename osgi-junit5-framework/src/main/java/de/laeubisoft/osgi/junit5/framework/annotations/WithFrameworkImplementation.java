@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Selects the framework implementation if more than one is available on the
+ * classpath, example:
+ *
+ * <pre>
+ * &#64;WithFrameworkImplementation(WithFrameworkImplementation.FELIX)
+ * class MyTests {
+ *
+ * }
+ * </pre>
+ * 
+ * The implementation can be selected for all tests with the configuration
+ * parameter {@value #IMPLEMENTATION_PARAMETER}.
+ */
+@Inherited
+@Target({
+	ElementType.TYPE
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+public @interface WithFrameworkImplementation {
+
+	/**
+	 * The JUnit configuration parameter (or system property) to select the
+	 * implementation for all tests
+	 */
+	String IMPLEMENTATION_PARAMETER = "osgi.junit5.framework.implementation";
+
+	/**
+	 * Selects the Apache Felix framework
+	 */
+	String FELIX = "felix";
+
+	/**
+	 * Selects the Eclipse Equinox framework
+	 */
+	String EQUINOX = "equinox";
+
+	/**
+	 * @return either {@link #FELIX}, {@link #EQUINOX} or the fully qualified
+	 *         class name of a
+	 *         {@link org.osgi.framework.connect.ConnectFrameworkFactory}
+	 */
+	String value();
+}
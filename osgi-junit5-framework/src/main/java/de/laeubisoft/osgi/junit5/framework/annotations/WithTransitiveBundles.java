@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.annotations;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkExtension;
+
+/**
+ * Installs the bundles from the classpath that are required to satisfy the
+ * mandatory requirements (<code>Import-Package</code>,
+ * <code>Require-Bundle</code> and <code>Require-Capability</code>) of the
+ * bundles given with {@link WithBundle} in addition to them, example:
+ *
+ * <pre>
+ * &#64;WithBundle(value = "my.bundle.under.test", start = true)
+ * &#64;WithTransitiveBundles
+ * class MyTests {
+ *
+ * }
+ * </pre>
+ * 
+ * Requirements no bundle on the classpath can satisfy are assumed to be
+ * provided by the framework, only the first matching bundle is chosen for each
+ * requirement.
+ */
+@Inherited
+@Target({
+	ElementType.TYPE
+})
+@Retention(RUNTIME)
+@ExtendWith(FrameworkExtension.class)
+@Documented
+public @interface WithTransitiveBundles {
+
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Repeatable;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Finds annotations that are present, meta-present or inherited the same way
+ * the JUnit annotation support does, but with plain reflection so the
+ * configuration can be compiled without JUnit, e.g. by the
+ * {@link FrameworkLauncher}
+ */
+final class Annotations {
+
+	private Annotations() {
+	}
+
+	/**
+	 * @param element the element to inspect
+	 * @param type    the type of the annotation
+	 * @return <code>true</code> if the annotation is present or meta-present
+	 */
+	static boolean isAnnotated(AnnotatedElement element, Class<? extends Annotation> type) {
+		return findAnnotation(element, type).isPresent();
+	}
+
+	/**
+	 * Finds the first annotation of the given type that is directly present,
+	 * meta-present, present on an interface or inherited from a superclass
+	 *
+	 * @param <A>     the type of the annotation
+	 * @param element the element to inspect
+	 * @param type    the type of the annotation
+	 * @return the annotation or an empty optional if it is not present
+	 */
+	static <A extends Annotation> Optional<A> findAnnotation(AnnotatedElement element, Class<A> type) {
+		return findAnnotation(element, type, type.isAnnotationPresent(Inherited.class), new HashSet<>());
+	}
+
+	private static <A extends Annotation> Optional<A> findAnnotation(AnnotatedElement element, Class<A> type,
+			boolean inherited, Set<Annotation> visited) {
+		A annotation = element.getDeclaredAnnotation(type);
+		if (annotation != null) {
+			return Optional.of(annotation);
+		}
+		for (Annotation candidate : element.getDeclaredAnnotations()) {
+			if (!isJavaLang(candidate) && visited.add(candidate)) {
+				Optional<A> meta = findAnnotation(candidate.annotationType(), type, inherited, visited);
+				if (meta.isPresent()) {
+					return meta;
+				}
+			}
+		}
+		if (element instanceof Class) {
+			Class<?> clazz = (Class<?>) element;
+			for (Class<?> ifc : clazz.getInterfaces()) {
+				if (ifc != Annotation.class) {
+					Optional<A> found = findAnnotation(ifc, type, inherited, visited);
+					if (found.isPresent()) {
+						return found;
+					}
+				}
+			}
+			Class<?> superclass = clazz.getSuperclass();
+			if (inherited && superclass != null && superclass != Object.class) {
+				return findAnnotation(superclass, type, inherited, visited);
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Finds all annotations of the given repeatable type, inherited ones are
+	 * returned first
+	 *
+	 * @param <A>     the type of the annotation
+	 * @param element the element to inspect
+	 * @param type    the repeatable type of the annotation
+	 * @return the annotations in the order they where found
+	 */
+	static <A extends Annotation> List<A> findRepeatableAnnotations(AnnotatedElement element, Class<A> type) {
+		Repeatable repeatable = type.getAnnotation(Repeatable.class);
+		if (repeatable == null) {
+			throw new IllegalArgumentException(type.getName() + " is not repeatable");
+		}
+		Class<? extends Annotation> container = repeatable.value();
+		Set<A> found = new LinkedHashSet<>();
+		findRepeatableAnnotations(element, type, container, container.isAnnotationPresent(Inherited.class), found,
+				new HashSet<>());
+		return new ArrayList<>(found);
+	}
+
+	private static <A extends Annotation> void findRepeatableAnnotations(AnnotatedElement element, Class<A> type,
+			Class<? extends Annotation> container, boolean inherited, Set<A> found, Set<Annotation> visited) {
+		if (element instanceof Class) {
+			Class<?> clazz = (Class<?>) element;
+			Class<?> superclass = clazz.getSuperclass();
+			if (inherited && superclass != null && superclass != Object.class) {
+				findRepeatableAnnotations(superclass, type, container, inherited, found, visited);
+			}
+			for (Class<?> ifc : clazz.getInterfaces()) {
+				if (ifc != Annotation.class) {
+					findRepeatableAnnotations(ifc, type, container, inherited, found, visited);
+				}
+			}
+		}
+		findRepeatableAnnotations(element.getDeclaredAnnotations(), type, container, inherited, found, visited);
+		findRepeatableAnnotations(element.getAnnotations(), type, container, inherited, found, visited);
+	}
+
+	private static <A extends Annotation> void findRepeatableAnnotations(Annotation[] candidates, Class<A> type,
+			Class<? extends Annotation> container, boolean inherited, Set<A> found, Set<Annotation> visited) {
+		for (Annotation candidate : candidates) {
+			if (isJavaLang(candidate) || !visited.add(candidate)) {
+				continue;
+			}
+			Class<? extends Annotation> candidateType = candidate.annotationType();
+			if (candidateType == type) {
+				found.add(type.cast(candidate));
+			} else if (candidateType == container) {
+				found.addAll(Arrays.asList(getValues(candidate, type)));
+			} else {
+				findRepeatableAnnotations(candidateType, type, container, inherited, found, visited);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <A extends Annotation> A[] getValues(Annotation container, Class<A> type) {
+		try {
+			return (A[]) container.annotationType().getMethod("value").invoke(container);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new IllegalStateException("can't read the values of " + container, e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("can't read the values of " + container, e.getCause());
+		}
+	}
+
+	private static boolean isJavaLang(Annotation annotation) {
+		return annotation.annotationType().getName().startsWith("java.lang.annotation.");
+	}
+
+}
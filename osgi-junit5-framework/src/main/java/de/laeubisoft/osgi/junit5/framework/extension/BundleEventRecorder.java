@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkFlightRecorder.Span;
+
+/**
+ * Records the resolving and starting of bundles as flight recorder events
+ */
+final class BundleEventRecorder implements SynchronousBundleListener {
+
+	private final Supplier<Class<?>> testClass;
+	private final Map<Bundle, Span> startingBundles = new ConcurrentHashMap<>();
+
+	/**
+	 * @param testClass supplies the test class currently using the framework, or
+	 *                  <code>null</code> if the framework is idle
+	 */
+	BundleEventRecorder(Supplier<Class<?>> testClass) {
+		this.testClass = testClass;
+	}
+
+	@Override
+	public void bundleChanged(BundleEvent event) {
+		Bundle bundle = event.getBundle();
+		Class<?> currentTestClass = testClass.get();
+		String testClassName = currentTestClass == null ? null : currentTestClass.getName();
+		switch (event.getType()) {
+		case BundleEvent.RESOLVED:
+			// the framework resolves all bundles at once, so this only marks the
+			// point in time
+			FrameworkFlightRecorder.bundle("resolve", bundle.getSymbolicName(), testClassName).close();
+			break;
+		case BundleEvent.STARTING:
+			startingBundles.put(bundle, FrameworkFlightRecorder.bundle("start", bundle.getSymbolicName(), testClassName));
+			break;
+		case BundleEvent.STARTED:
+			Span span = startingBundles.remove(bundle);
+			if (span != null) {
+				span.close();
+			}
+			break;
+		case BundleEvent.STOPPED:
+			// the start has failed
+			startingBundles.remove(bundle);
+			break;
+		default:
+			break;
+		}
+	}
+
+}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
+import org.osgi.framework.namespace.BundleNamespace;
+import org.osgi.framework.namespace.ExecutionEnvironmentNamespace;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.framework.namespace.NativeNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Namespace;
+
+/**
+ * An index of the capabilities provided by the bundles found on a classpath,
+ * used to compute the bundles required to satisfy a set of declared bundles.
+ * The index is built once per classloader and the computed closures are
+ * cached.
+ */
+final class CapabilityIndex {
+
+	private static final Map<ClassLoader, CapabilityIndex> indexes = Collections
+			.synchronizedMap(new WeakHashMap<>());
+
+	private final Map<String, List<Capability>> capabilities = new LinkedHashMap<>();
+	private final Map<String, List<Requirement>> requirements = new HashMap<>();
+	private final Map<Set<String>, Set<String>> closures = new ConcurrentHashMap<>();
+
+	private CapabilityIndex(Collection<JUnit5Module> modules) {
+		for (JUnit5Module module : modules) {
+			try {
+				index(module);
+			} catch (IllegalArgumentException e) {
+				// malformed headers, such a bundle is never chosen as a provider
+			}
+		}
+	}
+
+	private void index(JUnit5Module module) {
+		Map<String, String> headers = module.getHeaders().orElse(Collections.emptyMap());
+		List<Capability> provided = new ArrayList<>();
+		List<Requirement> required = new ArrayList<>();
+		String version = headers.getOrDefault(Constants.BUNDLE_VERSION, Version.emptyVersion.toString());
+		Map<String, Object> bundle = new HashMap<>();
+		bundle.put(BundleNamespace.BUNDLE_NAMESPACE, module.getName());
+		bundle.put(BundleNamespace.CAPABILITY_BUNDLE_VERSION_ATTRIBUTE, Version.parseVersion(version.trim()));
+		provided.add(new Capability(BundleNamespace.BUNDLE_NAMESPACE, bundle));
+		for (HeaderClause clause : HeaderClause.parse(headers.get(Constants.EXPORT_PACKAGE))) {
+			for (String name : clause.getNames()) {
+				Map<String, Object> attributes = clause.getTypedAttributes();
+				attributes.put(PackageNamespace.PACKAGE_NAMESPACE, name);
+				attributes.put(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE, Version.parseVersion(
+						clause.getAttribute(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE)));
+				provided.add(new Capability(PackageNamespace.PACKAGE_NAMESPACE, attributes));
+			}
+		}
+		for (HeaderClause clause : HeaderClause.parse(headers.get(Constants.PROVIDE_CAPABILITY))) {
+			for (String namespace : clause.getNames()) {
+				provided.add(new Capability(namespace, clause.getTypedAttributes()));
+			}
+		}
+		for (HeaderClause clause : HeaderClause.parse(headers.get(Constants.IMPORT_PACKAGE))) {
+			if (isOptional(clause)) {
+				continue;
+			}
+			for (String name : clause.getNames()) {
+				if (!name.startsWith("java.")) {
+					required.add(new Requirement(PackageNamespace.PACKAGE_NAMESPACE,
+							filter(PackageNamespace.PACKAGE_NAMESPACE, name,
+									clause.getAttribute(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE),
+									PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE)));
+				}
+			}
+		}
+		for (HeaderClause clause : HeaderClause.parse(headers.get(Constants.REQUIRE_BUNDLE))) {
+			if (isOptional(clause)) {
+				continue;
+			}
+			for (String name : clause.getNames()) {
+				required.add(new Requirement(BundleNamespace.BUNDLE_NAMESPACE,
+						filter(BundleNamespace.BUNDLE_NAMESPACE, name,
+								clause.getAttribute(Constants.BUNDLE_VERSION_ATTRIBUTE),
+								BundleNamespace.CAPABILITY_BUNDLE_VERSION_ATTRIBUTE)));
+			}
+		}
+		for (HeaderClause clause : HeaderClause.parse(headers.get(Constants.REQUIRE_CAPABILITY))) {
+			String effective = clause.getDirective(Namespace.REQUIREMENT_EFFECTIVE_DIRECTIVE);
+			if (isOptional(clause) || (effective != null && !Namespace.EFFECTIVE_RESOLVE.equals(effective))) {
+				continue;
+			}
+			for (String namespace : clause.getNames()) {
+				if (ExecutionEnvironmentNamespace.EXECUTION_ENVIRONMENT_NAMESPACE.equals(namespace)
+						|| NativeNamespace.NATIVE_NAMESPACE.equals(namespace)
+						|| IdentityNamespace.IDENTITY_NAMESPACE.equals(namespace)) {
+					// always provided by the framework
+					continue;
+				}
+				String filter = clause.getDirective(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
+				required.add(new Requirement(namespace, filter));
+			}
+		}
+		capabilities.put(module.getName(), provided);
+		requirements.put(module.getName(), required);
+	}
+
+	/**
+	 * Computes the minimal set of bundles that satisfies the requirements of
+	 * the declared bundles, requirements that can not be satisfied by any bundle
+	 * are assumed to be provided by the framework (e.g. packages of the JDK)
+	 * 
+	 * @param declared the names of the declared bundles
+	 * @param system   the name of the bundle of the framework implementation that
+	 *                 must not be installed, might be <code>null</code>
+	 * @return the declared bundles and all bundles required by them
+	 */
+	Set<String> closure(Collection<String> declared, String system) {
+		Set<String> key = new TreeSet<>(declared);
+		if (system != null) {
+			key.add(system + ";system");
+		}
+		return closures.computeIfAbsent(key, k -> computeClosure(declared, system));
+	}
+
+	private Set<String> computeClosure(Collection<String> declared, String system) {
+		Set<String> closure = new LinkedHashSet<>(declared);
+		Deque<String> queue = new ArrayDeque<>(declared);
+		while (!queue.isEmpty()) {
+			String name = queue.poll();
+			for (Requirement requirement : requirements.getOrDefault(name, Collections.emptyList())) {
+				if (requirement.filter == null || isSatisfied(requirement, closure)
+						|| (system != null && requirement.matches(capabilities.get(system)))) {
+					continue;
+				}
+				for (Map.Entry<String, List<Capability>> entry : capabilities.entrySet()) {
+					if (!entry.getKey().equals(system) && requirement.matches(entry.getValue())) {
+						closure.add(entry.getKey());
+						queue.add(entry.getKey());
+						break;
+					}
+				}
+			}
+		}
+		return Collections.unmodifiableSet(closure);
+	}
+
+	private boolean isSatisfied(Requirement requirement, Set<String> closure) {
+		for (String name : closure) {
+			if (requirement.matches(capabilities.get(name))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isOptional(HeaderClause clause) {
+		return Constants.RESOLUTION_OPTIONAL.equals(clause.getDirective(Constants.RESOLUTION_DIRECTIVE));
+	}
+
+	private static String filter(String namespace, String name, String range, String versionAttribute) {
+		String filter = "(" + namespace + "=" + name + ")";
+		if (range == null) {
+			return filter;
+		}
+		return "(&" + filter + new VersionRange(range).toFilterString(versionAttribute) + ")";
+	}
+
+	/**
+	 * @param classLoader the classloader the modules where found with
+	 * @param modules     supplies all bundles of the classloader if the index
+	 *                    is not cached yet
+	 * @return the index for the classloader
+	 */
+	static CapabilityIndex get(ClassLoader classLoader, Supplier<Collection<JUnit5Module>> modules) {
+		synchronized (indexes) {
+			return indexes.computeIfAbsent(classLoader, cl -> new CapabilityIndex(modules.get()));
+		}
+	}
+
+	private static final class Capability {
+
+		private final String namespace;
+		private final Map<String, Object> attributes;
+
+		Capability(String namespace, Map<String, Object> attributes) {
+			this.namespace = namespace;
+			this.attributes = attributes;
+		}
+	}
+
+	private static final class Requirement {
+
+		private final String namespace;
+		private final Filter filter;
+
+		Requirement(String namespace, String filter) {
+			this.namespace = namespace;
+			try {
+				this.filter = filter == null ? null : FrameworkUtil.createFilter(filter);
+			} catch (InvalidSyntaxException e) {
+				throw new IllegalArgumentException("invalid requirement filter " + filter, e);
+			}
+		}
+
+		boolean matches(List<Capability> capabilities) {
+			if (capabilities != null) {
+				for (Capability capability : capabilities) {
+					if (namespace.equals(capability.namespace) && filter.matches(capability.attributes)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+}
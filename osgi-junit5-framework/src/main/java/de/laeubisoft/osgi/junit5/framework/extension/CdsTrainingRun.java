@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+/**
+ * A training run that boots and stops the embedded framework for a set of
+ * representative test classes so the JVM can record all classes required to
+ * start a framework into a dynamic CDS archive, example:
+ *
+ * <pre>
+ * java -XX:ArchiveClassesAtExit=osgi-test.jsa -cp &lt;jars only&gt; \
+ *   de.laeubisoft.osgi.junit5.framework.extension.CdsTrainingRun my.api.impl.MyImplTest
+ * </pre>
+ * 
+ * Later JVMs started with <code>-XX:SharedArchiveFile=osgi-test.jsa</code> and
+ * the same class path (or one that extends it) then load these classes from
+ * the archive. Only classes loaded from jar files by the application
+ * classloader are archived, classes of bundles marked as
+ * {@link de.laeubisoft.osgi.junit5.framework.annotations.WithBundle#isolated()
+ * isolated} are defined by the frameworks own bundle classloaders and are never
+ * part of the archive, the same applies to classes from directories.
+ */
+public final class CdsTrainingRun {
+
+	private CdsTrainingRun() {
+	}
+
+	/**
+	 * @param args the fully qualified names of the test classes whose framework
+	 *             configuration should be booted
+	 * @throws Throwable if a class can not be loaded or the framework fails to
+	 *                   start or stop
+	 */
+	public static void main(String[] args) throws Throwable {
+		if (args.length == 0) {
+			System.err.println("usage: " + CdsTrainingRun.class.getName() + " <test class> [<test class> ...]");
+			System.exit(1);
+		}
+		ClassLoader classLoader = CdsTrainingRun.class.getClassLoader();
+		for (String className : args) {
+			train(Class.forName(className, false, classLoader));
+		}
+	}
+
+	private static void train(Class<?> testClass) throws Throwable {
+		long start = System.nanoTime();
+		JUnit5ConnectFramework connect = new JUnit5ConnectFramework(testClass,
+				"cds-training-" + testClass.getName());
+		try {
+			FrameworkExtension.printBundles(connect.framework, System.out::println);
+		} finally {
+			connect.close();
+		}
+		System.out.println("Booted framework for " + testClass.getName() + " in "
+				+ (System.nanoTime() - start) / 1_000_000 + " ms");
+	}
+
+}
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import org.osgi.framework.hooks.weaving.WeavingHook;
+import org.osgi.framework.hooks.weaving.WovenClass;
+import org.osgi.framework.hooks.weaving.WovenClassListener;
+
+import de.laeubisoft.osgi.junit5.framework.services.ClassLoadingReport;
+
+/**
+ * Records class loading statistics, isolated bundles are tracked through the
+ * weaving hooks of the framework from the lookup of the class entry until the
+ * class is defined while all bundles report their entry lookups from the
+ * connect layer
+ */
+class ClassLoadingRecorder implements ClassLoadingReport, WeavingHook, WovenClassListener, AutoCloseable {
+
+	private static final String CLASS_SUFFIX = ".class";
+
+	/**
+	 * number of open recorders that rely on thread contention monitoring, the
+	 * state before the first one enabled it is restored when the last one closes
+	 */
+	private static int contentionMonitoringUsers;
+	private static boolean contentionMonitoringBefore;
+
+	private final Map<String, Statistics> statistics = new ConcurrentHashMap<>();
+	private final ThreadLocal<Loading> loading = ThreadLocal.withInitial(Loading::new);
+	private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+	private final boolean contentionMonitoring;
+	private boolean closed;
+
+	ClassLoadingRecorder() {
+		contentionMonitoring = threadMXBean.isThreadContentionMonitoringSupported();
+		if (contentionMonitoring) {
+			synchronized (ClassLoadingRecorder.class) {
+				if (contentionMonitoringUsers++ == 0) {
+					contentionMonitoringBefore = threadMXBean.isThreadContentionMonitoringEnabled();
+				}
+				threadMXBean.setThreadContentionMonitoringEnabled(true);
+			}
+		}
+	}
+
+	void entryLookup(JUnit5Module module, String path, boolean found, boolean cached, long startNanos) {
+		Statistics moduleStatistics = statistics(module.getName());
+		moduleStatistics.entryLookupTime.add(System.nanoTime() - startNanos);
+		moduleStatistics.entryLookups.increment();
+		if (!found) {
+			moduleStatistics.entryMisses.increment();
+			if (cached) {
+				moduleStatistics.cachedEntryMisses.increment();
+			}
+		} else if (module.isUseOSGiLoader() && path.endsWith(CLASS_SUFFIX)) {
+			String className = path.substring(0, path.length() - CLASS_SUFFIX.length()).replace('/', '.');
+			loading.get().started.put(className, new long[] { startNanos, lockTime() });
+		}
+	}
+
+	@Override
+	public void weave(WovenClass wovenClass) {
+		Loading current = loading.get();
+		current.started.computeIfAbsent(wovenClass.getClassName(),
+				name -> new long[] { System.nanoTime(), lockTime() });
+		current.defining++;
+	}
+
+	@Override
+	public void modified(WovenClass wovenClass) {
+		int state = wovenClass.getState();
+		if (state == WovenClass.DEFINED) {
+			long[] start = finish(wovenClass.getClassName());
+			if (start != null) {
+				Statistics bundleStatistics = statistics(wovenClass.getBundleWiring().getBundle().getSymbolicName());
+				bundleStatistics.classesLoaded.increment();
+				bundleStatistics.loadTime.add(System.nanoTime() - start[0]);
+				bundleStatistics.lockTime.add(lockTime() - start[1]);
+			}
+		} else if (state == WovenClass.DEFINE_FAILED || state == WovenClass.TRANSFORMING_FAILED) {
+			finish(wovenClass.getClassName());
+		}
+	}
+
+	/**
+	 * Ends the definition of a class, once no class is defined anymore by the
+	 * current thread all remaining entries are discarded as they where only read
+	 * (e.g. as a resource) but never defined
+	 */
+	private long[] finish(String className) {
+		Loading current = loading.get();
+		long[] start = current.started.remove(className);
+		if (current.defining > 0) {
+			current.defining--;
+		}
+		if (current.defining == 0) {
+			loading.remove();
+		}
+		return start;
+	}
+
+	/**
+	 * Restores the thread contention monitoring of the JVM if this is the last
+	 * recorder that uses it
+	 */
+	@Override
+	public void close() {
+		loading.remove();
+		if (!contentionMonitoring) {
+			return;
+		}
+		synchronized (ClassLoadingRecorder.class) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (--contentionMonitoringUsers == 0) {
+				threadMXBean.setThreadContentionMonitoringEnabled(contentionMonitoringBefore);
+			}
+		}
+	}
+
+	@Override
+	public Stream<BundleClassLoading> bundles() {
+		return statistics.values().stream().map(BundleClassLoading.class::cast);
+	}
+
+	private Statistics statistics(String symbolicName) {
+		return statistics.computeIfAbsent(symbolicName, Statistics::new);
+	}
+
+	/**
+	 * @return the time in nanoseconds the current thread was blocked or waiting
+	 */
+	private long lockTime() {
+		if (contentionMonitoring) {
+			ThreadInfo info = threadMXBean.getThreadInfo(Thread.currentThread().getId());
+			if (info != null) {
+				return TimeUnit.MILLISECONDS
+						.toNanos(Math.max(info.getBlockedTime(), 0) + Math.max(info.getWaitedTime(), 0));
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * The classes currently loaded by a thread
+	 */
+	private static final class Loading {
+
+		/**
+		 * start time and lock time of the classes by their name
+		 */
+		private final Map<String, long[]> started = new HashMap<>();
+		/**
+		 * number of classes that are currently defined, nested as defining a class
+		 * loads its super types
+		 */
+		private int defining;
+	}
+
+	private static final class Statistics implements BundleClassLoading {
+
+		private final String symbolicName;
+		private final LongAdder classesLoaded = new LongAdder();
+		private final LongAdder loadTime = new LongAdder();
+		private final LongAdder lockTime = new LongAdder();
+		private final LongAdder entryLookups = new LongAdder();
+		private final LongAdder entryMisses = new LongAdder();
+		private final LongAdder cachedEntryMisses = new LongAdder();
+		private final LongAdder entryLookupTime = new LongAdder();
+
+		Statistics(String symbolicName) {
+			this.symbolicName = symbolicName;
+		}
+
+		@Override
+		public String getSymbolicName() {
+			return symbolicName;
+		}
+
+		@Override
+		public long getClassesLoaded() {
+			return classesLoaded.sum();
+		}
+
+		@Override
+		public long getLoadTime() {
+			return loadTime.sum();
+		}
+
+		@Override
+		public long getLockTime() {
+			return lockTime.sum();
+		}
+
+		@Override
+		public long getEntryLookups() {
+			return entryLookups.sum();
+		}
+
+		@Override
+		public long getEntryMisses() {
+			return entryMisses.sum();
+		}
+
+		@Override
+		public long getCachedEntryMisses() {
+			return cachedEntryMisses.sum();
+		}
+
+		@Override
+		public long getEntryLookupTime() {
+			return entryLookupTime.sum();
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+/**
+ * The bundles found on a classpath, scanning the manifests once allows several
+ * frameworks (e.g. the variants of a matrix) to be booted from the same scan
+ */
+final class ClasspathIndex {
+
+	private final ClassLoader classLoader;
+	private final List<JUnit5Module> modules;
+
+	private ClasspathIndex(ClassLoader classLoader, List<JUnit5Module> modules) {
+		this.classLoader = classLoader;
+		this.modules = Collections.unmodifiableList(modules);
+	}
+
+	/**
+	 * @return the classloader that was scanned
+	 */
+	ClassLoader getClassLoader() {
+		return classLoader;
+	}
+
+	/**
+	 * Creates new modules for a framework as modules carry per framework state
+	 * 
+	 * @return the modules by their name, if a bundle is found more than once the
+	 *         first one wins
+	 */
+	Map<String, JUnit5Module> createModules() {
+		Map<String, JUnit5Module> available = new LinkedHashMap<>();
+		for (JUnit5Module module : modules) {
+			if (!available.containsKey(module.getName())) {
+				available.put(module.getName(), new JUnit5Module(module.getName(), module.getHeaders().get(),
+						classLoader, module.getLocation()));
+			}
+		}
+		return available;
+	}
+
+	/**
+	 * @param classLoader the classloader to scan
+	 * @return the index of all bundle manifests visible to the classloader
+	 * @throws IOException if the manifests can not be enumerated
+	 */
+	static ClasspathIndex scan(ClassLoader classLoader) throws IOException {
+		List<JUnit5Module> modules = new ArrayList<>();
+		Enumeration<URL> resources = classLoader.getResources(JarFile.MANIFEST_NAME);
+		while (resources.hasMoreElements()) {
+			JUnit5Module module = JUnit5ConnectFramework.getModule(resources.nextElement(), classLoader);
+			if (module != null) {
+				modules.add(module);
+			}
+		}
+		return new ClasspathIndex(classLoader, modules);
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkConcurrency;
+
+/**
+ * The configured concurrency of a framework
+ * 
+ * @see FrameworkConcurrency
+ */
+public final class ConcurrencyConfiguration {
+
+	/**
+	 * Leaves the concurrency to the framework implementation
+	 */
+	static final ConcurrencyConfiguration NONE = new ConcurrencyConfiguration(false, 0, 0);
+
+	private final boolean configured;
+	private final int resolverThreads;
+	private final int startLevelThreads;
+
+	ConcurrencyConfiguration(boolean configured, int resolverThreads, int startLevelThreads) {
+		this.configured = configured;
+		this.resolverThreads = resolverThreads;
+		this.startLevelThreads = startLevelThreads;
+	}
+
+	/**
+	 * @return <code>true</code> if the concurrency of the framework is configured
+	 */
+	public boolean isConfigured() {
+		return configured;
+	}
+
+	/**
+	 * @return the resolver threads, only relevant if {@link #isConfigured()}
+	 */
+	public int getResolverThreads() {
+		return resolverThreads;
+	}
+
+	/**
+	 * @return the start level threads, only relevant if {@link #isConfigured()}
+	 */
+	public int getStartLevelThreads() {
+		return startLevelThreads;
+	}
+
+	/**
+	 * @param configurationParameters the global configuration parameters
+	 * @return this configuration if it is configured, otherwise the one of the
+	 *         configuration parameters
+	 */
+	ConcurrencyConfiguration withDefaults(Function<String, Optional<String>> configurationParameters) {
+		if (configured) {
+			return this;
+		}
+		Optional<String> resolver = configurationParameters.apply(FrameworkConcurrency.RESOLVER_THREADS_PARAMETER);
+		Optional<String> startLevel = configurationParameters.apply(FrameworkConcurrency.START_LEVEL_THREADS_PARAMETER);
+		if (resolver.isPresent() || startLevel.isPresent()) {
+			return new ConcurrencyConfiguration(true, parseThreads(resolver), parseThreads(startLevel));
+		}
+		return this;
+	}
+
+	private static int parseThreads(Optional<String> value) {
+		try {
+			return value.map(String::trim).map(Integer::parseInt).orElse(0);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("invalid number of threads: " + value.get(), e);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(configured, resolverThreads, startLevelThreads);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ConcurrencyConfiguration)) {
+			return false;
+		}
+		ConcurrencyConfiguration other = (ConcurrencyConfiguration) obj;
+		return configured == other.configured && resolverThreads == other.resolverThreads
+				&& startLevelThreads == other.startLevelThreads;
+	}
+
+	@Override
+	public String toString() {
+		return "ConcurrencyConfiguration [configured=" + configured + ", resolverThreads=" + resolverThreads
+				+ ", startLevelThreads=" + startLevelThreads + "]";
+	}
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.junit.jupiter.api.extension.ReflectiveInvocationContext;
+import org.junit.platform.commons.PreconditionViolationException;
+import org.junit.platform.commons.support.ReflectionSupport;
+import org.osgi.framework.connect.FrameworkUtilHelper;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.ConcurrentStress;
+
+/**
+ * Invokes a test method concurrently as requested by {@link ConcurrentStress}
+ * and measures the throughput and latency of the invocations
+ */
+final class ConcurrentStressRunner {
+
+	private static final AtomicInteger threadCounter = new AtomicInteger();
+	private static final int[] PERCENTILES = { 50, 90, 99 };
+
+	private final ConcurrentStress stress;
+	private final ReflectiveInvocationContext<Method> invocationContext;
+
+	ConcurrentStressRunner(ConcurrentStress stress, ReflectiveInvocationContext<Method> invocationContext) {
+		if (stress.threads() < 1 || stress.iterations() < 1) {
+			throw new PreconditionViolationException("threads and iterations must be positive: " + stress);
+		}
+		this.stress = stress;
+		this.invocationContext = invocationContext;
+	}
+
+	/**
+	 * Runs all invocations and reports the figures
+	 * 
+	 * @param report receives the measured throughput and latencies
+	 * @throws Throwable the first failure of any invocation
+	 */
+	void run(BiConsumer<String, String> report) throws Throwable {
+		// the helper of the test thread must be visible to the workers
+		FrameworkUtilHelper helper = JUnit5FrameworkUtilHelper.threadHelper.get();
+		int threads = stress.threads();
+		ThreadFactory virtualThreadFactory = stress.virtualThreads() ? virtualThreadFactory() : null;
+		boolean virtual = virtualThreadFactory != null;
+		ThreadFactory threadFactory = virtual ? virtualThreadFactory : runnable -> {
+			Thread thread = new Thread(runnable, "concurrent-stress-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(threads, threadFactory);
+		CountDownLatch startSignal = new CountDownLatch(1);
+		List<Future<long[]>> futures = new ArrayList<>();
+		long start = 0;
+		boolean started = false;
+		try {
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(() -> {
+					JUnit5FrameworkUtilHelper.threadHelper.set(helper);
+					try {
+						startSignal.await();
+						return invoke();
+					} finally {
+						JUnit5FrameworkUtilHelper.threadHelper.remove();
+					}
+				}));
+			}
+			start = System.nanoTime();
+			startSignal.countDown();
+			started = true;
+		} finally {
+			if (started) {
+				executor.shutdown();
+			} else {
+				// interrupts the threads already waiting for the start signal
+				executor.shutdownNow();
+			}
+		}
+		long[] latencies = new long[threads * stress.iterations()];
+		int count = 0;
+		Throwable failure = null;
+		for (Future<long[]> future : futures) {
+			try {
+				long[] threadLatencies = future.get();
+				System.arraycopy(threadLatencies, 0, latencies, count, threadLatencies.length);
+				count += threadLatencies.length;
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause();
+				} else {
+					failure.addSuppressed(e.getCause());
+				}
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		if (failure != null) {
+			throw failure;
+		}
+		Arrays.sort(latencies);
+		double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+		report.accept("stressThroughput", String.format(Locale.ROOT, "%.1f invocations/s", count / seconds));
+		StringBuilder percentiles = new StringBuilder();
+		for (int percentile : PERCENTILES) {
+			int rank = (int) Math.ceil(percentile / 100.0 * count);
+			percentiles.append("p").append(percentile).append("=")
+					.append(toMicros(latencies[Math.max(0, rank - 1)])).append("us, ");
+		}
+		percentiles.append("max=").append(toMicros(latencies[count - 1])).append("us");
+		report.accept("stressLatency", percentiles.toString());
+		report.accept("stressThreads", threads + (virtual ? " virtual" : " platform") + " threads x "
+				+ stress.iterations() + " iterations");
+	}
+
+	private long[] invoke() {
+		Method method = invocationContext.getExecutable();
+		Object target = invocationContext.getTarget().orElse(null);
+		Object[] arguments = invocationContext.getArguments().toArray();
+		long[] latencies = new long[stress.iterations()];
+		for (int i = 0; i < latencies.length; i++) {
+			long begin = System.nanoTime();
+			ReflectionSupport.invokeMethod(method, target, arguments);
+			latencies[i] = System.nanoTime() - begin;
+		}
+		return latencies;
+	}
+
+	private static long toMicros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	/**
+	 * @return a factory for virtual threads or <code>null</code> if the JVM
+	 *         does not support them
+	 */
+	private static ThreadFactory virtualThreadFactory() {
+		try {
+			// the library still targets Java 8
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "concurrent-stress-",
+					0L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.AnalyzeProbePackages;
+import de.laeubisoft.osgi.junit5.framework.annotations.DetectFrameworkLeaks;
+import de.laeubisoft.osgi.junit5.framework.annotations.FailOnBootErrors;
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkConcurrency;
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkMemoryBudget;
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkStartupBudget;
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkVariant;
+import de.laeubisoft.osgi.junit5.framework.annotations.PooledFramework;
+import de.laeubisoft.osgi.junit5.framework.annotations.RecordClassLoading;
+import de.laeubisoft.osgi.junit5.framework.annotations.ReuseFrameworkStorage;
+import de.laeubisoft.osgi.junit5.framework.annotations.TestImpactAnalysis;
+import de.laeubisoft.osgi.junit5.framework.annotations.TraceServiceRegistry;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithBundle;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithConfiguration;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithExportedPackage;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithFrameworkImplementation;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithFrameworkProperty;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithTransitiveBundles;
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkConfiguration.Builder;
+
+/**
+ * Compiles the annotations of a test class into a {@link FrameworkConfiguration}
+ */
+final class ConfigurationCompiler {
+
+	private static final String NESTED = "org.junit.jupiter.api.Nested";
+
+	private ConfigurationCompiler() {
+	}
+
+	/**
+	 * @param testClass the class to check
+	 * @return <code>true</code> if the given class is a <code>@Nested</code> test
+	 *         class of another test class
+	 */
+	static boolean isNested(Class<?> testClass) {
+		// compared by name as the configuration is also compiled without JUnit
+		return testClass.getEnclosingClass() != null && !Modifier.isStatic(testClass.getModifiers())
+				&& Arrays.stream(testClass.getDeclaredAnnotations())
+						.anyMatch(annotation -> annotation.annotationType().getName().equals(NESTED));
+	}
+
+	/**
+	 * @param testClass the class to inspect
+	 * @return the configuration defined by the annotations of the given class
+	 */
+	static FrameworkConfiguration compile(Class<?> testClass) {
+		// nested test classes extend the configuration of their enclosing class
+		FrameworkConfiguration inherited = isNested(testClass)
+				? FrameworkConfiguration.of(testClass.getEnclosingClass())
+				: FrameworkConfiguration.builder().build();
+		// the variants of the enclosing class only apply to its own tests
+		Builder builder = FrameworkConfiguration.builder(inherited).withoutVariants();
+		for (WithBundle bundle : Annotations.findRepeatableAnnotations(testClass, WithBundle.class)) {
+			builder.withBundle(bundle.value(), bundle.start(), bundle.isolated(), bundle.lazy());
+		}
+		for (WithExportedPackage exportedPackage : Annotations.findRepeatableAnnotations(testClass,
+				WithExportedPackage.class)) {
+			builder.withExportedPackage(exportedPackage.value());
+		}
+		for (WithFrameworkProperty property : Annotations.findRepeatableAnnotations(testClass,
+				WithFrameworkProperty.class)) {
+			builder.withFrameworkProperty(property.property(), property.value());
+		}
+		for (WithConfiguration configuration : Annotations.findRepeatableAnnotations(testClass,
+				WithConfiguration.class)) {
+			Map<String, String> properties = new LinkedHashMap<>();
+			for (String property : configuration.properties()) {
+				int index = property.indexOf('=');
+				if (index < 0) {
+					throw new IllegalArgumentException("property of configuration " + configuration.pid()
+							+ " is not of the form key=value: " + property);
+				}
+				properties.put(property.substring(0, index).trim(), property.substring(index + 1).trim());
+			}
+			builder.withConfiguration(configuration.pid(), configuration.location(), properties);
+		}
+		Annotations.findAnnotation(testClass, WithFrameworkImplementation.class)
+				.ifPresent(annotation -> builder.withImplementation(annotation.value()));
+		Annotations.findAnnotation(testClass, FrameworkConcurrency.class).ifPresent(
+				annotation -> builder.withConcurrency(annotation.resolverThreads(), annotation.startLevelThreads()));
+		Annotations.findAnnotation(testClass, ReuseFrameworkStorage.class)
+				.ifPresent(annotation -> builder.reuseStorage(annotation.directory()));
+		Annotations.findAnnotation(testClass, TestImpactAnalysis.class)
+				.ifPresent(annotation -> builder.recordFootprints(annotation.file()));
+		Annotations.findAnnotation(testClass, DetectFrameworkLeaks.class)
+				.ifPresent(annotation -> builder.detectLeaks(annotation.failOnLeak(), annotation.timeout()));
+		Annotations.findAnnotation(testClass, FrameworkMemoryBudget.class)
+				.ifPresent(annotation -> builder.memoryBudget(annotation.maxRetainedMb(), annotation.failOnExceed(),
+						annotation.trendFile().isEmpty() ? null : annotation.trendFile()));
+		Optional<FrameworkStartupBudget> startupBudget = Annotations.findAnnotation(testClass,
+				FrameworkStartupBudget.class);
+		if (!startupBudget.isPresent() && testClass.getPackage() != null) {
+			// test classes without a budget use the one of their package
+			startupBudget = Annotations.findAnnotation(testClass.getPackage(), FrameworkStartupBudget.class);
+		}
+		startupBudget.ifPresent(annotation -> builder.startupBudget(annotation.millis(), annotation.failOnExceed(),
+				annotation.historyFile().isEmpty() ? null : annotation.historyFile(), annotation.percentile()));
+		FrameworkConfiguration base = builder
+				.pooled(inherited.isPooled() || Annotations.isAnnotated(testClass, PooledFramework.class))
+				.analyzeProbePackages(inherited.isAnalyzeProbePackages()
+						|| Annotations.isAnnotated(testClass, AnalyzeProbePackages.class))
+				.recordClassLoading(inherited.isRecordClassLoading()
+						|| Annotations.isAnnotated(testClass, RecordClassLoading.class))
+				.traceServiceRegistry(inherited.isTraceServiceRegistry()
+						|| Annotations.isAnnotated(testClass, TraceServiceRegistry.class))
+				.failOnBootErrors(
+						inherited.isFailOnBootErrors() || Annotations.isAnnotated(testClass, FailOnBootErrors.class))
+				.transitiveBundles(inherited.isTransitiveBundles()
+						|| Annotations.isAnnotated(testClass, WithTransitiveBundles.class))
+				.build();
+		List<FrameworkVariant> variants = Annotations.findRepeatableAnnotations(testClass,
+				FrameworkVariant.class);
+		if (variants.isEmpty()) {
+			return base;
+		}
+		Builder matrix = FrameworkConfiguration.builder(base);
+		for (FrameworkVariant variant : variants) {
+			Builder variantBuilder = FrameworkConfiguration.builder(base);
+			if (!variant.implementation().isEmpty()) {
+				variantBuilder.withImplementation(variant.implementation());
+			}
+			for (String bundle : variant.isolated()) {
+				variantBuilder.withBundle(bundle, false, true, false);
+			}
+			for (String property : variant.properties()) {
+				int index = property.indexOf('=');
+				if (index < 0) {
+					throw new IllegalArgumentException(
+							"framework property of variant " + variant.name() + " is not of the form key=value: "
+									+ property);
+				}
+				variantBuilder.withFrameworkProperty(property.substring(0, index).trim(),
+						property.substring(index + 1).trim());
+			}
+			matrix.withVariant(variant.name(), variantBuilder.build());
+		}
+		return matrix.build();
+	}
+
+}
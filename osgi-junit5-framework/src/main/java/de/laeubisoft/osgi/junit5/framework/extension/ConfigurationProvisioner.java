@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkConfiguration.PidConfiguration;
+
+/**
+ * Applies the configurations of a test class through the Configuration Admin of
+ * the framework, the Configuration Admin API is used reflectively as it is
+ * loaded by the bundle providing it and does not need to be on the classpath
+ * of the extension
+ */
+final class ConfigurationProvisioner {
+
+	static final String CONFIGURATION_ADMIN = "org.osgi.service.cm.ConfigurationAdmin";
+	private static final String CM_IMPLEMENTATION = "osgi.cm";
+
+	private ConfigurationProvisioner() {
+	}
+
+	/**
+	 * @param module the module to check
+	 * @return <code>true</code> if the module declares to provide a
+	 *         Configuration Admin
+	 */
+	static boolean isConfigurationAdmin(JUnit5Module module) {
+		return module.getHeaders().map(headers -> headers.get(Constants.PROVIDE_CAPABILITY))
+				.map(HeaderClause::parse)
+				.map(clauses -> clauses.stream()
+						.anyMatch(clause -> CM_IMPLEMENTATION.equals(clause.getAttribute("osgi.implementation"))
+								|| String.valueOf(clause.getAttribute(Constants.OBJECTCLASS))
+										.contains(CONFIGURATION_ADMIN)))
+				.orElse(false);
+	}
+
+	/**
+	 * Applies all configurations in one batch if a Configuration Admin is
+	 * registered
+	 * 
+	 * @param context        the context to acquire the Configuration Admin with
+	 * @param configurations the configurations to apply
+	 * @return <code>true</code> if the configurations where applied,
+	 *         <code>false</code> if no Configuration Admin is registered (yet)
+	 * @throws BundleException if a configuration can not be applied
+	 */
+	static boolean apply(BundleContext context, List<PidConfiguration> configurations) throws BundleException {
+		ServiceReference<?> reference = context.getServiceReference(CONFIGURATION_ADMIN);
+		if (reference == null) {
+			return false;
+		}
+		Object admin = context.getService(reference);
+		if (admin == null) {
+			return false;
+		}
+		String pid = null;
+		try {
+			Method getConfiguration = findType(admin.getClass(), CONFIGURATION_ADMIN).getMethod("getConfiguration",
+					String.class, String.class);
+			Method update = getConfiguration.getReturnType().getMethod("update", Dictionary.class);
+			for (PidConfiguration configuration : configurations) {
+				pid = configuration.getPid();
+				Object target = getConfiguration.invoke(admin, pid, configuration.getLocation());
+				update.invoke(target, new Hashtable<String, Object>(configuration.getProperties()));
+			}
+			return true;
+		} catch (InvocationTargetException e) {
+			throw new BundleException("Applying the configuration " + pid + " failed", e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new BundleException("The registered Configuration Admin can not be used", e);
+		} finally {
+			context.ungetService(reference);
+		}
+	}
+
+	private static Class<?> findType(Class<?> type, String name) throws ClassNotFoundException {
+		for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+			for (Class<?> interfaceType : current.getInterfaces()) {
+				if (interfaceType.getName().equals(name)) {
+					return interfaceType;
+				}
+			}
+		}
+		throw new ClassNotFoundException(name + " is not implemented by " + type.getName());
+	}
+
+}
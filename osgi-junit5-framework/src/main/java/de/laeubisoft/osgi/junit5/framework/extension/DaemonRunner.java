@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder.request;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.platform.engine.discovery.DiscoverySelectors;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.PooledFramework;
+
+/**
+ * Executes test classes inside a runner of the {@link FrameworkDaemon}, this
+ * class is loaded by the classloader of the test classpath and called
+ * reflectively so the JUnit Platform of the test classpath is used
+ */
+final class DaemonRunner {
+
+	private static final int MAX_REPORTED_FAILURES = 25;
+
+	private DaemonRunner() {
+	}
+
+	/**
+	 * @param classNames the test classes to execute
+	 * @param parameters the configuration parameters of the run
+	 * @return <code>0</code> if tests were found and all of them passed,
+	 *         <code>1</code> otherwise
+	 */
+	static int run(List<String> classNames, Map<String, String> parameters) {
+		Map<String, String> configuration = new HashMap<>(parameters);
+		// keep the frameworks warm for the next run
+		configuration.putIfAbsent(PooledFramework.POOLED_PARAMETER, Boolean.TRUE.toString());
+		LauncherDiscoveryRequest request = request()
+				.selectors(classNames.stream().map(DiscoverySelectors::selectClass).collect(Collectors.toList()))
+				.configurationParameters(configuration).build();
+		SummaryGeneratingListener listener = new SummaryGeneratingListener();
+		LauncherFactory.create().execute(request, listener);
+		TestExecutionSummary summary = listener.getSummary();
+		PrintWriter writer = new PrintWriter(System.out);
+		summary.printFailuresTo(writer, MAX_REPORTED_FAILURES);
+		summary.printTo(writer);
+		writer.flush();
+		return summary.getTestsFoundCount() > 0 && summary.getTotalFailureCount() == 0 ? 0 : 1;
+	}
+
+	/**
+	 * Stops the frameworks kept warm by the previous runs
+	 */
+	static void close() {
+		FrameworkPool.close();
+	}
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A process wide cache of the inflated bytes of class files read from jars, so
+ * the classloaders of isolated bundles in different frameworks (e.g. pooled or
+ * parallel ones) do not inflate the same class again. The cache is bound by the
+ * largest size any framework configured with
+ * {@link FrameworkExtension#ENTRY_CACHE_SIZE_PARAMETER} and evicts the least
+ * recently used entries, it is disabled until a size is configured.
+ */
+final class EntryBytesCache {
+
+	private static final EntryBytesCache INSTANCE = new EntryBytesCache();
+
+	private volatile long maxSize;
+	private final Map<Key, byte[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+	private long size;
+
+	private EntryBytesCache() {
+	}
+
+	/**
+	 * Enables the cache or grows it if it is smaller than the given size, the
+	 * cache never shrinks as other frameworks of the JVM may rely on it
+	 *
+	 * @param megabytes the size of the cache in megabytes
+	 */
+	static void ensureSize(long megabytes) {
+		long maxSize = megabytes * 1024 * 1024;
+		synchronized (INSTANCE) {
+			if (maxSize > INSTANCE.maxSize) {
+				INSTANCE.maxSize = maxSize;
+			}
+		}
+	}
+
+	/**
+	 * Disables the cache and drops all entries, only used by tests that enable
+	 * the cache
+	 */
+	static void reset() {
+		synchronized (INSTANCE) {
+			INSTANCE.maxSize = 0;
+			INSTANCE.entries.clear();
+			INSTANCE.size = 0;
+		}
+	}
+
+	/**
+	 * @return the cache or <code>null</code> if caching is disabled
+	 */
+	static EntryBytesCache get() {
+		return INSTANCE.maxSize > 0 ? INSTANCE : null;
+	}
+
+	/**
+	 * @param length the length of an entry
+	 * @return <code>true</code> if an entry of the given length is worth caching
+	 */
+	boolean accepts(long length) {
+		// a single entry must not evict most of the cache
+		return length >= 0 && length <= maxSize / 16;
+	}
+
+	synchronized byte[] get(Key key) {
+		return entries.get(key);
+	}
+
+	synchronized void put(Key key, byte[] bytes) {
+		byte[] previous = entries.put(key, bytes);
+		if (previous != null) {
+			size -= previous.length;
+		}
+		size += bytes.length;
+		for (Iterator<byte[]> iterator = entries.values().iterator(); size > maxSize && iterator.hasNext();) {
+			size -= iterator.next().length;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Identifies the content of an entry, the CRC of the entry changes when the
+	 * jar is rebuilt with different content even if the time stamps are equal
+	 */
+	static final class Key {
+
+		private final String jar;
+		private final long jarModified;
+		private final String name;
+		private final long crc;
+		private final int hashCode;
+
+		Key(String jar, long jarModified, String name, long crc) {
+			this.jar = jar;
+			this.jarModified = jarModified;
+			this.name = name;
+			this.crc = crc;
+			this.hashCode = Objects.hash(jar, jarModified, name, crc);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return jarModified == other.jarModified && crc == other.crc && jar.equals(other.jar)
+					&& name.equals(other.name);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+import de.laeubisoft.osgi.junit5.framework.services.FrameworkEvents;
+
+/**
+ * Collects the problems of a framework boot, that are bundles failing to
+ * start, errors reported as framework events and bundles that can not be
+ * resolved together with their unsatisfied requirements
+ */
+class FrameworkBootVerifier {
+
+	private static final long EVENT_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+	private final List<String> problems = new ArrayList<>();
+	private final List<Throwable> causes = new ArrayList<>();
+	private final Set<Bundle> failedBundles = new HashSet<>();
+
+	/**
+	 * Records a bundle that failed to start instead of aborting the boot
+	 * 
+	 * @param bundle the bundle that failed to start
+	 * @param e      the exception thrown by the start
+	 */
+	void startFailed(Bundle bundle, BundleException e) {
+		problems.add(bundle.getSymbolicName() + " failed to start: " + describe(e));
+		failedBundles.add(bundle);
+		causes.add(e);
+	}
+
+	/**
+	 * Records the bundles the start level of the framework failed to activate,
+	 * unlike a direct start the framework only reports these as error events
+	 * 
+	 * @param framework the started framework
+	 * @param events    the framework events recorded since the framework was
+	 *                  initialized
+	 * @param bundles   the bundles marked to be started
+	 */
+	void activated(Framework framework, FrameworkEvents events, Collection<Bundle> bundles) {
+		awaitPendingEvents(framework.adapt(FrameworkWiring.class));
+		for (Bundle bundle : bundles) {
+			if (failedBundles.contains(bundle) || (bundle.getState() & (Bundle.ACTIVE | Bundle.STARTING)) != 0) {
+				continue;
+			}
+			BundleException exception = events.events(FrameworkEvent.ERROR)
+					.filter(event -> event.getBundle() == bundle).map(FrameworkEvent::getThrowable)
+					.filter(BundleException.class::isInstance).map(BundleException.class::cast).findFirst()
+					.orElseGet(() -> new BundleException("the start level did not activate the bundle",
+							BundleException.ACTIVATOR_ERROR));
+			startFailed(bundle, exception);
+		}
+	}
+
+	/**
+	 * Throws a consolidated report of the bundles that failed to start
+	 * 
+	 * @throws BundleException if any bundle failed to start
+	 */
+	void verifyStarts() throws BundleException {
+		if (!problems.isEmpty()) {
+			throw report();
+		}
+	}
+
+	/**
+	 * Verifies the booted framework and throws a consolidated report of all
+	 * problems
+	 * 
+	 * @param framework the booted framework
+	 * @param events    the framework events recorded since the framework was
+	 *                  initialized
+	 * @throws BundleException if any problem was found
+	 */
+	void verify(Framework framework, FrameworkEvents events) throws BundleException {
+		FrameworkWiring frameworkWiring = framework.adapt(FrameworkWiring.class);
+		List<Bundle> bundles = Arrays.stream(framework.getBundleContext().getBundles())
+				.filter(bundle -> bundle.getBundleId() != Constants.SYSTEM_BUNDLE_ID).collect(Collectors.toList());
+		frameworkWiring.resolveBundles(bundles);
+		awaitPendingEvents(frameworkWiring);
+		events.events(FrameworkEvent.ERROR).forEach(event -> {
+			if (failedBundles.contains(event.getBundle())) {
+				// the framework usually reports the failed start as an error too
+				return;
+			}
+			Throwable throwable = event.getThrowable();
+			problems.add(event.getBundle().getSymbolicName() + " reported an error: "
+					+ (throwable == null ? "no details" : describe(throwable)));
+			if (throwable != null) {
+				causes.add(throwable);
+			}
+		});
+		for (Bundle bundle : bundles) {
+			if (bundle.getState() == Bundle.INSTALLED) {
+				problems.add(bundle.getSymbolicName() + " can not be resolved: "
+						+ describeUnresolved(bundle, frameworkWiring));
+			}
+		}
+		verifyStarts();
+	}
+
+	private BundleException report() {
+		BundleException exception = new BundleException("The framework failed to boot:" + System.lineSeparator()
+				+ problems.stream().map(problem -> "\t" + problem).collect(Collectors.joining(System.lineSeparator())));
+		causes.forEach(exception::addSuppressed);
+		return exception;
+	}
+
+	/**
+	 * framework events are delivered asynchronously but in order, so once the
+	 * event of an (empty) refresh arrives all earlier errors have been delivered
+	 */
+	private static void awaitPendingEvents(FrameworkWiring frameworkWiring) {
+		CountDownLatch refreshed = new CountDownLatch(1);
+		frameworkWiring.refreshBundles(Collections.emptyList(), event -> refreshed.countDown());
+		try {
+			refreshed.await(EVENT_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			// verify what was delivered so far
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static String describeUnresolved(Bundle bundle, FrameworkWiring frameworkWiring) {
+		BundleRevision revision = bundle.adapt(BundleRevision.class);
+		if (revision == null) {
+			return "the bundle has no revision";
+		}
+		List<String> missing = new ArrayList<>();
+		for (BundleRequirement requirement : revision.getDeclaredRequirements(null)) {
+			String resolution = requirement.getDirectives().get(Constants.RESOLUTION_DIRECTIVE);
+			String effective = requirement.getDirectives().get(Constants.EFFECTIVE_DIRECTIVE);
+			if (Constants.RESOLUTION_OPTIONAL.equals(resolution) || "dynamic".equals(resolution)
+					|| (effective != null && !Constants.EFFECTIVE_RESOLVE.equals(effective))) {
+				continue;
+			}
+			Collection<BundleCapability> providers = frameworkWiring.findProviders(requirement);
+			if (providers.isEmpty()) {
+				missing.add(describe(requirement) + " (missing)");
+			} else if (providers.stream()
+					.allMatch(provider -> provider.getRevision().getBundle().getState() == Bundle.INSTALLED)) {
+				missing.add(describe(requirement) + " (only provided by unresolved "
+						+ providers.stream().map(provider -> provider.getRevision().getSymbolicName()).distinct()
+								.collect(Collectors.joining(", "))
+						+ ")");
+			}
+		}
+		if (missing.isEmpty()) {
+			return "all requirements have providers, this is likely a uses constraint violation";
+		}
+		return String.join(", ", missing);
+	}
+
+	private static String describe(BundleRequirement requirement) {
+		String filter = requirement.getDirectives().get(Constants.FILTER_DIRECTIVE);
+		return requirement.getNamespace() + (filter == null ? "" : filter);
+	}
+
+	private static String describe(Throwable throwable) {
+		Throwable cause = throwable;
+		while (cause.getCause() != null && cause.getCause() != cause) {
+			cause = cause.getCause();
+		}
+		return cause == throwable ? String.valueOf(throwable.getMessage())
+				: throwable.getMessage() + " caused by " + cause;
+	}
+
+}
@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Measures the memory a framework retains and the time it takes to boot and
+ * verifies them against the budgets of its configuration. Heap and metaspace
+ * are measured for the whole JVM, so a measurement that overlaps with the boot
+ * of another framework (e.g. the variants of a <code>@FrameworkMatrix</code> or
+ * parallel test classes) is skipped and reported as such.
+ */
+final class FrameworkBudgets {
+
+	/**
+	 * startups required before regressions are reported
+	 */
+	private static final int MIN_STARTUP_HISTORY = 5;
+	/**
+	 * startups considered for the percentile
+	 */
+	private static final int MAX_STARTUP_HISTORY = 50;
+	/**
+	 * the measurements of the frameworks currently booting in this JVM
+	 */
+	private static final Set<FrameworkBudgets> BOOTING = ConcurrentHashMap.newKeySet();
+
+	private final MemoryBudgetConfiguration memoryBudget;
+	private final StartupBudgetConfiguration startupBudget;
+	private final long startupBegin;
+	private FrameworkMemoryMeter memoryMeter;
+	private long startupNanos = -1;
+	private volatile boolean concurrent;
+
+	/**
+	 * Starts measuring, must be created before the framework is booted
+	 * 
+	 * @param configuration the configuration of the framework
+	 */
+	FrameworkBudgets(FrameworkConfiguration configuration) {
+		memoryBudget = configuration.getMemoryBudget();
+		startupBudget = configuration.getStartupBudget();
+		if (memoryBudget.isEnabled()) {
+			memoryMeter = FrameworkMemoryMeter.start();
+		}
+		synchronized (BOOTING) {
+			if (!BOOTING.isEmpty()) {
+				concurrent = true;
+				BOOTING.forEach(other -> other.concurrent = true);
+			}
+			BOOTING.add(this);
+		}
+		startupBegin = System.nanoTime();
+	}
+
+	/**
+	 * Stops measuring once the framework and all its bundles are started
+	 */
+	void started() {
+		BOOTING.remove(this);
+		if (startupBudget.isEnabled()) {
+			startupNanos = System.nanoTime() - startupBegin;
+		}
+		if (memoryMeter != null) {
+			memoryMeter.stop();
+		}
+	}
+
+	/**
+	 * Stops measuring a framework that failed to boot
+	 */
+	void cancel() {
+		BOOTING.remove(this);
+		memoryMeter = null;
+		startupNanos = -1;
+	}
+
+	/**
+	 * Verifies the memory retained by the framework against the budget of the
+	 * configuration and records it in the trend file, this is only done once
+	 * after the framework was created, unless other frameworks booted at the
+	 * same time
+	 * 
+	 * @param testClass the test class the framework was created for
+	 * @param framework the symbolic name of the framework
+	 * @param report    receives the measured memory and a warning if the budget
+	 *                  is exceeded
+	 * @throws IOException    if writing the trend file fails
+	 * @throws AssertionError if the budget is exceeded and the configuration
+	 *                        requests to fail
+	 */
+	void verifyMemory(Class<?> testClass, String framework, Consumer<String> report) throws IOException {
+		FrameworkMemoryMeter meter = memoryMeter;
+		if (meter == null) {
+			return;
+		}
+		memoryMeter = null;
+		if (concurrent) {
+			report.accept("Memory budget skipped as other frameworks booted concurrently");
+			return;
+		}
+		report.accept(meter.toString());
+		long budget = memoryBudget.getMaxRetainedMb() * 1024 * 1024;
+		Optional<String> trendFile = memoryBudget.getTrendFile();
+		if (trendFile.isPresent()) {
+			new TrendFile(new File(trendFile.get()), "timestamp", "class", "framework", "heap", "metaspace", "budget")
+					.append(System.currentTimeMillis(), testClass.getName(), framework, meter.getRetainedHeap(),
+							meter.getRetainedMetaspace(), budget);
+		}
+		if (meter.getRetained() <= budget) {
+			return;
+		}
+		String message = "Framework for " + testClass.getName() + " retains " + meter.getRetained() / 1024
+				+ "KB (" + meter + ") which exceeds the budget of " + memoryBudget.getMaxRetainedMb() + "MB";
+		if (memoryBudget.isFailOnExceed()) {
+			throw new AssertionError(message);
+		}
+		report.accept(message);
+	}
+
+	/**
+	 * Verifies the time it took to boot and start the framework against the
+	 * budget of the configuration and the history of previous startups, this is
+	 * only done once after the framework was created, unless other frameworks
+	 * booted at the same time
+	 * 
+	 * @param testClass the test class the framework was created for
+	 * @param framework the symbolic name of the framework
+	 * @param report    receives the measured time, regressions and a warning if
+	 *                  the budget is exceeded
+	 * @throws IOException    if reading or writing the history file fails
+	 * @throws AssertionError if the budget is exceeded and the configuration
+	 *                        requests to fail
+	 */
+	void verifyStartup(Class<?> testClass, String framework, Consumer<String> report) throws IOException {
+		long nanos = startupNanos;
+		if (nanos < 0) {
+			return;
+		}
+		startupNanos = -1;
+		if (concurrent) {
+			report.accept("Startup budget skipped as other frameworks booted concurrently");
+			return;
+		}
+		long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		report.accept(millis + "ms");
+		Optional<String> historyFile = startupBudget.getHistoryFile();
+		if (historyFile.isPresent()) {
+			TrendFile history = new TrendFile(new File(historyFile.get()), "timestamp", "class", "framework",
+					"millis", "budget");
+			List<Long> previous = new ArrayList<>();
+			for (String[] line : history.read()) {
+				if (line.length == 5 && line[1].equals(testClass.getName()) && line[2].equals(framework)) {
+					try {
+						previous.add(Long.parseLong(line[3]));
+					} catch (NumberFormatException e) {
+						// a truncated or edited line must not fail the test class
+					}
+				}
+			}
+			if (previous.size() >= MIN_STARTUP_HISTORY) {
+				// only the most recent startups are relevant
+				List<Long> recent = previous.subList(Math.max(0, previous.size() - MAX_STARTUP_HISTORY),
+						previous.size());
+				long percentile = percentile(recent, startupBudget.getPercentile());
+				if (millis > percentile) {
+					report.accept("Framework for " + testClass.getName() + " started in " + millis
+							+ "ms which is slower than the " + startupBudget.getPercentile()
+							+ "th percentile (" + percentile + "ms) of the last " + recent.size() + " startups");
+				}
+			}
+			history.append(System.currentTimeMillis(), testClass.getName(), framework, millis,
+					startupBudget.getMillis());
+		}
+		if (millis <= startupBudget.getMillis()) {
+			return;
+		}
+		String message = "Framework for " + testClass.getName() + " started in " + millis
+				+ "ms which exceeds the budget of " + startupBudget.getMillis() + "ms";
+		if (startupBudget.isFailOnExceed()) {
+			throw new AssertionError(message);
+		}
+		report.accept(message);
+	}
+
+	private static long percentile(List<Long> values, int percentile) {
+		List<Long> sorted = new ArrayList<>(values);
+		Collections.sort(sorted);
+		// nearest rank
+		int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+		return sorted.get(Math.max(0, rank - 1));
+	}
+
+}
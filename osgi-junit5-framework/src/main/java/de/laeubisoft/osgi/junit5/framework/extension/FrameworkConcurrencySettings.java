@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.Map;
+import java.util.Optional;
+
+import org.osgi.framework.connect.ConnectFrameworkFactory;
+
+/**
+ * Maps the framework neutral {@link FrameworkConcurrency} settings to the
+ * properties of the selected framework implementation. The dispatch of
+ * asynchronous events is not mapped, Equinox and Felix both deliver them from
+ * a single dedicated thread per framework that can not be configured, and
+ * synchronous listeners always run in the thread causing the event.
+ */
+final class FrameworkConcurrencySettings {
+
+	private static final String EQUINOX_FACTORY = "org.eclipse.osgi.launch.EquinoxFactory";
+	private static final String FELIX_FACTORY = "org.apache.felix.framework.FrameworkFactory";
+
+	private final int resolverThreads;
+	private final int startLevelThreads;
+
+	private FrameworkConcurrencySettings(int resolverThreads, int startLevelThreads) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		this.resolverThreads = resolverThreads > 0 ? resolverThreads : processors;
+		// failing activators of the start level are reported by the boot verifier
+		this.startLevelThreads = startLevelThreads > 0 ? startLevelThreads : processors;
+	}
+
+	/**
+	 * @return <code>true</code> if bundles should be activated by the start level
+	 *         of the framework instead of being started one after another, the
+	 *         framework then only reports failing activators as error events
+	 */
+	boolean isStartLevelActivation() {
+		return startLevelThreads > 1;
+	}
+
+	/**
+	 * Adds the properties for the given factory, properties already present are
+	 * left untouched
+	 * 
+	 * @param factory             the factory used to create the framework
+	 * @param frameworkProperties the properties to modify
+	 */
+	void applyTo(ConnectFrameworkFactory factory, Map<String, String> frameworkProperties) {
+		String implementation = factory.getClass().getName();
+		if (EQUINOX_FACTORY.equals(implementation)) {
+			frameworkProperties.putIfAbsent("equinox.resolver.thread.count", String.valueOf(resolverThreads));
+			frameworkProperties.putIfAbsent("equinox.start.level.thread.count", String.valueOf(startLevelThreads));
+			frameworkProperties.putIfAbsent("equinox.start.level.restrict.parallel",
+					String.valueOf(startLevelThreads <= 1));
+		} else if (FELIX_FACTORY.equals(implementation)) {
+			// Felix always activates a start level in a single thread
+			frameworkProperties.putIfAbsent("felix.resolver.parallelism", String.valueOf(resolverThreads));
+		}
+	}
+
+	/**
+	 * @param configuration the framework configuration
+	 * @return the settings of the configuration, or an empty optional if
+	 *         concurrency is not configured
+	 */
+	static Optional<FrameworkConcurrencySettings> of(FrameworkConfiguration configuration) {
+		ConcurrencyConfiguration concurrency = configuration.getConcurrency();
+		if (concurrency.isConfigured()) {
+			return Optional.of(new FrameworkConcurrencySettings(concurrency.getResolverThreads(),
+					concurrency.getStartLevelThreads()));
+		}
+		return Optional.empty();
+	}
+
+}
@@ -0,0 +1,834 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.AnalyzeProbePackages;
+import de.laeubisoft.osgi.junit5.framework.annotations.DetectFrameworkLeaks;
+import de.laeubisoft.osgi.junit5.framework.annotations.FailOnBootErrors;
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkConcurrency;
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkMemoryBudget;
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkStartupBudget;
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkVariant;
+import de.laeubisoft.osgi.junit5.framework.annotations.PooledFramework;
+import de.laeubisoft.osgi.junit5.framework.annotations.RecordClassLoading;
+import de.laeubisoft.osgi.junit5.framework.annotations.ReuseFrameworkStorage;
+import de.laeubisoft.osgi.junit5.framework.annotations.TestImpactAnalysis;
+import de.laeubisoft.osgi.junit5.framework.annotations.TraceServiceRegistry;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithBundle;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithConfiguration;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithExportedPackage;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithFrameworkImplementation;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithFrameworkProperty;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithTransitiveBundles;
+
+/**
+ * The immutable configuration of an embedded framework, either compiled from
+ * the annotations of a test class with {@link #of(Class)} or created
+ * programmatically with a {@link #builder() builder}. Two configurations are
+ * equal if they result in the same framework.
+ */
+public final class FrameworkConfiguration {
+
+	private static final ClassValue<FrameworkConfiguration> compiled = new ClassValue<FrameworkConfiguration>() {
+
+		@Override
+		protected FrameworkConfiguration computeValue(Class<?> type) {
+			return ConfigurationCompiler.compile(type);
+		}
+	};
+
+	private final List<BundleConfiguration> bundles;
+	private final List<String> exportedPackages;
+	private final Map<String, String> frameworkProperties;
+	private final List<PidConfiguration> configurations;
+	private final String implementation;
+	private final ConcurrencyConfiguration concurrency;
+	private final StorageConfiguration storage;
+	private final boolean pooled;
+	private final boolean analyzeProbePackages;
+	private final boolean recordClassLoading;
+	private final boolean traceServiceRegistry;
+	private final boolean failOnBootErrors;
+	private final boolean transitiveBundles;
+	private final String impactFile;
+	private final LeakDetectionConfiguration leakDetection;
+	private final MemoryBudgetConfiguration memoryBudget;
+	private final StartupBudgetConfiguration startupBudget;
+	private final Map<String, FrameworkConfiguration> variants;
+	private final int hashCode;
+
+	private FrameworkConfiguration(Builder builder) {
+		bundles = Collections.unmodifiableList(new ArrayList<>(builder.bundles.values()));
+		exportedPackages = Collections.unmodifiableList(new ArrayList<>(builder.exportedPackages));
+		frameworkProperties = Collections.unmodifiableMap(new TreeMap<>(builder.frameworkProperties));
+		configurations = Collections.unmodifiableList(new ArrayList<>(builder.configurations.values()));
+		implementation = builder.implementation;
+		concurrency = builder.concurrency;
+		storage = builder.storage;
+		pooled = builder.pooled;
+		analyzeProbePackages = builder.analyzeProbePackages;
+		recordClassLoading = builder.recordClassLoading;
+		traceServiceRegistry = builder.traceServiceRegistry;
+		failOnBootErrors = builder.failOnBootErrors;
+		transitiveBundles = builder.transitiveBundles;
+		impactFile = builder.impactFile;
+		leakDetection = builder.leakDetection;
+		memoryBudget = builder.memoryBudget;
+		startupBudget = builder.startupBudget;
+		variants = Collections.unmodifiableMap(new LinkedHashMap<>(builder.variants));
+		hashCode = Objects.hash(bundles, exportedPackages, frameworkProperties, configurations, implementation,
+				concurrency, storage, pooled, analyzeProbePackages, recordClassLoading, traceServiceRegistry,
+				failOnBootErrors, transitiveBundles, impactFile, leakDetection, memoryBudget, startupBudget, variants);
+	}
+
+	/**
+	 * @return the bundles to install
+	 */
+	public List<BundleConfiguration> getBundles() {
+		return bundles;
+	}
+
+	/**
+	 * @param name the name of the bundle
+	 * @return the configuration of the bundle with the given name
+	 */
+	public Optional<BundleConfiguration> getBundle(String name) {
+		return bundles.stream().filter(bundle -> bundle.getName().equals(name)).findFirst();
+	}
+
+	/**
+	 * @return the additional packages exported by the test probe
+	 */
+	public List<String> getExportedPackages() {
+		return exportedPackages;
+	}
+
+	/**
+	 * @return the configurations provided through the Configuration Admin of
+	 *         the framework
+	 */
+	public List<PidConfiguration> getConfigurations() {
+		return configurations;
+	}
+
+	/**
+	 * @return the additional framework properties
+	 */
+	public Map<String, String> getFrameworkProperties() {
+		return frameworkProperties;
+	}
+
+	/**
+	 * @return the requested framework implementation
+	 * @see WithFrameworkImplementation
+	 */
+	public Optional<String> getImplementation() {
+		return Optional.ofNullable(implementation);
+	}
+
+	/**
+	 * @return the concurrency of the framework
+	 */
+	public ConcurrencyConfiguration getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * @return the storage of the framework
+	 */
+	public StorageConfiguration getStorage() {
+		return storage;
+	}
+
+	/**
+	 * @return <code>true</code> if the framework is kept in a pool
+	 */
+	public boolean isPooled() {
+		return pooled;
+	}
+
+	/**
+	 * @return <code>true</code> if the packages of the test probe are computed
+	 *         from its classes
+	 */
+	public boolean isAnalyzeProbePackages() {
+		return analyzeProbePackages;
+	}
+
+	/**
+	 * @return <code>true</code> if class loading statistics are recorded
+	 */
+	public boolean isRecordClassLoading() {
+		return recordClassLoading;
+	}
+
+	/**
+	 * @return <code>true</code> if the calls to the service registry are traced
+	 */
+	public boolean isTraceServiceRegistry() {
+		return traceServiceRegistry;
+	}
+
+	/**
+	 * @return <code>true</code> if the creation of the framework is aborted when
+	 *         it fails to boot cleanly
+	 */
+	public boolean isFailOnBootErrors() {
+		return failOnBootErrors;
+	}
+
+	/**
+	 * @return <code>true</code> if bundles required by the configured bundles
+	 *         are installed as well
+	 */
+	public boolean isTransitiveBundles() {
+		return transitiveBundles;
+	}
+
+	/**
+	 * @return the file where test footprints are recorded, or an empty optional
+	 *         if no footprints are recorded
+	 */
+	public Optional<String> getImpactFile() {
+		return Optional.ofNullable(impactFile);
+	}
+
+	/**
+	 * @return how leaked frameworks are detected
+	 */
+	public LeakDetectionConfiguration getLeakDetection() {
+		return leakDetection;
+	}
+
+	/**
+	 * @return the budget for the memory retained by the framework
+	 */
+	public MemoryBudgetConfiguration getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * @return the budget for the startup time of the framework
+	 */
+	public StartupBudgetConfiguration getStartupBudget() {
+		return startupBudget;
+	}
+
+	/**
+	 * @return the variants of this configuration by their name, empty if the
+	 *         configuration does not define a matrix
+	 * @see FrameworkVariant
+	 */
+	public Map<String, FrameworkConfiguration> getVariants() {
+		return variants;
+	}
+
+	/**
+	 * @return a configuration that only contains the items relevant for the
+	 *         framework itself but not for the test probe, two test classes
+	 *         with equal framework configurations can share a framework
+	 */
+	FrameworkConfiguration getFrameworkPart() {
+		Builder builder = new Builder(this);
+		builder.exportedPackages.clear();
+		builder.analyzeProbePackages = false;
+		builder.failOnBootErrors = false;
+		builder.storage = storage.getFrameworkPart();
+		builder.memoryBudget = MemoryBudgetConfiguration.NONE;
+		builder.startupBudget = StartupBudgetConfiguration.NONE;
+		builder.variants.clear();
+		return builder.build();
+	}
+
+	/**
+	 * Computes the bundles this configuration adds to the given one, a nested
+	 * test class can extend the framework of its enclosing class with them
+	 * 
+	 * @param base the configuration of an existing framework
+	 * @return the bundles not configured by the given configuration, or an empty
+	 *         optional if this configuration differs in any other way from the
+	 *         framework part of the given one
+	 */
+	Optional<List<BundleConfiguration>> getAdditionalBundles(FrameworkConfiguration base) {
+		Builder builder = new Builder(getFrameworkPart());
+		List<BundleConfiguration> additional = new ArrayList<>();
+		for (BundleConfiguration bundle : bundles) {
+			if (!base.getBundle(bundle.name).isPresent()) {
+				additional.add(bundle);
+				builder.bundles.remove(bundle.name);
+			}
+		}
+		if (builder.build().equals(base.getFrameworkPart())) {
+			return Optional.of(additional);
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Fills the items the configuration does not define from the given
+	 * configuration parameters
+	 * 
+	 * @param configurationParameters the global configuration parameters
+	 * @return the configuration with the defaults applied
+	 */
+	FrameworkConfiguration withDefaults(Function<String, Optional<String>> configurationParameters) {
+		Builder builder = new Builder(this);
+		if (implementation == null) {
+			builder.implementation = configurationParameters
+					.apply(WithFrameworkImplementation.IMPLEMENTATION_PARAMETER).orElse(null);
+		}
+		builder.concurrency = concurrency.withDefaults(configurationParameters);
+		builder.storage = storage.withDefaults(configurationParameters);
+		if (!pooled) {
+			builder.pooled = configurationParameters.apply(PooledFramework.POOLED_PARAMETER)
+					.map(Boolean::parseBoolean).orElse(false);
+		}
+		if (!failOnBootErrors) {
+			builder.failOnBootErrors = configurationParameters
+					.apply(FailOnBootErrors.FAIL_ON_BOOT_ERRORS_PARAMETER).map(Boolean::parseBoolean).orElse(false);
+		}
+		FrameworkConfiguration configuration = builder.build();
+		return equals(configuration) ? this : configuration;
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof FrameworkConfiguration)) {
+			return false;
+		}
+		FrameworkConfiguration other = (FrameworkConfiguration) obj;
+		return hashCode == other.hashCode && bundles.equals(other.bundles)
+				&& exportedPackages.equals(other.exportedPackages)
+				&& frameworkProperties.equals(other.frameworkProperties) && configurations.equals(other.configurations)
+				&& Objects.equals(implementation, other.implementation) && concurrency.equals(other.concurrency)
+				&& storage.equals(other.storage) && pooled == other.pooled
+				&& analyzeProbePackages == other.analyzeProbePackages
+				&& recordClassLoading == other.recordClassLoading
+				&& traceServiceRegistry == other.traceServiceRegistry && failOnBootErrors == other.failOnBootErrors
+				&& transitiveBundles == other.transitiveBundles && Objects.equals(impactFile, other.impactFile)
+				&& leakDetection.equals(other.leakDetection) && memoryBudget.equals(other.memoryBudget)
+				&& startupBudget.equals(other.startupBudget) && variants.equals(other.variants);
+	}
+
+	@Override
+	public String toString() {
+		return "FrameworkConfiguration [bundles=" + bundles + ", exportedPackages=" + exportedPackages
+				+ ", frameworkProperties=" + frameworkProperties + ", configurations=" + configurations
+				+ ", implementation=" + implementation + ", concurrency=" + concurrency + ", storage=" + storage
+				+ ", pooled=" + pooled + ", analyzeProbePackages=" + analyzeProbePackages + ", recordClassLoading="
+				+ recordClassLoading + ", traceServiceRegistry=" + traceServiceRegistry + ", failOnBootErrors="
+				+ failOnBootErrors + ", transitiveBundles=" + transitiveBundles + ", impactFile=" + impactFile
+				+ ", leakDetection=" + leakDetection + ", memoryBudget=" + memoryBudget + ", startupBudget="
+				+ startupBudget + ", variants=" + variants + "]";
+	}
+
+	/**
+	 * Returns the configuration defined by the annotations of the given class,
+	 * the configuration is only compiled once per class and includes the one of
+	 * the enclosing class for <code>@Nested</code> test classes
+	 * 
+	 * @param testClass the class to inspect
+	 * @return the configuration of the class
+	 */
+	public static FrameworkConfiguration of(Class<?> testClass) {
+		return compiled.get(testClass);
+	}
+
+	/**
+	 * @return a builder for a new configuration
+	 */
+	public static Builder builder() {
+		return new Builder(null);
+	}
+
+	/**
+	 * @param base the configuration to start with
+	 * @return a builder initialized with the items of the given configuration
+	 */
+	public static Builder builder(FrameworkConfiguration base) {
+		return new Builder(Objects.requireNonNull(base));
+	}
+
+	/**
+	 * The configuration of a single bundle
+	 */
+	public static final class BundleConfiguration {
+
+		private final String name;
+		private final boolean start;
+		private final boolean isolated;
+		private final boolean lazy;
+
+		BundleConfiguration(String name, boolean start, boolean isolated, boolean lazy) {
+			this.name = name;
+			this.start = start;
+			this.isolated = isolated;
+			this.lazy = lazy;
+		}
+
+		/**
+		 * @return the name of the bundle
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return <code>true</code> if the bundle is started
+		 * @see WithBundle#start()
+		 */
+		public boolean isStart() {
+			return start || lazy;
+		}
+
+		/**
+		 * @return <code>true</code> if the bundle uses an isolated classloader
+		 * @see WithBundle#isolated()
+		 */
+		public boolean isIsolated() {
+			return isolated;
+		}
+
+		/**
+		 * @return <code>true</code> if the bundle is started according to its
+		 *         activation policy
+		 * @see WithBundle#lazy()
+		 */
+		public boolean isLazy() {
+			return lazy;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(name, start, isolated, lazy);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof BundleConfiguration)) {
+				return false;
+			}
+			BundleConfiguration other = (BundleConfiguration) obj;
+			return name.equals(other.name) && start == other.start && isolated == other.isolated
+					&& lazy == other.lazy;
+		}
+
+		@Override
+		public String toString() {
+			return name + (start ? ";start" : "") + (isolated ? ";isolated" : "") + (lazy ? ";lazy" : "");
+		}
+	}
+
+	/**
+	 * A configuration provided through the Configuration Admin
+	 */
+	public static final class PidConfiguration {
+
+		private final String pid;
+		private final String location;
+		private final Map<String, String> properties;
+
+		PidConfiguration(String pid, String location, Map<String, String> properties) {
+			this.pid = pid;
+			this.location = location;
+			this.properties = Collections.unmodifiableMap(new TreeMap<>(properties));
+		}
+
+		/**
+		 * @return the persistent identity of the configuration
+		 */
+		public String getPid() {
+			return pid;
+		}
+
+		/**
+		 * @return the bundle location the configuration is bound to
+		 * @see WithConfiguration#location()
+		 */
+		public String getLocation() {
+			return location;
+		}
+
+		/**
+		 * @return the properties of the configuration
+		 */
+		public Map<String, String> getProperties() {
+			return properties;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(pid, location, properties);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof PidConfiguration)) {
+				return false;
+			}
+			PidConfiguration other = (PidConfiguration) obj;
+			return pid.equals(other.pid) && Objects.equals(location, other.location)
+					&& properties.equals(other.properties);
+		}
+
+		@Override
+		public String toString() {
+			return pid + "@" + location + properties;
+		}
+	}
+
+	/**
+	 * Builds a {@link FrameworkConfiguration}
+	 */
+	public static final class Builder {
+
+		private final Map<String, BundleConfiguration> bundles = new LinkedHashMap<>();
+		private final List<String> exportedPackages = new ArrayList<>();
+		private final Map<String, String> frameworkProperties = new LinkedHashMap<>();
+		private final Map<String, PidConfiguration> configurations = new LinkedHashMap<>();
+		private String implementation;
+		private ConcurrencyConfiguration concurrency = ConcurrencyConfiguration.NONE;
+		private StorageConfiguration storage = StorageConfiguration.DEFAULT;
+		private boolean pooled;
+		private boolean analyzeProbePackages;
+		private boolean recordClassLoading;
+		private boolean traceServiceRegistry;
+		private boolean failOnBootErrors;
+		private boolean transitiveBundles;
+		private String impactFile;
+		private LeakDetectionConfiguration leakDetection = LeakDetectionConfiguration.NONE;
+		private MemoryBudgetConfiguration memoryBudget = MemoryBudgetConfiguration.NONE;
+		private StartupBudgetConfiguration startupBudget = StartupBudgetConfiguration.NONE;
+		private final Map<String, FrameworkConfiguration> variants = new LinkedHashMap<>();
+
+		private Builder(FrameworkConfiguration base) {
+			if (base != null) {
+				base.bundles.forEach(bundle -> bundles.put(bundle.name, bundle));
+				exportedPackages.addAll(base.exportedPackages);
+				frameworkProperties.putAll(base.frameworkProperties);
+				base.configurations.forEach(configuration -> configurations.put(configuration.pid, configuration));
+				implementation = base.implementation;
+				concurrency = base.concurrency;
+				storage = base.storage;
+				pooled = base.pooled;
+				analyzeProbePackages = base.analyzeProbePackages;
+				recordClassLoading = base.recordClassLoading;
+				traceServiceRegistry = base.traceServiceRegistry;
+				failOnBootErrors = base.failOnBootErrors;
+				transitiveBundles = base.transitiveBundles;
+				impactFile = base.impactFile;
+				leakDetection = base.leakDetection;
+				memoryBudget = base.memoryBudget;
+				startupBudget = base.startupBudget;
+				variants.putAll(base.variants);
+			}
+		}
+
+		/**
+		 * Removes all variants, e.g. the inherited ones of an enclosing class
+		 * 
+		 * @return this builder
+		 */
+		Builder withoutVariants() {
+			variants.clear();
+			return this;
+		}
+
+		/**
+		 * Adds a bundle that is only installed
+		 * 
+		 * @param name the name of the bundle
+		 * @return this builder
+		 */
+		public Builder withBundle(String name) {
+			return withBundle(name, false, false, false);
+		}
+
+		/**
+		 * Adds a bundle, if the bundle was already added the flags are combined
+		 * 
+		 * @param name     the name of the bundle
+		 * @param start    if the bundle should be started
+		 * @param isolated if the bundle should use an isolated classloader
+		 * @param lazy     if the bundle should be started according to its
+		 *                 activation policy
+		 * @return this builder
+		 * @see WithBundle
+		 */
+		public Builder withBundle(String name, boolean start, boolean isolated, boolean lazy) {
+			BundleConfiguration existing = bundles.get(Objects.requireNonNull(name));
+			if (existing != null) {
+				start |= existing.start;
+				isolated |= existing.isolated;
+				lazy |= existing.lazy;
+			}
+			bundles.put(name, new BundleConfiguration(name, start, isolated, lazy));
+			return this;
+		}
+
+		/**
+		 * @param exportedPackage an additional package clause exported by the test
+		 *                        probe
+		 * @return this builder
+		 * @see WithExportedPackage
+		 */
+		public Builder withExportedPackage(String exportedPackage) {
+			exportedPackages.add(Objects.requireNonNull(exportedPackage));
+			return this;
+		}
+
+		/**
+		 * @param property the name of the framework property
+		 * @param value    the value of the framework property
+		 * @return this builder
+		 * @see WithFrameworkProperty
+		 */
+		public Builder withFrameworkProperty(String property, String value) {
+			frameworkProperties.put(Objects.requireNonNull(property), Objects.requireNonNull(value));
+			return this;
+		}
+
+		/**
+		 * Adds a configuration, if a configuration with the same pid was already
+		 * added the properties are merged
+		 * 
+		 * @param pid        the persistent identity of the configuration
+		 * @param location   the bundle location the configuration is bound to
+		 * @param properties the properties of the configuration
+		 * @return this builder
+		 * @see WithConfiguration
+		 */
+		public Builder withConfiguration(String pid, String location, Map<String, String> properties) {
+			PidConfiguration existing = configurations.get(Objects.requireNonNull(pid));
+			Map<String, String> merged = new LinkedHashMap<>();
+			if (existing != null) {
+				merged.putAll(existing.properties);
+			}
+			merged.putAll(properties);
+			configurations.put(pid, new PidConfiguration(pid, location, merged));
+			return this;
+		}
+
+		/**
+		 * @param implementation the framework implementation to use
+		 * @return this builder
+		 * @see WithFrameworkImplementation
+		 */
+		public Builder withImplementation(String implementation) {
+			this.implementation = implementation;
+			return this;
+		}
+
+		/**
+		 * @param resolverThreads   the number of resolver threads
+		 * @param startLevelThreads the number of start level threads
+		 * @return this builder
+		 * @see FrameworkConcurrency
+		 */
+		public Builder withConcurrency(int resolverThreads, int startLevelThreads) {
+			this.concurrency = new ConcurrencyConfiguration(true, resolverThreads, startLevelThreads);
+			return this;
+		}
+
+		/**
+		 * @param directory the directory of reused storages, an empty string for
+		 *                  the default one
+		 * @return this builder
+		 * @see ReuseFrameworkStorage
+		 */
+		public Builder reuseStorage(String directory) {
+			this.storage = storage.reuse(directory);
+			return this;
+		}
+
+		/**
+		 * @param pooled if the framework should be kept in a pool
+		 * @return this builder
+		 * @see PooledFramework
+		 */
+		public Builder pooled(boolean pooled) {
+			this.pooled = pooled;
+			return this;
+		}
+
+		/**
+		 * @param analyzeProbePackages if the packages of the test probe are
+		 *                             computed from its classes
+		 * @return this builder
+		 * @see AnalyzeProbePackages
+		 */
+		public Builder analyzeProbePackages(boolean analyzeProbePackages) {
+			this.analyzeProbePackages = analyzeProbePackages;
+			return this;
+		}
+
+		/**
+		 * @param recordClassLoading if class loading statistics are recorded
+		 * @return this builder
+		 * @see RecordClassLoading
+		 */
+		public Builder recordClassLoading(boolean recordClassLoading) {
+			this.recordClassLoading = recordClassLoading;
+			return this;
+		}
+
+		/**
+		 * @param traceServiceRegistry if the calls to the service registry are
+		 *                             traced
+		 * @return this builder
+		 * @see TraceServiceRegistry
+		 */
+		public Builder traceServiceRegistry(boolean traceServiceRegistry) {
+			this.traceServiceRegistry = traceServiceRegistry;
+			return this;
+		}
+
+		/**
+		 * @param failOnBootErrors if the creation of the framework is aborted when
+		 *                         it fails to boot cleanly
+		 * @return this builder
+		 * @see FailOnBootErrors
+		 */
+		public Builder failOnBootErrors(boolean failOnBootErrors) {
+			this.failOnBootErrors = failOnBootErrors;
+			return this;
+		}
+
+		/**
+		 * @param transitiveBundles if bundles required by the configured bundles
+		 *                          are installed as well
+		 * @return this builder
+		 * @see WithTransitiveBundles
+		 */
+		public Builder transitiveBundles(boolean transitiveBundles) {
+			this.transitiveBundles = transitiveBundles;
+			return this;
+		}
+
+		/**
+		 * @param entryCacheSize the size in megabytes of the cache for the class
+		 *                       bytes of isolated bundles or <code>0</code> if
+		 *                       they should not be cached
+		 * @return this builder
+		 * @see FrameworkExtension#ENTRY_CACHE_SIZE_PARAMETER
+		 */
+		public Builder entryCacheSize(long entryCacheSize) {
+			this.storage = storage.withEntryCacheSize(entryCacheSize);
+			return this;
+		}
+
+		/**
+		 * @param file the file where test footprints are recorded
+		 * @return this builder
+		 * @see TestImpactAnalysis
+		 */
+		public Builder recordFootprints(String file) {
+			this.impactFile = Objects.requireNonNull(file);
+			return this;
+		}
+
+		/**
+		 * @param failOnLeak if a leak fails the test
+		 * @param timeout    the time in milliseconds to wait for the framework to
+		 *                   be collected
+		 * @return this builder
+		 * @see DetectFrameworkLeaks
+		 */
+		public Builder detectLeaks(boolean failOnLeak, long timeout) {
+			this.leakDetection = new LeakDetectionConfiguration(true, failOnLeak, timeout);
+			return this;
+		}
+
+		/**
+		 * @param maxRetainedMb the maximum memory in megabytes the framework may
+		 *                      retain
+		 * @param failOnExceed  if exceeding the budget fails the test
+		 * @param trendFile     the file the measurements are appended to or
+		 *                      <code>null</code> if they should not be recorded
+		 * @return this builder
+		 * @see FrameworkMemoryBudget
+		 */
+		public Builder memoryBudget(long maxRetainedMb, boolean failOnExceed, String trendFile) {
+			this.memoryBudget = new MemoryBudgetConfiguration(true, maxRetainedMb, failOnExceed, trendFile);
+			return this;
+		}
+
+		/**
+		 * @param millis       the maximum time in milliseconds to boot and start
+		 *                     the framework
+		 * @param failOnExceed if exceeding the budget fails the test
+		 * @param historyFile  the file the startup times are appended to or
+		 *                     <code>null</code> if they should not be recorded
+		 * @param percentile   the percentile of previous startup times a startup
+		 *                     time must not exceed
+		 * @return this builder
+		 * @see FrameworkStartupBudget
+		 */
+		public Builder startupBudget(long millis, boolean failOnExceed, String historyFile, int percentile) {
+			this.startupBudget = new StartupBudgetConfiguration(true, millis, failOnExceed, historyFile, percentile);
+			return this;
+		}
+
+		/**
+		 * @param name    the name of the variant
+		 * @param variant the configuration of the variant
+		 * @return this builder
+		 * @see FrameworkVariant
+		 */
+		public Builder withVariant(String name, FrameworkConfiguration variant) {
+			if (!variant.getVariants().isEmpty()) {
+				throw new IllegalArgumentException("variant " + name + " must not define variants itself");
+			}
+			if (variants.putIfAbsent(Objects.requireNonNull(name), variant) != null) {
+				throw new IllegalArgumentException("duplicate variant " + name);
+			}
+			return this;
+		}
+
+		/**
+		 * @return the immutable configuration
+		 */
+		public FrameworkConfiguration build() {
+			return new FrameworkConfiguration(this);
+		}
+	}
+}
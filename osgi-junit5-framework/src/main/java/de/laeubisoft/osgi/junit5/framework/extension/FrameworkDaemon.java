@@ -0,0 +1,441 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.PooledFramework;
+
+/**
+ * A local daemon that keeps warm runners for test classpaths, so repeated test
+ * runs skip the start of the JVM, the loading of the framework classes and, as
+ * long as nothing changed, the boot of the frameworks, example:
+ *
+ * <pre>
+ * java -cp &lt;this jar and its dependencies&gt; de.laeubisoft.osgi.junit5.framework.extension.FrameworkDaemon
+ * </pre>
+ * 
+ * Test classes are then executed with the {@link FrameworkDaemonClient}. The
+ * daemon only listens on the loopback interface and writes its port together
+ * with a random token every request must present to a state file (see
+ * {@link #STATE_FILE_PROPERTY}).
+ * <p>
+ * A runner is leased by the fingerprint of the jar files of the classpath, it
+ * loads them with a classloader that is kept as long as the daemon runs, while
+ * the directories of the classpath (e.g. <code>target/classes</code>) are
+ * loaded by a child classloader that is replaced whenever their content has
+ * changed. Frameworks are kept warm inside a runner like with
+ * {@link PooledFramework}, so running unchanged classes again reuses the
+ * booted frameworks. Runs are executed one after another as the output of the
+ * tests is sent to the client of the run.
+ */
+public final class FrameworkDaemon implements Closeable {
+
+	/**
+	 * The system property for the state file of the daemon, by default
+	 * <code>osgi-junit5-framework-daemon-&lt;user&gt;.properties</code> in the
+	 * temporary directory is used
+	 */
+	public static final String STATE_FILE_PROPERTY = "osgi.junit5.framework.daemon.file";
+
+	static final String RUN = "run";
+	static final String STOP = "stop";
+	static final int OUTPUT = 'O';
+	static final int EXIT = 'X';
+	static final String PORT = "port";
+	static final String TOKEN = "token";
+
+	/**
+	 * the number of runners kept, when more classpaths are used the least
+	 * recently used runner is closed
+	 */
+	private static final int MAX_RUNNERS = 4;
+
+	private final File stateFile;
+	private final String token;
+	private final ServerSocket serverSocket;
+	// the runners by the fingerprint of their jars, ordered from least to most
+	// recently used
+	private final Map<String, Runner> runners = new LinkedHashMap<>(16, 0.75f, true);
+	private volatile boolean closed;
+
+	/**
+	 * Listens on a free port of the loopback interface and writes the state file
+	 * 
+	 * @param stateFile the file to write the port and the token to
+	 * @throws IOException if the socket can not be opened or the state file not
+	 *                     be written
+	 */
+	FrameworkDaemon(File stateFile) throws IOException {
+		this.stateFile = stateFile;
+		byte[] random = new byte[16];
+		new SecureRandom().nextBytes(random);
+		token = new BigInteger(1, random).toString(16);
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		try {
+			writeState();
+		} catch (IOException e) {
+			serverSocket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param args an optional state file, otherwise the one of
+	 *             {@link #getStateFile()} is used
+	 * @throws IOException if the daemon can not be started
+	 */
+	public static void main(String[] args) throws IOException {
+		File stateFile = args.length > 0 ? new File(args[0]) : getStateFile();
+		try (FrameworkDaemon daemon = new FrameworkDaemon(stateFile)) {
+			System.out.println("Framework daemon listening on port " + daemon.serverSocket.getLocalPort()
+					+ ", state written to " + stateFile);
+			daemon.serve();
+		}
+	}
+
+	/**
+	 * @return the state file configured by {@link #STATE_FILE_PROPERTY} or the
+	 *         default one
+	 */
+	static File getStateFile() {
+		String file = System.getProperty(STATE_FILE_PROPERTY);
+		if (file != null) {
+			return new File(file);
+		}
+		return new File(System.getProperty("java.io.tmpdir"),
+				"osgi-junit5-framework-daemon-" + System.getProperty("user.name") + ".properties");
+	}
+
+	private void writeState() throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(PORT, String.valueOf(serverSocket.getLocalPort()));
+		properties.setProperty(TOKEN, token);
+		File file = File.createTempFile("daemon", ".tmp", stateFile.getAbsoluteFile().getParentFile());
+		// only the owner may read the token
+		file.setReadable(false, false);
+		file.setReadable(true, true);
+		try (OutputStream stream = Files.newOutputStream(file.toPath())) {
+			properties.store(stream, "osgi-junit5-framework daemon");
+		}
+		Files.move(file.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Handles the requests of clients one after another until the daemon is
+	 * stopped or closed
+	 * 
+	 * @throws IOException if accepting a connection fails
+	 */
+	void serve() throws IOException {
+		while (!closed) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (SocketException e) {
+				if (closed) {
+					return;
+				}
+				throw e;
+			}
+			try {
+				handle(socket);
+			} catch (IOException e) {
+				// the client has gone, wait for the next one
+				System.err.println("Request failed: " + e);
+			}
+		}
+	}
+
+	private void handle(Socket socket) throws IOException {
+		try (Socket s = socket;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+			if (!token.equals(in.readUTF())) {
+				PrintStream stream = new PrintStream(new FrameOutputStream(out), true, "UTF-8");
+				stream.println("Invalid token, the state file " + stateFile + " belongs to another daemon");
+				exit(out, 2);
+				return;
+			}
+			String command = in.readUTF();
+			if (STOP.equals(command)) {
+				exit(out, 0);
+				close();
+				return;
+			}
+			if (!RUN.equals(command)) {
+				throw new IOException("unknown command " + command);
+			}
+			List<String> classpath = readList(in);
+			Map<String, String> parameters = new LinkedHashMap<>();
+			for (int i = in.readInt(); i > 0; i--) {
+				parameters.put(in.readUTF(), in.readUTF());
+			}
+			List<String> classNames = readList(in);
+			exit(out, run(classpath, parameters, classNames, new FrameOutputStream(out)));
+		}
+	}
+
+	private static List<String> readList(DataInputStream in) throws IOException {
+		List<String> list = new ArrayList<>();
+		for (int i = in.readInt(); i > 0; i--) {
+			list.add(in.readUTF());
+		}
+		return list;
+	}
+
+	private static void exit(DataOutputStream out, int exitValue) throws IOException {
+		out.writeByte(EXIT);
+		out.writeInt(exitValue);
+		out.flush();
+	}
+
+	private synchronized int run(List<String> classpath, Map<String, String> parameters, List<String> classNames,
+			OutputStream output) throws IOException {
+		PrintStream stream = new PrintStream(output, true, "UTF-8");
+		PrintStream out = System.out;
+		PrintStream err = System.err;
+		System.setOut(stream);
+		System.setErr(stream);
+		try {
+			return lease(classpath, stream).run(classNames, parameters);
+		} catch (Exception e) {
+			e.printStackTrace(stream);
+			return 1;
+		} finally {
+			stream.flush();
+			System.setOut(out);
+			System.setErr(err);
+		}
+	}
+
+	/**
+	 * @param classpath the classpath of the client
+	 * @param report    receives which runner is used
+	 * @return the runner for the given classpath with up to date classes of its
+	 *         directories
+	 */
+	private Runner lease(List<String> classpath, PrintStream report) throws IOException {
+		List<File> jars = new ArrayList<>();
+		List<File> directories = new ArrayList<>();
+		for (String entry : classpath) {
+			File file = new File(entry).getAbsoluteFile();
+			if (file.isDirectory()) {
+				directories.add(file);
+			} else if (file.isFile()) {
+				jars.add(file);
+			}
+		}
+		String fingerprint = fingerprint(jars);
+		Runner runner = runners.get(fingerprint);
+		if (runner == null) {
+			report.println("Starting a runner for " + jars.size() + " jars");
+			runner = new Runner(jars);
+			runners.put(fingerprint, runner);
+			Iterator<Runner> iterator = runners.values().iterator();
+			while (runners.size() > MAX_RUNNERS) {
+				Runner evicted = iterator.next();
+				iterator.remove();
+				evicted.close();
+			}
+		} else {
+			report.println("Reusing the warm runner for " + jars.size() + " jars (run " + (runner.runs + 1) + ")");
+		}
+		runner.load(directories, fingerprint(directories), report);
+		return runner;
+	}
+
+	/**
+	 * @param files the files or directories
+	 * @return a fingerprint that changes whenever one of the files changes
+	 */
+	static String fingerprint(List<File> files) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			for (File file : files) {
+				update(digest, file.getPath());
+				update(digest, String.valueOf(JUnit5Module.getModificationStamp(file)));
+			}
+			return new BigInteger(1, digest.digest()).toString(16);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Stops accepting requests, closes all runners and deletes the state file
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		serverSocket.close();
+		for (Runner runner : runners.values()) {
+			runner.close();
+		}
+		runners.clear();
+		Files.deleteIfExists(stateFile.toPath());
+	}
+
+	/**
+	 * The classloaders of a classpath that stay warm between runs
+	 */
+	private static final class Runner implements Closeable {
+
+		private final URLClassLoader jarLoader;
+		private URLClassLoader directoryLoader;
+		private String directoryFingerprint;
+		private int runs;
+
+		Runner(List<File> jars) throws MalformedURLException {
+			// the classes of the daemon itself must not be visible to the tests
+			jarLoader = new URLClassLoader(toURLs(jars), ClassLoader.getSystemClassLoader().getParent());
+		}
+
+		void load(List<File> directories, String fingerprint, PrintStream report) throws IOException {
+			if (fingerprint.equals(directoryFingerprint)) {
+				return;
+			}
+			if (directoryLoader != null) {
+				report.println("Reloading the classes of changed directories");
+				closeDirectoryLoader();
+			}
+			directoryLoader = new URLClassLoader(toURLs(directories), jarLoader);
+			directoryFingerprint = fingerprint;
+		}
+
+		int run(List<String> classNames, Map<String, String> parameters) throws Exception {
+			runs++;
+			return (Integer) invoke("run", new Class<?>[] { List.class, Map.class }, classNames, parameters);
+		}
+
+		private Object invoke(String name, Class<?>[] types, Object... args) throws Exception {
+			Thread thread = Thread.currentThread();
+			ClassLoader contextClassLoader = thread.getContextClassLoader();
+			thread.setContextClassLoader(directoryLoader);
+			try {
+				Method method = Class.forName(DaemonRunner.class.getName(), true, directoryLoader)
+						.getDeclaredMethod(name, types);
+				method.setAccessible(true);
+				return method.invoke(null, args);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw (Error) cause;
+			} finally {
+				thread.setContextClassLoader(contextClassLoader);
+			}
+		}
+
+		private void closeDirectoryLoader() throws IOException {
+			try {
+				invoke("close", new Class<?>[0]);
+			} catch (Exception e) {
+				System.err.println("Stopping the frameworks of the runner failed: " + e);
+			} finally {
+				directoryLoader.close();
+				directoryLoader = null;
+				directoryFingerprint = null;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (directoryLoader != null) {
+				closeDirectoryLoader();
+			}
+			jarLoader.close();
+		}
+
+		private static URL[] toURLs(List<File> files) throws MalformedURLException {
+			URL[] urls = new URL[files.size()];
+			for (int i = 0; i < urls.length; i++) {
+				urls[i] = files.get(i).toURI().toURL();
+			}
+			return urls;
+		}
+	}
+
+	/**
+	 * Sends everything written to it as output frames to the client
+	 */
+	private static final class FrameOutputStream extends OutputStream {
+
+		private final DataOutputStream out;
+
+		FrameOutputStream(DataOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) throws IOException {
+			out.writeByte(OUTPUT);
+			out.writeInt(len);
+			out.write(b, off, len);
+		}
+
+		@Override
+		public synchronized void flush() throws IOException {
+			out.flush();
+		}
+	}
+}
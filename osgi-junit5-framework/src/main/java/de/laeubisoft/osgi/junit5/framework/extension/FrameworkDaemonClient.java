@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+/**
+ * Executes test classes in the warm runner of a running
+ * {@link FrameworkDaemon} for the classpath of this client, example:
+ *
+ * <pre>
+ * java -cp &lt;test classpath&gt; de.laeubisoft.osgi.junit5.framework.extension.FrameworkDaemonClient \
+ *   -Dsome.parameter=value my.api.impl.MyImplTest
+ * </pre>
+ * 
+ * The output of the tests is printed by the client, which exits with
+ * <code>0</code> if all tests passed, <code>1</code> if tests failed or none
+ * were found and <code>2</code> if the daemon could not be reached. The
+ * argument <code>--stop</code> stops the daemon instead.
+ */
+public final class FrameworkDaemonClient {
+
+	private FrameworkDaemonClient() {
+	}
+
+	/**
+	 * @param args JUnit configuration parameters as <code>-Dkey=value</code>
+	 *             followed by the fully qualified names of the test classes, or
+	 *             <code>--stop</code>
+	 */
+	public static void main(String[] args) {
+		File stateFile = FrameworkDaemon.getStateFile();
+		int exitValue;
+		try {
+			if (Arrays.asList(args).contains("--stop")) {
+				exitValue = stop(stateFile, System.out);
+			} else {
+				Map<String, String> parameters = new LinkedHashMap<>();
+				List<String> classNames = new ArrayList<>();
+				for (String arg : args) {
+					if (arg.startsWith("-D") && arg.indexOf('=') > 2) {
+						int separator = arg.indexOf('=');
+						parameters.put(arg.substring(2, separator), arg.substring(separator + 1));
+					} else {
+						classNames.add(arg);
+					}
+				}
+				if (classNames.isEmpty()) {
+					System.err.println("usage: " + FrameworkDaemonClient.class.getName()
+							+ " [-D<parameter>=<value> ...] <test class> [<test class> ...] | --stop");
+					System.exit(2);
+				}
+				List<String> classpath = Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator));
+				exitValue = run(stateFile, classpath, parameters, classNames, System.out);
+			}
+		} catch (IOException e) {
+			System.err.println("The framework daemon is not reachable (" + e + "), start it with java -cp <classpath> "
+					+ FrameworkDaemon.class.getName());
+			exitValue = 2;
+		}
+		System.out.flush();
+		System.exit(exitValue);
+	}
+
+	/**
+	 * @param stateFile  the state file of the daemon
+	 * @param classpath  the classpath to run the tests with
+	 * @param parameters the JUnit configuration parameters
+	 * @param classNames the test classes to execute
+	 * @param output     receives the output of the tests
+	 * @return the exit value of the run
+	 * @throws IOException if the daemon can not be reached
+	 */
+	static int run(File stateFile, List<String> classpath, Map<String, String> parameters, List<String> classNames,
+			OutputStream output) throws IOException {
+		return request(stateFile, FrameworkDaemon.RUN, out -> {
+			writeList(out, classpath);
+			out.writeInt(parameters.size());
+			for (Entry<String, String> entry : parameters.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeUTF(entry.getValue());
+			}
+			writeList(out, classNames);
+		}, output);
+	}
+
+	/**
+	 * @param stateFile the state file of the daemon
+	 * @param output    receives the output of the daemon
+	 * @return the exit value of the request
+	 * @throws IOException if the daemon can not be reached
+	 */
+	static int stop(File stateFile, OutputStream output) throws IOException {
+		return request(stateFile, FrameworkDaemon.STOP, out -> {
+		}, output);
+	}
+
+	private static int request(File stateFile, String command, Body body, OutputStream output) throws IOException {
+		Properties state = new Properties();
+		try (InputStream stream = Files.newInputStream(stateFile.toPath())) {
+			state.load(stream);
+		}
+		int port = Integer.parseInt(state.getProperty(FrameworkDaemon.PORT, "0"));
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+			out.writeUTF(state.getProperty(FrameworkDaemon.TOKEN, ""));
+			out.writeUTF(command);
+			body.write(out);
+			out.flush();
+			byte[] buffer = new byte[8192];
+			while (true) {
+				int type = in.readByte();
+				if (type == FrameworkDaemon.EXIT) {
+					return in.readInt();
+				}
+				if (type != FrameworkDaemon.OUTPUT) {
+					throw new IOException("unknown frame " + type);
+				}
+				for (int remaining = in.readInt(); remaining > 0;) {
+					int read = in.read(buffer, 0, Math.min(buffer.length, remaining));
+					if (read < 0) {
+						throw new IOException("the daemon closed the connection");
+					}
+					output.write(buffer, 0, read);
+					remaining -= read;
+				}
+				output.flush();
+			}
+		}
+	}
+
+	private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+		out.writeInt(list.size());
+		for (String value : list) {
+			out.writeUTF(value);
+		}
+	}
+
+	/**
+	 * Writes the body of a request
+	 */
+	private interface Body {
+
+		void write(DataOutputStream out) throws IOException;
+	}
+}
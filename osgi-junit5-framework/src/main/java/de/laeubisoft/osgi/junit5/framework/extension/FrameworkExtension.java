@@ -17,22 +17,36 @@
  *******************************************************************************/
 package de.laeubisoft.osgi.junit5.framework.extension;
 
+import java.io.File;
+import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.extension.AfterEachCallback;
 import org.junit.jupiter.api.extension.BeforeAllCallback;
 import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ConditionEvaluationResult;
+import org.junit.jupiter.api.extension.ExecutionCondition;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
 import org.junit.jupiter.api.extension.ExtensionContext.Store;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
+import org.junit.jupiter.api.extension.InvocationInterceptor;
 import org.junit.jupiter.api.extension.ParameterContext;
 import org.junit.jupiter.api.extension.ParameterResolutionException;
 import org.junit.jupiter.api.extension.ParameterResolver;
+import org.junit.jupiter.api.extension.ReflectiveInvocationContext;
+import org.junit.jupiter.api.extension.TestTemplateInvocationContext;
+import org.junit.jupiter.api.extension.TestTemplateInvocationContextProvider;
 import org.junit.platform.commons.PreconditionViolationException;
+import org.junit.platform.commons.support.AnnotationSupport;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -44,7 +58,10 @@ import org.osgi.service.component.runtime.dto.ComponentConfigurationDTO;
 import org.osgi.service.component.runtime.dto.ComponentDescriptionDTO;
 import org.osgi.service.component.runtime.dto.UnsatisfiedReferenceDTO;
 
+import de.laeubisoft.osgi.junit5.framework.annotations.ConcurrentStress;
 import de.laeubisoft.osgi.junit5.framework.annotations.EmbeddedFramework;
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkMatrix;
+import de.laeubisoft.osgi.junit5.framework.annotations.TestImpactAnalysis;
 
 /**
  * The {@link FrameworkExtension} allows to start a so called <a href=
@@ -56,32 +73,163 @@ import de.laeubisoft.osgi.junit5.framework.annotations.EmbeddedFramework;
  * test-code is next to your code and executed by maven-surefire as part of that
  * build).
  */
-public class FrameworkExtension implements BeforeAllCallback, BeforeEachCallback, AfterEachCallback, ParameterResolver {
+public class FrameworkExtension implements BeforeAllCallback, BeforeEachCallback, AfterEachCallback,
+		ParameterResolver, ExecutionCondition, TestTemplateInvocationContextProvider, InvocationInterceptor {
+
+	/**
+	 * The JUnit configuration parameter (or system property) that enables a
+	 * cache with the given size in megabytes for the class bytes of isolated
+	 * bundles, the cache is shared by all frameworks of the JVM
+	 */
+	public static final String ENTRY_CACHE_SIZE_PARAMETER = "osgi.junit5.framework.entry.cache.size";
+
+	private static final String CONNECT_FRAMEWORK = "JUnit5ConnectFramework";
+	private static final String NESTED_FRAMEWORK = "NestedFramework";
 
 	private JUnit5ConnectFramework connect;
+	private VariantFrameworks variants;
 
 	FrameworkExtension() {
 	}
 
 	@Override
 	public void beforeAll(ExtensionContext context) throws Exception {
+		if (!FrameworkConfiguration.of(context.getRequiredTestClass()).getVariants().isEmpty()) {
+			this.variants = getVariantFrameworks(context);
+			for (Entry<String, JUnit5ConnectFramework> entry : variants.getFrameworks().entrySet()) {
+				String suffix = "[" + entry.getKey() + "]";
+				entry.getValue().reportLeaksTo(leaks -> context.publishReportEntry("frameworkLeaks" + suffix, leaks));
+				entry.getValue().verifyMemoryBudget(
+						memory -> context.publishReportEntry("frameworkMemory" + suffix, memory));
+				entry.getValue().verifyStartupBudget(
+						startup -> context.publishReportEntry("frameworkStartup" + suffix, startup));
+			}
+			verifyLeaksWhenFinished(context);
+			return;
+		}
 		this.connect = getConnectFramework(context);
+		connect.reportLeaksTo(leaks -> context.publishReportEntry("frameworkLeaks", leaks));
+		verifyLeaksWhenFinished(context);
+		connect.verifyMemoryBudget(memory -> context.publishReportEntry("frameworkMemory", memory));
+		connect.verifyStartupBudget(startup -> context.publishReportEntry("frameworkStartup", startup));
+		publishActivatedBundles(context);
 	}
 
 	@Override
 	public void beforeEach(ExtensionContext context) throws Exception {
+		if (connect == null) {
+			if (isFrameworkMatrix(context)) {
+				// the variant of the invocation takes care of it
+				return;
+			}
+			if (variants != null) {
+				throw new PreconditionViolationException(context.getRequiredTestClass().getName()
+						+ " declares framework variants so its tests must be annotated with @FrameworkMatrix");
+			}
+			// only registered for the method (e.g. by @ConcurrentStress), so use the
+			// framework of the test class if there is one
+			connect = context.getParent().flatMap(FrameworkExtension::findFramework)
+					.orElseThrow(() -> new PreconditionViolationException(context.getRequiredTestMethod()
+							+ " requires a framework but " + context.getRequiredTestClass().getName()
+							+ " does not configure one, annotate it with e.g. @WithBundle"));
+		}
 		JUnit5FrameworkUtilHelper.threadHelper.set(connect);
 	}
 
 	@Override
 	public void afterEach(ExtensionContext context) throws Exception {
+		if (connect == null) {
+			return;
+		}
+		connect.afterTest(context.getUniqueId(), context.getExecutionException().isPresent());
 		JUnit5FrameworkUtilHelper.threadHelper.set(null);
+		publishActivatedBundles(context);
+	}
+
+	@Override
+	public boolean supportsTestTemplate(ExtensionContext context) {
+		return isFrameworkMatrix(context);
+	}
+
+	@Override
+	public Stream<TestTemplateInvocationContext> provideTestTemplateInvocationContexts(ExtensionContext context) {
+		if (variants == null) {
+			throw new PreconditionViolationException(context.getRequiredTestClass().getName()
+					+ " must declare at least one @FrameworkVariant to use @FrameworkMatrix");
+		}
+		return variants.invocationContexts(context);
+	}
+
+	@Override
+	public void interceptTestMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext,
+			ExtensionContext extensionContext) throws Throwable {
+		interceptStress(invocation, invocationContext, extensionContext);
+	}
+
+	@Override
+	public void interceptTestTemplateMethod(Invocation<Void> invocation,
+			ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext)
+			throws Throwable {
+		interceptStress(invocation, invocationContext, extensionContext);
+	}
+
+	private static void interceptStress(Invocation<Void> invocation,
+			ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext)
+			throws Throwable {
+		Optional<ConcurrentStress> stress = AnnotationSupport.findAnnotation(invocationContext.getExecutable(),
+				ConcurrentStress.class);
+		if (!stress.isPresent()) {
+			invocation.proceed();
+			return;
+		}
+		// the runner invokes the method itself as an invocation can only proceed once
+		invocation.skip();
+		new ConcurrentStressRunner(stress.get(), invocationContext).run(extensionContext::publishReportEntry);
+	}
+
+	/**
+	 * The framework of the last test class can only be verified to be collectable
+	 * once JUnit has released all test classes
+	 */
+	private static void verifyLeaksWhenFinished(ExtensionContext context) {
+		ExtensionContext root = context.getRoot();
+		root.getStore(Namespace.create(FrameworkExtension.class)).getOrComputeIfAbsent(FrameworkLeakDetector.class,
+				key -> (CloseableResource) () -> FrameworkLeakDetector
+						.verifyPending(leaks -> root.publishReportEntry("frameworkLeaks", leaks)));
+	}
+
+	private static boolean isFrameworkMatrix(ExtensionContext context) {
+		return context.getTestMethod().map(method -> AnnotationSupport.isAnnotated(method, FrameworkMatrix.class))
+				.orElse(false);
+	}
+
+	private void publishActivatedBundles(ExtensionContext context) {
+		List<String> activated = connect.drainActivatedBundles();
+		if (!activated.isEmpty()) {
+			context.publishReportEntry("activatedBundles", String.join(",", activated));
+		}
+	}
+
+	@Override
+	public ConditionEvaluationResult evaluateExecutionCondition(ExtensionContext context) {
+		Optional<String> impactFile = context.getTestClass().map(FrameworkConfiguration::of)
+				.flatMap(FrameworkConfiguration::getImpactFile);
+		if (impactFile.isPresent() && context.getConfigurationParameter(TestImpactAnalysis.SELECT_PARAMETER)
+				.map(Boolean::parseBoolean).orElse(false)) {
+			return TestFootprint.findChange(new File(impactFile.get()), context.getUniqueId())
+					.map(ConditionEvaluationResult::enabled).orElseGet(() -> ConditionEvaluationResult
+							.disabled("not affected by changes since the last run"));
+		}
+		return ConditionEvaluationResult.enabled("test impact analysis is not enabled");
 	}
 
 	@Override
 	public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext)
 			throws ParameterResolutionException {
-
+		if (connect == null) {
+			// each variant resolves its own framework
+			return false;
+		}
 		return parameterContext.isAnnotated(EmbeddedFramework.class)
 				&& parameterContext.getParameter().getType() == Framework.class;
 	}
@@ -95,13 +243,78 @@ public class FrameworkExtension implements BeforeAllCallback, BeforeEachCallback
 	private static JUnit5ConnectFramework getConnectFramework(ExtensionContext context) {
 		Namespace namespace = Namespace.create(FrameworkExtension.class, context.getUniqueId());
 		Store store = context.getStore(namespace);
-		return store.getOrComputeIfAbsent("JUnit5ConnectFramework", key -> {
+		Optional<JUnit5ConnectFramework> enclosing = getNestedFramework(context, store);
+		if (enclosing.isPresent()) {
+			return enclosing.get();
+		}
+		return store.getOrComputeIfAbsent(CONNECT_FRAMEWORK, key -> {
 			try {
-				return new JUnit5ConnectFramework(context.getRequiredTestClass(), context.getUniqueId());
+				return new StoredResource(JUnit5ConnectFramework.obtain(context.getRequiredTestClass(),
+						context.getUniqueId(), context::getConfigurationParameter));
 			} catch (Exception e) {
 				throw new PreconditionViolationException("problem starting framework: " + e, e);
 			}
-		}, JUnit5ConnectFramework.class);
+		}, StoredResource.class).get(JUnit5ConnectFramework.class);
+	}
+
+	/**
+	 * A nested test class shares the framework of its enclosing class as long as
+	 * it only adds bundles or exported packages
+	 */
+	private static Optional<JUnit5ConnectFramework> getNestedFramework(ExtensionContext context, Store store) {
+		Class<?> testClass = context.getRequiredTestClass();
+		if (!ConfigurationCompiler.isNested(testClass)) {
+			return Optional.empty();
+		}
+		NestedFramework nested = StoredResource.get(store, NESTED_FRAMEWORK, NestedFramework.class);
+		if (nested != null) {
+			return Optional.of(nested.getFramework());
+		}
+		Optional<JUnit5ConnectFramework> enclosing = context.getParent().flatMap(FrameworkExtension::findFramework);
+		if (!enclosing.isPresent()) {
+			return Optional.empty();
+		}
+		FrameworkConfiguration configuration = FrameworkConfiguration.of(testClass)
+				.withDefaults(context::getConfigurationParameter);
+		try {
+			Optional<NestedFramework> extended = enclosing.get().nest(testClass, context.getUniqueId(),
+					configuration);
+			extended.ifPresent(extension -> store.put(NESTED_FRAMEWORK, new StoredResource(extension)));
+			return extended.map(NestedFramework::getFramework);
+		} catch (PreconditionViolationException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new PreconditionViolationException("problem extending framework: " + e, e);
+		}
+	}
+
+	/**
+	 * @param context the context of a test class
+	 * @return the framework that is already used by the test class
+	 */
+	private static Optional<JUnit5ConnectFramework> findFramework(ExtensionContext context) {
+		Store store = context.getStore(Namespace.create(FrameworkExtension.class, context.getUniqueId()));
+		NestedFramework nested = StoredResource.get(store, NESTED_FRAMEWORK, NestedFramework.class);
+		if (nested != null) {
+			return Optional.of(nested.getFramework());
+		}
+		return Optional.ofNullable(StoredResource.get(store, CONNECT_FRAMEWORK, JUnit5ConnectFramework.class));
+	}
+
+	private static VariantFrameworks getVariantFrameworks(ExtensionContext context) {
+		Namespace namespace = Namespace.create(FrameworkExtension.class, context.getUniqueId());
+		Store store = context.getStore(namespace);
+		return store.getOrComputeIfAbsent("VariantFrameworks", key -> {
+			Class<?> testClass = context.getRequiredTestClass();
+			try {
+				return VariantFrameworks.boot(testClass, context.getUniqueId(),
+						FrameworkConfiguration.of(testClass).getVariants(), context::getConfigurationParameter);
+			} catch (PreconditionViolationException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new PreconditionViolationException("problem starting frameworks: " + e, e);
+			}
+		}, VariantFrameworks.class);
 	}
 
 	/**
@@ -229,6 +442,33 @@ public class FrameworkExtension implements BeforeAllCallback, BeforeEachCallback
 		}
 	}
 
+	/**
+	 * Closes a resource of the framework, which does not depend on JUnit, together
+	 * with the store holding it
+	 */
+	private static final class StoredResource implements CloseableResource {
+
+		private final AutoCloseable resource;
+
+		StoredResource(AutoCloseable resource) {
+			this.resource = resource;
+		}
+
+		<T> T get(Class<T> type) {
+			return type.cast(resource);
+		}
+
+		static <T> T get(Store store, String key, Class<T> type) {
+			StoredResource stored = store.get(key, StoredResource.class);
+			return stored == null ? null : stored.get(type);
+		}
+
+		@Override
+		public void close() throws Exception {
+			resource.close();
+		}
+	}
+
 	private static String toBundleState(int state) {
 		switch (state) {
 		case Bundle.ACTIVE:
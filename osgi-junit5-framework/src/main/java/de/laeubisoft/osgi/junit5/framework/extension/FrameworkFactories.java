@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+
+import org.osgi.framework.connect.ConnectFrameworkFactory;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.WithFrameworkImplementation;
+
+/**
+ * Loads the available {@link ConnectFrameworkFactory} implementations once and
+ * selects one of them by name
+ */
+final class FrameworkFactories {
+
+	private static final Map<String, String> ALIASES;
+
+	static {
+		Map<String, String> aliases = new HashMap<>();
+		aliases.put(WithFrameworkImplementation.FELIX, "org.apache.felix.framework.FrameworkFactory");
+		aliases.put(WithFrameworkImplementation.EQUINOX, "org.eclipse.osgi.launch.EquinoxFactory");
+		ALIASES = Collections.unmodifiableMap(aliases);
+	}
+
+	private static volatile List<ConnectFrameworkFactory> factories;
+
+	private FrameworkFactories() {
+	}
+
+	/**
+	 * @return all factories available on the classpath
+	 */
+	static List<ConnectFrameworkFactory> getFactories() {
+		List<ConnectFrameworkFactory> list = factories;
+		if (list == null) {
+			synchronized (FrameworkFactories.class) {
+				list = factories;
+				if (list == null) {
+					list = new ArrayList<>();
+					for (ConnectFrameworkFactory factory : ServiceLoader.load(ConnectFrameworkFactory.class,
+							FrameworkFactories.class.getClassLoader())) {
+						list.add(factory);
+					}
+					factories = list = Collections.unmodifiableList(list);
+				}
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @param implementation the implementation to select, either an alias or a
+	 *                       class name, if <code>null</code> or empty the first
+	 *                       available one is returned
+	 * @return the selected factory
+	 * @throws IllegalStateException if no such factory is available
+	 */
+	static ConnectFrameworkFactory getFactory(String implementation) {
+		List<ConnectFrameworkFactory> available = getFactories();
+		if (implementation == null || implementation.trim().isEmpty()) {
+			if (available.isEmpty()) {
+				throw new IllegalStateException(
+						"No " + ConnectFrameworkFactory.class.getName() + " found on the classpath");
+			}
+			return available.get(0);
+		}
+		String className = ALIASES.getOrDefault(implementation.trim().toLowerCase(), implementation.trim());
+		return available.stream().filter(factory -> factory.getClass().getName().equals(className)).findFirst()
+				.orElseThrow(() -> new IllegalStateException("The framework implementation "
+						+ implementation + " is not available, found: " + available.stream()
+								.map(factory -> factory.getClass().getName()).collect(Collectors.toList())));
+	}
+
+}
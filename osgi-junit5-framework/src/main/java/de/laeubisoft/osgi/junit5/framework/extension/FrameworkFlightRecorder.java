@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import org.osgi.framework.Bundle;
+
+/**
+ * Emits Java Flight Recorder events for the framework lifecycle and the
+ * connect layer if the JVM supports JFR, otherwise all methods return a span
+ * that does nothing. Events are only created while a recording is active, so
+ * the overhead is negligible otherwise.
+ */
+final class FrameworkFlightRecorder {
+
+	private static final boolean AVAILABLE = isAvailable();
+
+	/**
+	 * A span that does nothing
+	 */
+	static final Span NOOP = () -> {
+	};
+
+	/**
+	 * A lookup span that does nothing
+	 */
+	static final LookupSpan NOOP_LOOKUP = new LookupSpan() {
+
+		@Override
+		public void found(Bundle bundle) {
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	private FrameworkFlightRecorder() {
+	}
+
+	/**
+	 * A running event that is committed when closed
+	 */
+	interface Span extends AutoCloseable {
+
+		@Override
+		void close();
+	}
+
+	/**
+	 * A running bundle lookup, the bundle is only known once the lookup is done
+	 */
+	interface LookupSpan extends Span {
+
+		/**
+		 * @param bundle the bundle that was found for the class
+		 */
+		void found(Bundle bundle);
+	}
+
+	/**
+	 * @return <code>true</code> if the JVM supports JFR events
+	 */
+	static boolean isEnabled() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * @param phase     the phase of the framework lifecycle
+	 * @param testClass the test class the framework belongs to
+	 * @return the span of the phase
+	 */
+	static Span phase(String phase, Class<?> testClass) {
+		if (AVAILABLE) {
+			return FrameworkFlightRecorderEvents.phase(phase, testClass.getName());
+		}
+		return NOOP;
+	}
+
+	/**
+	 * @param operation the operation performed on the bundle
+	 * @param bundle    the symbolic name of the bundle
+	 * @param testClass the name of the test class the framework belongs to
+	 * @return the span of the operation
+	 */
+	static Span bundle(String operation, String bundle, String testClass) {
+		if (AVAILABLE) {
+			return FrameworkFlightRecorderEvents.bundle(operation, bundle, testClass);
+		}
+		return NOOP;
+	}
+
+	/**
+	 * @param operation the operation performed on the content of the module
+	 * @param bundle    the symbolic name of the module
+	 * @param testClass the name of the test class the framework belongs to
+	 * @return the span of the operation
+	 */
+	static Span content(String operation, String bundle, String testClass) {
+		if (AVAILABLE) {
+			return FrameworkFlightRecorderEvents.content(operation, bundle, testClass);
+		}
+		return NOOP;
+	}
+
+	/**
+	 * @param bundle    the symbolic name of the module
+	 * @param path      the path of the entry
+	 * @param testClass the name of the test class the framework belongs to
+	 * @return the span of the lookup, only committed if it exceeds the
+	 *         threshold of the recording
+	 */
+	static Span entry(String bundle, String path, String testClass) {
+		if (AVAILABLE) {
+			return FrameworkFlightRecorderEvents.entry(bundle, path, testClass);
+		}
+		return NOOP;
+	}
+
+	/**
+	 * @param lookupClass the class whose bundle is looked up
+	 * @return the span of the lookup
+	 */
+	static LookupSpan lookup(Class<?> lookupClass) {
+		if (AVAILABLE) {
+			return FrameworkFlightRecorderEvents.lookup(lookupClass.getName());
+		}
+		return NOOP_LOOKUP;
+	}
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, FrameworkFlightRecorder.class.getClassLoader());
+			// make sure the events can actually be loaded
+			return FrameworkFlightRecorderEvents.class != null;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import org.osgi.framework.Bundle;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkFlightRecorder.LookupSpan;
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkFlightRecorder.Span;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * The JFR event types, this class must only be used through
+ * {@link FrameworkFlightRecorder} as it can not be loaded on JVMs without JFR
+ */
+final class FrameworkFlightRecorderEvents {
+
+	private static final String PREFIX = "de.laeubisoft.osgi.junit5.framework.";
+	private static final String CATEGORY = "OSGi JUnit5 Framework";
+	// entries and lookups are hot paths, check the type before allocating an event
+	private static final EventType ENTRY = EventType.getEventType(EntryEvent.class);
+	private static final EventType LOOKUP = EventType.getEventType(LookupEvent.class);
+
+	private FrameworkFlightRecorderEvents() {
+	}
+
+	static Span phase(String phase, String testClass) {
+		PhaseEvent event = new PhaseEvent();
+		if (!event.isEnabled()) {
+			return FrameworkFlightRecorder.NOOP;
+		}
+		event.phase = phase;
+		event.testClass = testClass;
+		return begin(event);
+	}
+
+	static Span bundle(String operation, String bundle, String testClass) {
+		BundleOperationEvent event = new BundleOperationEvent();
+		if (!event.isEnabled()) {
+			return FrameworkFlightRecorder.NOOP;
+		}
+		event.operation = operation;
+		event.bundle = bundle;
+		event.testClass = testClass;
+		return begin(event);
+	}
+
+	static Span content(String operation, String bundle, String testClass) {
+		ContentEvent event = new ContentEvent();
+		if (!event.isEnabled()) {
+			return FrameworkFlightRecorder.NOOP;
+		}
+		event.operation = operation;
+		event.bundle = bundle;
+		event.testClass = testClass;
+		return begin(event);
+	}
+
+	static Span entry(String bundle, String path, String testClass) {
+		if (!ENTRY.isEnabled()) {
+			return FrameworkFlightRecorder.NOOP;
+		}
+		EntryEvent event = new EntryEvent();
+		event.bundle = bundle;
+		event.path = path;
+		event.testClass = testClass;
+		return begin(event);
+	}
+
+	static LookupSpan lookup(String lookupClass) {
+		if (!LOOKUP.isEnabled()) {
+			return FrameworkFlightRecorder.NOOP_LOOKUP;
+		}
+		LookupEvent event = new LookupEvent();
+		event.lookupClass = lookupClass;
+		event.begin();
+		return new LookupSpan() {
+
+			@Override
+			public void found(Bundle bundle) {
+				event.bundle = bundle.getSymbolicName();
+				event.testClass = JUnit5FrameworkUtilHelper.getTestClassName(bundle);
+			}
+
+			@Override
+			public void close() {
+				event.commit();
+			}
+		};
+	}
+
+	private static Span begin(Event event) {
+		event.begin();
+		// commit only records the event if it exceeds the threshold
+		return event::commit;
+	}
+
+	@Name(PREFIX + "Phase")
+	@Label("Framework Phase")
+	@Description("A phase of the lifecycle of an embedded framework")
+	@Category(CATEGORY)
+	static final class PhaseEvent extends Event {
+
+		@Label("Phase")
+		String phase;
+
+		@Label("Test Class")
+		String testClass;
+	}
+
+	@Name(PREFIX + "Bundle")
+	@Label("Bundle Operation")
+	@Description("A bundle is installed, updated or started, resolving is recorded as an instant event "
+			+ "as the framework resolves all bundles at once")
+	@Category(CATEGORY)
+	static final class BundleOperationEvent extends Event {
+
+		@Label("Operation")
+		String operation;
+
+		@Label("Bundle")
+		String bundle;
+
+		@Label("Test Class")
+		String testClass;
+	}
+
+	@Name(PREFIX + "Content")
+	@Label("Module Content")
+	@Description("The content of a connect module is opened or closed")
+	@Category(CATEGORY)
+	static final class ContentEvent extends Event {
+
+		@Label("Operation")
+		String operation;
+
+		@Label("Bundle")
+		String bundle;
+
+		@Label("Test Class")
+		String testClass;
+	}
+
+	@Name(PREFIX + "Entry")
+	@Label("Module Entry")
+	@Description("An entry is looked up from the content of a connect module")
+	@Category(CATEGORY)
+	@Threshold("1 ms")
+	static final class EntryEvent extends Event {
+
+		@Label("Bundle")
+		String bundle;
+
+		@Label("Path")
+		String path;
+
+		@Label("Test Class")
+		String testClass;
+	}
+
+	@Name(PREFIX + "Lookup")
+	@Label("Bundle Lookup")
+	@Description("The bundle of a class is looked up through FrameworkUtil")
+	@Category(CATEGORY)
+	static final class LookupEvent extends Event {
+
+		@Label("Class")
+		String lookupClass;
+
+		@Label("Bundle")
+		String bundle;
+
+		@Label("Test Class")
+		String testClass;
+	}
+}
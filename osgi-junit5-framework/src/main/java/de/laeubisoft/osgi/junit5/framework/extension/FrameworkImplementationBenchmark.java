@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.connect.ConnectFrameworkFactory;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.WithFrameworkImplementation;
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkConfiguration.BundleConfiguration;
+
+/**
+ * Compares the framework implementations available on the classpath by
+ * booting the configuration of the given test classes with each of them,
+ * example:
+ *
+ * <pre>
+ * java -cp &lt;test classpath&gt; \
+ *   de.laeubisoft.osgi.junit5.framework.extension.FrameworkImplementationBenchmark my.api.impl.MyImplTest
+ * </pre>
+ * 
+ * For each implementation the median of the following is reported:
+ * <ul>
+ * <li>boot: the time to create, initialize and start the framework and the
+ * configured bundles</li>
+ * <li>resolve: the time to refresh and resolve all bundles again</li>
+ * <li>getBundle: the average time of a <code>FrameworkUtil.getBundle</code>
+ * lookup of a class loaded by the first <code>isolated</code> bundle that
+ * contains classes, that is through the bundle classloader of the
+ * implementation, or <code>n/a</code> if there is no such bundle</li>
+ * </ul>
+ * Iterations whose refresh does not finish in time are reported and left out.
+ * The number of measured iterations can be set with the system property
+ * <code>iterations</code> (default 10), the same number of iterations is used
+ * as a warmup. Test classes that select an implementation with
+ * {@link WithFrameworkImplementation} are only run with that one.
+ */
+public final class FrameworkImplementationBenchmark {
+
+	private static final int LOOKUPS = 10_000;
+
+	private FrameworkImplementationBenchmark() {
+	}
+
+	/**
+	 * @param args the fully qualified names of the test classes whose framework
+	 *             configuration should be benchmarked
+	 * @throws Throwable if a class can not be loaded or the framework fails to
+	 *                   start or stop
+	 */
+	public static void main(String[] args) throws Throwable {
+		if (args.length == 0) {
+			System.err.println("usage: " + FrameworkImplementationBenchmark.class.getName()
+					+ " <test class> [<test class> ...]");
+			System.exit(1);
+		}
+		int iterations = Integer.getInteger("iterations", 10);
+		ClassLoader classLoader = FrameworkImplementationBenchmark.class.getClassLoader();
+		System.out.println("implementation | test class | boot (ms) | resolve (ms) | getBundle (ns)");
+		for (String className : args) {
+			Class<?> testClass = Class.forName(className, false, classLoader);
+			FrameworkConfiguration configuration = FrameworkConfiguration.of(testClass);
+			for (ConnectFrameworkFactory factory : getFactories(configuration)) {
+				String implementation = factory.getClass().getName();
+				List<long[]> results = new ArrayList<>();
+				for (int i = 0; i < iterations * 2; i++) {
+					try {
+						long[] result = run(testClass, configuration, implementation);
+						if (i >= iterations) {
+							results.add(result);
+						}
+					} catch (TimeoutException e) {
+						System.err.println(implementation + " | " + className + " | iteration " + i + " failed: "
+								+ e.getMessage());
+					}
+				}
+				long getBundle = median(results, 2);
+				System.out.println(implementation + " | " + className + " | "
+						+ TimeUnit.NANOSECONDS.toMillis(median(results, 0)) + " | "
+						+ TimeUnit.NANOSECONDS.toMillis(median(results, 1)) + " | "
+						+ (getBundle < 0 ? "n/a" : String.valueOf(getBundle)));
+			}
+		}
+	}
+
+	/**
+	 * @param configuration the configuration of the test class
+	 * @return the implementation selected by the configuration or all that are
+	 *         available if none is selected
+	 */
+	static List<ConnectFrameworkFactory> getFactories(FrameworkConfiguration configuration) {
+		return configuration.getImplementation()
+				.map(implementation -> Collections.singletonList(FrameworkFactories.getFactory(implementation)))
+				.orElseGet(FrameworkFactories::getFactories);
+	}
+
+	private static long[] run(Class<?> testClass, FrameworkConfiguration base, String implementation)
+			throws Throwable {
+		String uniqueId = "benchmark-" + testClass.getName();
+		long start = System.nanoTime();
+		FrameworkConfiguration configuration = FrameworkConfiguration.builder(base).withImplementation(implementation)
+				.build();
+		JUnit5ConnectFramework connect = new JUnit5ConnectFramework(testClass, uniqueId, configuration, null);
+		long boot = System.nanoTime() - start;
+		try {
+			// classes loaded before the refresh belong to stale wirings afterwards
+			Class<?> isolatedClass = loadIsolatedClass(connect.framework, configuration);
+			long getBundle = isolatedClass == null ? -1 : getBundle(isolatedClass);
+			FrameworkWiring wiring = connect.framework.adapt(FrameworkWiring.class);
+			List<Bundle> bundles = Arrays.stream(connect.framework.getBundleContext().getBundles())
+					.filter(bundle -> bundle.getBundleId() != 0).collect(Collectors.toList());
+			CountDownLatch refreshed = new CountDownLatch(1);
+			start = System.nanoTime();
+			wiring.refreshBundles(bundles, event -> {
+				if (event.getType() == FrameworkEvent.PACKAGES_REFRESHED) {
+					refreshed.countDown();
+				}
+			});
+			if (!refreshed.await(30, TimeUnit.SECONDS)) {
+				throw new TimeoutException("refreshing the bundles did not finish within 30 seconds");
+			}
+			wiring.resolveBundles(bundles);
+			long resolve = System.nanoTime() - start;
+			return new long[] { boot, resolve, getBundle };
+		} finally {
+			connect.close();
+			delete(new File(System.getProperty("java.io.tmpdir"), "osgi-test-" + uniqueId).toPath());
+		}
+	}
+
+	/**
+	 * @param framework     the booted framework
+	 * @param configuration the configuration of the framework
+	 * @return a class loaded through the bundle classloader of the first isolated
+	 *         bundle that contains classes or <code>null</code> if there is none
+	 * @throws ClassNotFoundException if the class of an entry can not be loaded
+	 */
+	static Class<?> loadIsolatedClass(Framework framework, FrameworkConfiguration configuration)
+			throws ClassNotFoundException {
+		for (BundleConfiguration bundleConfiguration : configuration.getBundles()) {
+			if (!bundleConfiguration.isIsolated()) {
+				continue;
+			}
+			Bundle bundle = framework.getBundleContext().getBundle(bundleConfiguration.getName());
+			Enumeration<URL> entries = bundle == null ? null : bundle.findEntries("/", "*.class", true);
+			if (entries == null || !entries.hasMoreElements()) {
+				continue;
+			}
+			String path = entries.nextElement().getPath();
+			String name = path.substring(path.startsWith("/") ? 1 : 0, path.length() - ".class".length())
+					.replace('/', '.');
+			return bundle.loadClass(name);
+		}
+		return null;
+	}
+
+	/**
+	 * @param type a class loaded by a bundle
+	 * @return the average time of a bundle lookup of the class in nanoseconds
+	 * @throws BundleException if the lookup does not find a bundle
+	 */
+	static long getBundle(Class<?> type) throws BundleException {
+		long start = System.nanoTime();
+		for (int i = 0; i < LOOKUPS; i++) {
+			if (FrameworkUtil.getBundle(type) == null) {
+				throw new BundleException("no bundle found for " + type.getName());
+			}
+		}
+		return (System.nanoTime() - start) / LOOKUPS;
+	}
+
+	private static long median(List<long[]> results, int index) {
+		List<Long> values = results.stream().map(result -> result[index]).sorted().collect(Collectors.toList());
+		return values.isEmpty() ? 0 : values.get(values.size() / 2);
+	}
+
+	private static void delete(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+		List<Path> paths;
+		try (Stream<Path> walk = Files.walk(path)) {
+			paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+		}
+		for (Path p : paths) {
+			Files.deleteIfExists(p);
+		}
+	}
+
+}
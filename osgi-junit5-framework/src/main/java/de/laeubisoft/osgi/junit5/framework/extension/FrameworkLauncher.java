@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.launch.Framework;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * Boots an embedded connect framework from the classpath outside of JUnit,
+ * e.g. to benchmark services behind real OSGi wiring, example:
+ *
+ * <pre>
+ * try (FrameworkLauncher launcher = FrameworkLauncher.launch(MyBenchmark.class)) {
+ * 	HelloWorld service = launcher.getService(HelloWorld.class);
+ * 	...
+ * }
+ * </pre>
+ * 
+ * The given anchor class provides the classpath and becomes part of the probe
+ * bundle whose context is used to look up services, its annotations (e.g.
+ * {@link de.laeubisoft.osgi.junit5.framework.annotations.WithBundle}) configure
+ * the framework unless a {@link FrameworkConfiguration} is given.
+ */
+public final class FrameworkLauncher implements AutoCloseable {
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	private final JUnit5ConnectFramework connect;
+	private final Map<Class<?>, ServiceTracker<?, ?>> trackers = new ConcurrentHashMap<>();
+
+	private FrameworkLauncher(JUnit5ConnectFramework connect) {
+		this.connect = connect;
+	}
+
+	/**
+	 * @return the embedded framework
+	 */
+	public Framework getFramework() {
+		return connect.framework;
+	}
+
+	/**
+	 * @return the bundle context of the probe bundle the anchor class belongs to
+	 */
+	public BundleContext getBundleContext() {
+		return connect.getProbe().getBundleContext();
+	}
+
+	/**
+	 * Returns a service waiting up to 30 seconds for it to be registered, the
+	 * service is tracked until the launcher is closed so repeated calls are
+	 * cheap
+	 * 
+	 * @param <S>  the type of the service
+	 * @param type the type of the service
+	 * @return the service
+	 * @throws InterruptedException  if interrupted while waiting
+	 * @throws IllegalStateException if the service does not arrive in time
+	 */
+	public <S> S getService(Class<S> type) throws InterruptedException {
+		ServiceTracker<?, ?> tracker = trackers.computeIfAbsent(type, t -> {
+			ServiceTracker<S, S> serviceTracker = new ServiceTracker<>(getBundleContext(), type, null);
+			// the probe does not import the packages of the anchor so all services
+			// are tracked, they share the classes of the classpath anyways
+			serviceTracker.open(true);
+			return serviceTracker;
+		});
+		Object service = tracker.waitForService(TimeUnit.SECONDS.toMillis(30));
+		if (service == null) {
+			throw new IllegalStateException("service " + type.getName() + " did not arrive within 30 seconds");
+		}
+		return type.cast(service);
+	}
+
+	/**
+	 * Stops the framework
+	 */
+	@Override
+	public void close() throws Exception {
+		trackers.values().forEach(ServiceTracker::close);
+		trackers.clear();
+		connect.close();
+	}
+
+	/**
+	 * Boots a framework configured by the annotations of the anchor class
+	 * 
+	 * @param anchor the class that provides the classpath and the configuration
+	 * @return the launcher of the started framework
+	 * @throws Exception if the framework can not be started
+	 */
+	public static FrameworkLauncher launch(Class<?> anchor) throws Exception {
+		return launch(anchor, FrameworkConfiguration.of(anchor));
+	}
+
+	/**
+	 * Boots a framework with the given configuration
+	 * 
+	 * @param anchor        the class that provides the classpath
+	 * @param configuration the configuration of the framework
+	 * @return the launcher of the started framework
+	 * @throws Exception if the framework can not be started
+	 */
+	public static FrameworkLauncher launch(Class<?> anchor, FrameworkConfiguration configuration)
+			throws Exception {
+		String uniqueId = "launcher-" + anchor.getName() + "-" + counter.incrementAndGet();
+		JUnit5ConnectFramework connect = new JUnit5ConnectFramework(anchor, uniqueId, configuration, null);
+		// there is no test report outside of JUnit
+		connect.reportLeaksTo(System.err::println);
+		return new FrameworkLauncher(connect);
+	}
+
+}
@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.BundleWiring;
+
+/**
+ * Keeps weak references to a framework, its OSGi managed classloaders and the
+ * test probe to verify that they are released after the framework is closed
+ */
+class FrameworkLeakDetector {
+
+	private static final long POLL_INTERVAL = 50;
+
+	/**
+	 * candidates of frameworks already closed that are only collectable once
+	 * JUnit has released the test class
+	 */
+	private static final Queue<LeakCandidate> pending = new ConcurrentLinkedQueue<>();
+
+	private final boolean failOnLeak;
+	private final long timeout;
+	private final String testClassName;
+	private final Set<Thread> threadsBefore;
+	private final List<LeakCandidate> candidates = new ArrayList<>();
+	private final List<WeakReference<ClassLoader>> classLoaders = new ArrayList<>();
+	private WeakReference<Bundle> probe;
+
+	FrameworkLeakDetector(boolean failOnLeak, long timeout, Class<?> testClass) {
+		this.failOnLeak = failOnLeak;
+		this.timeout = timeout;
+		this.testClassName = testClass.getName();
+		this.threadsBefore = Thread.getAllStackTraces().keySet();
+	}
+
+	/**
+	 * Records the framework and its bundles, must be called while the framework
+	 * is still running so the bundle wirings are still available
+	 * 
+	 * @param framework    the framework to track
+	 * @param bundles      the bundles installed by the connector
+	 * @param probeBundle  the test probe bundle
+	 * @param sharedLoader the classloader shared with the test that is never
+	 *                     expected to be collected
+	 */
+	void track(Framework framework, Collection<Bundle> bundles, Bundle probeBundle, ClassLoader sharedLoader) {
+		candidates.add(new LeakCandidate("framework of " + testClassName, framework, failOnLeak, timeout));
+		if (probeBundle != null) {
+			probe = new WeakReference<>(probeBundle);
+			candidates.add(new LeakCandidate("test probe of " + testClassName, probeBundle, failOnLeak, timeout));
+		}
+		for (Bundle bundle : bundles) {
+			BundleWiring wiring = bundle.adapt(BundleWiring.class);
+			if (wiring == null) {
+				continue;
+			}
+			ClassLoader classLoader = wiring.getClassLoader();
+			if (classLoader == null || isParentOrSelf(classLoader, sharedLoader)) {
+				continue;
+			}
+			classLoaders.add(new WeakReference<>(classLoader));
+			candidates.add(new LeakCandidate(
+					"classloader of bundle " + bundle.getSymbolicName() + " used by " + testClassName, classLoader,
+					failOnLeak, timeout));
+		}
+	}
+
+	/**
+	 * Verifies the state after the framework was stopped and reports all
+	 * findings, the framework itself is verified with the next call or by
+	 * {@link #verifyPending(Consumer)}
+	 * 
+	 * @param helper the helper that was registered for the framework
+	 * @param report receives the findings if they do not fail the test
+	 * @throws AssertionError if leaks where found and the configuration
+	 *                        requests to fail
+	 */
+	void verify(JUnit5ConnectFramework helper, Consumer<String> report) {
+		List<String> findings = new ArrayList<>();
+		checkRetentionRoots(helper, findings);
+		checkThreads(findings);
+		checkCollected(timeout, findings);
+		pending.addAll(candidates);
+		candidates.clear();
+		report(findings, failOnLeak, "after closing framework for " + testClassName, report);
+	}
+
+	/**
+	 * Verifies that the frameworks closed so far have been collected, must be
+	 * called once no test uses them anymore (e.g. all tests have finished)
+	 * 
+	 * @param report receives the findings if they do not fail the test
+	 * @throws AssertionError if leaks where found and the configuration of one
+	 *                        of the leaking frameworks requests to fail
+	 */
+	static void verifyPending(Consumer<String> report) {
+		List<LeakCandidate> previous = new ArrayList<>(pending);
+		if (previous.isEmpty()) {
+			return;
+		}
+		long timeout = previous.stream().mapToLong(candidate -> candidate.timeout).max().getAsLong();
+		boolean fail = previous.stream().anyMatch(candidate -> candidate.failOnLeak && !candidate.isCollected());
+		List<String> findings = new ArrayList<>();
+		checkCollected(timeout, findings);
+		report(findings, fail, "after all frameworks where closed", report);
+	}
+
+	private static void report(List<String> findings, boolean fail, String when, Consumer<String> report) {
+		if (findings.isEmpty()) {
+			return;
+		}
+		String message = findings.stream().collect(Collectors.joining(System.lineSeparator() + " - ",
+				"Possible leaks detected " + when + ":" + System.lineSeparator() + " - ", ""));
+		if (fail) {
+			throw new AssertionError(message);
+		}
+		report.accept(message);
+	}
+
+	private static void checkCollected(long timeout, List<String> findings) {
+		List<LeakCandidate> previous = new ArrayList<>(pending);
+		waitFor(() -> previous.stream().allMatch(LeakCandidate::isCollected), true, timeout);
+		for (LeakCandidate candidate : previous) {
+			if (!candidate.isCollected()) {
+				findings.add(candidate + " is still reachable after its framework was closed");
+			}
+			pending.remove(candidate);
+		}
+	}
+
+	private void checkRetentionRoots(JUnit5ConnectFramework helper, List<String> findings) {
+		if (JUnit5FrameworkUtilHelper.additionalHelpers.contains(helper)) {
+			findings.add("JUnit5FrameworkUtilHelper.additionalHelpers still holds the framework helper");
+		}
+		if (JUnit5FrameworkUtilHelper.threadHelper.get() == helper) {
+			findings.add("JUnit5FrameworkUtilHelper.threadHelper of thread " + Thread.currentThread().getName()
+					+ " still holds the framework helper");
+		}
+		Bundle probeBundle = probe == null ? null : probe.get();
+		if (probeBundle != null) {
+			for (Map.Entry<Class<?>, Bundle> entry : JUnit5FrameworkUtilHelper.testProbeMap.entrySet()) {
+				if (entry.getValue() == probeBundle) {
+					findings.add("JUnit5FrameworkUtilHelper.testProbeMap still holds the test probe for "
+							+ entry.getKey().getName());
+				}
+			}
+		}
+	}
+
+	private void checkThreads(List<String> findings) {
+		if (!lingeringThreads().isEmpty()) {
+			waitFor(() -> lingeringThreads().isEmpty(), false, timeout);
+		}
+		List<Thread> lingering = lingeringThreads();
+		for (Thread thread : lingering) {
+			findings.add("thread '" + thread.getName() + "' (" + thread.getState()
+					+ ") started by a bundle while the framework was running is still alive");
+		}
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (!lingering.contains(thread) && isBundleLoader(thread.getContextClassLoader())) {
+				findings.add("thread '" + thread.getName()
+						+ "' still uses a bundle classloader as its context classloader");
+			}
+		}
+	}
+
+	/**
+	 * Threads are only attributed to the framework if they belong to one of its
+	 * OSGi managed classloaders, threads started by the test or by other
+	 * frameworks are of no interest
+	 */
+	private List<Thread> lingeringThreads() {
+		return Thread.getAllStackTraces().keySet().stream()
+				.filter(thread -> thread.isAlive() && !threadsBefore.contains(thread) && belongsToBundle(thread))
+				.collect(Collectors.toList());
+	}
+
+	private boolean belongsToBundle(Thread thread) {
+		if (isBundleLoader(thread.getContextClassLoader()) || isBundleLoader(thread.getClass().getClassLoader())) {
+			return true;
+		}
+		ThreadGroup group = thread.getThreadGroup();
+		return group != null && isBundleLoader(group.getClass().getClassLoader());
+	}
+
+	private boolean isBundleLoader(ClassLoader classLoader) {
+		if (classLoader == null) {
+			return false;
+		}
+		for (WeakReference<ClassLoader> reference : classLoaders) {
+			if (reference.get() == classLoader) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void waitFor(BooleanSupplier condition, boolean gc, long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			if (gc) {
+				System.gc();
+			}
+			try {
+				Thread.sleep(POLL_INTERVAL);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private static boolean isParentOrSelf(ClassLoader classLoader, ClassLoader sharedLoader) {
+		for (ClassLoader loader = sharedLoader; loader != null; loader = loader.getParent()) {
+			if (loader == classLoader) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final class LeakCandidate {
+
+		private final String description;
+		private final WeakReference<Object> reference;
+		private final boolean failOnLeak;
+		private final long timeout;
+
+		LeakCandidate(String description, Object referent, boolean failOnLeak, long timeout) {
+			this.description = description;
+			this.reference = new WeakReference<>(referent);
+			this.failOnLeak = failOnLeak;
+			this.timeout = timeout;
+		}
+
+		boolean isCollected() {
+			return reference.get() == null;
+		}
+
+		@Override
+		public String toString() {
+			return description;
+		}
+	}
+
+}
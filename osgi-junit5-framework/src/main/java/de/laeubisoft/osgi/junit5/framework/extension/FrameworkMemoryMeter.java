@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Measures the heap and metaspace retained by everything created between
+ * {@link #start()} and {@link #stop()}, the heap is measured after the garbage
+ * collection has stabilized so only reachable objects are counted
+ */
+final class FrameworkMemoryMeter {
+
+	private static final int MAX_COLLECTIONS = 10;
+	private static final long STABLE_DELTA = 64 * 1024;
+
+	private final long heapBefore;
+	private final long metaspaceBefore;
+	private long retainedHeap = -1;
+	private long retainedMetaspace = -1;
+
+	private FrameworkMemoryMeter(long heapBefore, long metaspaceBefore) {
+		this.heapBefore = heapBefore;
+		this.metaspaceBefore = metaspaceBefore;
+	}
+
+	/**
+	 * @return a meter with the current memory usage as the baseline
+	 */
+	static FrameworkMemoryMeter start() {
+		return new FrameworkMemoryMeter(stableHeap(), metaspace());
+	}
+
+	/**
+	 * Measures the memory retained since the meter was started, the caller must
+	 * still reference what should be measured
+	 */
+	void stop() {
+		retainedHeap = Math.max(0, stableHeap() - heapBefore);
+		retainedMetaspace = Math.max(0, metaspace() - metaspaceBefore);
+	}
+
+	/**
+	 * @return the retained heap in bytes
+	 */
+	long getRetainedHeap() {
+		return retainedHeap;
+	}
+
+	/**
+	 * @return the metaspace growth in bytes
+	 */
+	long getRetainedMetaspace() {
+		return retainedMetaspace;
+	}
+
+	/**
+	 * @return the retained heap and metaspace in bytes
+	 */
+	long getRetained() {
+		return retainedHeap + retainedMetaspace;
+	}
+
+	@Override
+	public String toString() {
+		return "heap=" + toKb(retainedHeap) + "KB, metaspace=" + toKb(retainedMetaspace) + "KB";
+	}
+
+	private static long toKb(long bytes) {
+		return bytes / 1024;
+	}
+
+	private static long stableHeap() {
+		long used = usedHeap();
+		for (int i = 0; i < MAX_COLLECTIONS; i++) {
+			System.gc();
+			long now = usedHeap();
+			if (Math.abs(used - now) < STABLE_DELTA) {
+				return now;
+			}
+			used = now;
+		}
+		return used;
+	}
+
+	private static long usedHeap() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static long metaspace() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			// "Compressed Class Space" is already part of the "Metaspace" pool
+			if (pool.getType() == MemoryType.NON_HEAP && "Metaspace".equals(pool.getName())) {
+				used += pool.getUsage().getUsed();
+			}
+		}
+		return used;
+	}
+}
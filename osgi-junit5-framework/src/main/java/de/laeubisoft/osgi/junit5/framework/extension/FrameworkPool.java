@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Holds idle frameworks of finished test classes keyed by their configuration
+ * so they can be leased by the next test class with the same configuration,
+ * the pool is bounded and stops the least recently used framework when it is
+ * full, all idle frameworks are stopped when the JVM exits
+ */
+final class FrameworkPool {
+
+	/**
+	 * The number of idle frameworks kept by default
+	 */
+	static final int DEFAULT_SIZE = 4;
+
+	// the idle frameworks and their keys, ordered from least to most recently used
+	private static final Map<JUnit5ConnectFramework, Object> idle = new LinkedHashMap<>();
+	private static Thread shutdownHook;
+
+	private FrameworkPool() {
+	}
+
+	/**
+	 * @param key the key of the configuration
+	 * @return an idle framework for the given key or <code>null</code> if none is
+	 *         available
+	 */
+	static JUnit5ConnectFramework lease(Object key) {
+		JUnit5ConnectFramework leased = null;
+		synchronized (FrameworkPool.class) {
+			for (Entry<JUnit5ConnectFramework, Object> entry : idle.entrySet()) {
+				if (entry.getValue().equals(key)) {
+					// prefer the most recently released one
+					leased = entry.getKey();
+				}
+			}
+			if (leased == null) {
+				return null;
+			}
+			idle.remove(leased);
+		}
+		JUnit5FrameworkUtilHelper.additionalHelpers.add(leased);
+		return leased;
+	}
+
+	/**
+	 * Returns a framework to the pool, if the pool is full the least recently
+	 * used framework is stopped
+	 * 
+	 * @param key       the key of the configuration
+	 * @param framework the framework that is now idle
+	 * @param size      the maximum number of idle frameworks
+	 */
+	static void release(Object key, JUnit5ConnectFramework framework, int size) {
+		// an idle framework does not own any class
+		JUnit5FrameworkUtilHelper.additionalHelpers.remove(framework);
+		List<JUnit5ConnectFramework> evicted = new ArrayList<>();
+		synchronized (FrameworkPool.class) {
+			if (shutdownHook == null) {
+				shutdownHook = new Thread(FrameworkPool::shutdown, "OSGi framework pool shutdown");
+				Runtime.getRuntime().addShutdownHook(shutdownHook);
+			}
+			idle.put(framework, key);
+			Iterator<JUnit5ConnectFramework> iterator = idle.keySet().iterator();
+			while (idle.size() > Math.max(size, 0)) {
+				evicted.add(iterator.next());
+				iterator.remove();
+			}
+		}
+		shutdown(evicted);
+	}
+
+	private static void shutdown() {
+		List<JUnit5ConnectFramework> frameworks;
+		synchronized (FrameworkPool.class) {
+			frameworks = new ArrayList<>(idle.keySet());
+			idle.clear();
+		}
+		shutdown(frameworks);
+	}
+
+	/**
+	 * Stops all idle frameworks before the classloader of the pool is discarded,
+	 * e.g. by the {@link FrameworkDaemon} once the classes of a runner changed
+	 */
+	static void close() {
+		synchronized (FrameworkPool.class) {
+			if (shutdownHook != null) {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+				shutdownHook = null;
+			}
+		}
+		shutdown();
+	}
+
+	private static void shutdown(List<JUnit5ConnectFramework> frameworks) {
+		for (JUnit5ConnectFramework framework : frameworks) {
+			try {
+				framework.shutdown();
+			} catch (Exception e) {
+				// nothing we can do about it, the framework is not used anymore
+			}
+		}
+	}
+
+	/**
+	 * Computes the key for a test class, two test classes with the same key
+	 * result in the same framework except for the test probe
+	 * 
+	 * @param testClass     the test class
+	 * @param configuration the configuration of the test class
+	 * @return the key or <code>null</code> if the framework of this test class
+	 *         must not be pooled
+	 */
+	static Object getKey(Class<?> testClass, FrameworkConfiguration configuration) {
+		if (!configuration.isPooled() || configuration.getLeakDetection().isEnabled()) {
+			// leak detection requires the framework to be stopped
+			return null;
+		}
+		return Arrays.asList(testClass.getClassLoader(), configuration.getFrameworkPart());
+	}
+
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+/**
+ * A base class for JMH <code>@State</code> objects that provide services from
+ * an embedded framework, the framework is configured by the annotations of the
+ * subclass, example:
+ *
+ * <pre>
+ * &#64;State(Scope.Benchmark)
+ * &#64;WithBundle("api-bundle")
+ * &#64;WithBundle(value = "impl-bundle", start = true)
+ * public class HelloWorldState extends FrameworkState {
+ *
+ * 	HelloWorld helloWorld;
+ *
+ * 	&#64;Setup
+ * 	public void setup() throws Exception {
+ * 		start();
+ * 		helloWorld = getService(HelloWorld.class);
+ * 	}
+ *
+ * 	&#64;TearDown
+ * 	public void tearDown() throws Exception {
+ * 		stop();
+ * 	}
+ * }
+ * </pre>
+ * 
+ * JMH itself is not a dependency of this library, so the lifecycle methods
+ * have to be annotated in the subclass.
+ */
+public abstract class FrameworkState {
+
+	private FrameworkLauncher launcher;
+
+	/**
+	 * Boots the framework configured by the annotations of this class
+	 * 
+	 * @throws Exception if the framework can not be started
+	 */
+	protected void start() throws Exception {
+		if (launcher == null) {
+			launcher = FrameworkLauncher.launch(getClass());
+		}
+	}
+
+	/**
+	 * @param <S>  the type of the service
+	 * @param type the type of the service
+	 * @return the service from the embedded framework
+	 * @throws InterruptedException if interrupted while waiting for the service
+	 * @see FrameworkLauncher#getService(Class)
+	 */
+	protected <S> S getService(Class<S> type) throws InterruptedException {
+		return getLauncher().getService(type);
+	}
+
+	/**
+	 * @return the launcher of the framework
+	 * @throws IllegalStateException if the framework is not started
+	 */
+	protected FrameworkLauncher getLauncher() {
+		if (launcher == null) {
+			throw new IllegalStateException("framework is not started");
+		}
+		return launcher;
+	}
+
+	/**
+	 * Stops the framework
+	 * 
+	 * @throws Exception if stopping the framework fails
+	 */
+	protected void stop() throws Exception {
+		if (launcher != null) {
+			try {
+				launcher.close();
+			} finally {
+				launcher = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A framework storage directory that is derived from a fingerprint of the
+ * framework configuration and the bundle locations so it can be reused across
+ * test runs, the storage is locked while in use to prevent concurrent forks
+ * from sharing it, storages that have not been used for a week are deleted
+ */
+final class FrameworkStorage implements Closeable {
+
+	private static final String PREFIX = "osgi-test-";
+	private static final String LOCK_SUFFIX = ".lock";
+	private static final int MAX_AGE_DAYS = 7;
+	private static final Pattern STORAGE = Pattern.compile(Pattern.quote(PREFIX) + "([0-9a-f]+)(-[0-9a-f-]{36})?");
+
+	private final File directory;
+	private final boolean reusable;
+	private final FileChannel channel;
+	private final FileLock lock;
+
+	private FrameworkStorage(File directory, boolean reusable, FileChannel channel, FileLock lock) {
+		this.directory = directory;
+		this.reusable = reusable;
+		this.channel = channel;
+		this.lock = lock;
+	}
+
+	/**
+	 * @return the storage directory
+	 */
+	File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return <code>true</code> if this storage is shared across runs,
+	 *         <code>false</code> if it is a fresh storage that must be cleaned on
+	 *         first use
+	 */
+	boolean isReusable() {
+		return reusable;
+	}
+
+	/**
+	 * Releases the storage, a fresh storage is deleted as it is never used again
+	 */
+	@Override
+	public void close() throws IOException {
+		if (lock != null) {
+			lock.release();
+		}
+		if (channel != null) {
+			channel.close();
+		}
+		if (!reusable) {
+			delete(directory);
+		}
+	}
+
+	/**
+	 * Acquires the storage for the given fingerprint
+	 * 
+	 * @param parent      the parent directory of the storage
+	 * @param fingerprint the fingerprint of the configuration
+	 * @return the locked reusable storage or a fresh one if the storage is
+	 *         currently used by someone else
+	 * @throws IOException if the lock file can not be created
+	 */
+	static FrameworkStorage acquire(File parent, String fingerprint) throws IOException {
+		parent.mkdirs();
+		prune(parent, fingerprint);
+		File lockFile = new File(parent, PREFIX + fingerprint + LOCK_SUFFIX);
+		FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		FileLock lock;
+		try {
+			lock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// already locked inside this JVM
+			lock = null;
+		}
+		if (lock == null) {
+			channel.close();
+			return new FrameworkStorage(new File(parent, PREFIX + fingerprint + "-" + UUID.randomUUID()), false,
+					null, null);
+		}
+		// the age of a storage is the time it was last used
+		lockFile.setLastModified(System.currentTimeMillis());
+		return new FrameworkStorage(new File(parent, PREFIX + fingerprint), true, channel, lock);
+	}
+
+	/**
+	 * Deletes the storages of other fingerprints that have not been used for a
+	 * while, e.g. because the configuration or a bundle has changed
+	 */
+	private static void prune(File parent, String fingerprint) throws IOException {
+		File[] files = parent.listFiles();
+		if (files == null) {
+			return;
+		}
+		long outdated = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS);
+		for (File file : files) {
+			Matcher matcher = STORAGE.matcher(file.getName());
+			if (!file.isDirectory() || !matcher.matches() || matcher.group(1).equals(fingerprint)) {
+				continue;
+			}
+			if (matcher.group(2) != null) {
+				// a fresh storage left behind by a JVM that did not terminate normally
+				if (file.lastModified() < outdated) {
+					delete(file);
+				}
+				continue;
+			}
+			File lockFile = new File(parent, file.getName() + LOCK_SUFFIX);
+			if (lockFile.lastModified() >= outdated) {
+				continue;
+			}
+			try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE); FileLock lock = channel.tryLock()) {
+				if (lock != null) {
+					delete(file);
+					// the lock file itself is kept as deleting it would allow another
+					// fork to lock a different file of the same name
+				}
+			} catch (OverlappingFileLockException e) {
+				// used inside this JVM
+			}
+		}
+	}
+
+	private static void delete(File directory) throws IOException {
+		if (!directory.exists()) {
+			return;
+		}
+		try (Stream<Path> walk = Files.walk(directory.toPath())) {
+			for (Path path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+
+	/**
+	 * Computes a fingerprint that changes whenever the framework properties, the
+	 * headers of a module or the content of its location changes
+	 * 
+	 * @param configuration the configuration of the framework
+	 * @param modules       the modules to install
+	 * @return the fingerprint
+	 * @throws IOException if the location of a module can not be read
+	 */
+	static String fingerprint(FrameworkConfiguration configuration, Collection<JUnit5Module> modules)
+			throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			update(digest, configuration.toString());
+			for (JUnit5Module module : modules) {
+				update(digest, module.getName());
+				update(digest, String.valueOf(module.isUseOSGiLoader()));
+				update(digest, module.getHeaders().map(TreeMap::new).map(String::valueOf).orElse(""));
+				File location = module.getLocation();
+				if (location != null) {
+					update(digest, location.getAbsolutePath());
+					update(digest, String.valueOf(JUnit5Module.getModificationStamp(location)));
+				}
+			}
+			return new BigInteger(1, digest.digest()).toString(16);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+}
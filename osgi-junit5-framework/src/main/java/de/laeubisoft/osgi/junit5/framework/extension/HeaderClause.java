@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.Version;
+
+/**
+ * A clause of an OSGi manifest header like
+ * <code>my.package;other.package;version="1.0";resolution:=optional</code>
+ */
+final class HeaderClause {
+
+	private final List<String> names;
+	private final Map<String, String> attributes;
+	private final Map<String, String> directives;
+	private final Map<String, String> types;
+
+	private HeaderClause(List<String> names, Map<String, String> attributes, Map<String, String> directives,
+			Map<String, String> types) {
+		this.names = Collections.unmodifiableList(names);
+		this.attributes = Collections.unmodifiableMap(attributes);
+		this.directives = Collections.unmodifiableMap(directives);
+		this.types = types;
+	}
+
+	List<String> getNames() {
+		return names;
+	}
+
+	/**
+	 * @param name the attribute name, a type suffix like
+	 *             <code>objectClass:List&lt;String&gt;</code> is ignored
+	 * @return the attribute value or <code>null</code>
+	 */
+	String getAttribute(String name) {
+		return attributes.get(name);
+	}
+
+	Map<String, String> getAttributes() {
+		return attributes;
+	}
+
+	String getDirective(String name) {
+		return directives.get(name);
+	}
+
+	/**
+	 * @return the attributes converted to the type given in the header (e.g.
+	 *         <code>version:Version=1.0</code>), attributes without a type are
+	 *         strings
+	 */
+	Map<String, Object> getTypedAttributes() {
+		Map<String, Object> typed = new LinkedHashMap<>();
+		for (Map.Entry<String, String> entry : attributes.entrySet()) {
+			typed.put(entry.getKey(), convert(types.getOrDefault(entry.getKey(), "String"), entry.getValue()));
+		}
+		return typed;
+	}
+
+	private static Object convert(String type, String value) {
+		if (type.startsWith("List")) {
+			int start = type.indexOf('<');
+			String elementType = start > 0 ? type.substring(start + 1, type.lastIndexOf('>')).trim() : "String";
+			List<Object> list = new ArrayList<>();
+			for (String element : split(value, ',')) {
+				list.add(convert(elementType, element.trim()));
+			}
+			return list;
+		}
+		switch (type) {
+		case "Version":
+			return Version.parseVersion(value);
+		case "Long":
+			return Long.valueOf(value);
+		case "Double":
+			return Double.valueOf(value);
+		default:
+			return value;
+		}
+	}
+
+	/**
+	 * Parses a manifest header into its clauses
+	 * 
+	 * @param header the header value, might be <code>null</code>
+	 * @return the clauses of the header
+	 */
+	static List<HeaderClause> parse(String header) {
+		List<HeaderClause> clauses = new ArrayList<>();
+		if (header == null) {
+			return clauses;
+		}
+		for (String clause : split(header, ',')) {
+			List<String> names = new ArrayList<>();
+			Map<String, String> attributes = new LinkedHashMap<>();
+			Map<String, String> directives = new LinkedHashMap<>();
+			Map<String, String> types = new LinkedHashMap<>();
+			for (String part : split(clause, ';')) {
+				int directive = part.indexOf(":=");
+				int attribute = part.indexOf('=');
+				if (directive > 0 && directive < attribute) {
+					directives.put(part.substring(0, directive).trim(), unquote(part.substring(directive + 2)));
+				} else if (attribute > 0) {
+					String key = part.substring(0, attribute).trim();
+					int type = key.indexOf(':');
+					if (type > 0) {
+						types.put(key.substring(0, type).trim(), key.substring(type + 1).trim());
+						key = key.substring(0, type).trim();
+					}
+					attributes.put(key, unquote(part.substring(attribute + 1)));
+				} else if (!part.trim().isEmpty()) {
+					names.add(part.trim());
+				}
+			}
+			if (!names.isEmpty()) {
+				clauses.add(new HeaderClause(names, attributes, directives, types));
+			}
+		}
+		return clauses;
+	}
+
+	private static List<String> split(String value, char separator) {
+		List<String> parts = new ArrayList<>();
+		boolean quoted = false;
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (c == '\\' && quoted) {
+				i++;
+			} else if (c == separator && !quoted) {
+				parts.add(value.substring(start, i));
+				start = i + 1;
+			}
+		}
+		parts.add(value.substring(start));
+		return parts;
+	}
+
+	private static String unquote(String value) {
+		String trimmed = value.trim();
+		if (trimmed.length() > 1 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+			return trimmed.substring(1, trimmed.length() - 1);
+		}
+		return trimmed;
+	}
+
+	@Override
+	public String toString() {
+		return String.join(";", names) + (attributes.isEmpty() ? "" : ";" + attributes)
+				+ (directives.isEmpty() ? "" : ";" + directives);
+	}
+}
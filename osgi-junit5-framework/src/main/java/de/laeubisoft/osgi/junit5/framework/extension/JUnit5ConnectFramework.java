@@ -23,122 +23,775 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Enumeration;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
-import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 
-import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
-import org.junit.platform.commons.PreconditionViolationException;
-import org.junit.platform.commons.support.AnnotationSupport;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.connect.ConnectFrameworkFactory;
 import org.osgi.framework.connect.FrameworkUtilHelper;
+import org.osgi.framework.hooks.service.EventListenerHook;
+import org.osgi.framework.hooks.service.FindHook;
+import org.osgi.framework.hooks.weaving.WeavingHook;
+import org.osgi.framework.hooks.weaving.WovenClassListener;
 import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.FrameworkWiring;
 
-import de.laeubisoft.osgi.junit5.framework.annotations.WithBundle;
-import de.laeubisoft.osgi.junit5.framework.annotations.WithExportedPackage;
-import de.laeubisoft.osgi.junit5.framework.annotations.WithFrameworkProperty;
+import de.laeubisoft.osgi.junit5.framework.annotations.PooledFramework;
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkConfiguration.BundleConfiguration;
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkConfiguration.PidConfiguration;
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkFlightRecorder.Span;
+import de.laeubisoft.osgi.junit5.framework.services.ClassLoadingReport;
 import de.laeubisoft.osgi.junit5.framework.services.FrameworkEvents;
+import de.laeubisoft.osgi.junit5.framework.services.ServiceRegistryReport;
 
-class JUnit5ConnectFramework implements CloseableResource, FrameworkUtilHelper {
+class JUnit5ConnectFramework implements AutoCloseable, FrameworkUtilHelper {
 
 	private static final String FILE_SCHEME = "file";
 	private static final String JAR_SCHEME = "jar";
 
-	final Framework framework;
+	Framework framework;
 	final FrameworkEvents frameworkEvents = new FrameworkEvents();
 	private Class<?> testClass;
+	private FrameworkLeakDetector leakDetector;
+	private FrameworkStorage storage;
+	private TestProbeModule probeModule;
+	private ClasspathIndex classpath;
+	private String systemModule;
+	private TestProbeFactory probeFactory;
+	private ClassLoadingRecorder recorder;
+	private TestFootprint footprint;
+	private final FrameworkBudgets budgets;
+	private String uniqueId;
+	private final Object poolKey;
+	private int poolSize = FrameworkPool.DEFAULT_SIZE;
+	private Consumer<String> leakReport;
+	private final List<JUnit5Module> modules = new ArrayList<>();
+	private final FrameworkConfiguration configuration;
+	private final List<String> activatedBundles = Collections.synchronizedList(new ArrayList<>());
+	private final Map<String, Long> modificationStamps = new HashMap<>();
 
 	private final JUnit5ModuleConnector connector = new JUnit5ModuleConnector();
 
 	public JUnit5ConnectFramework(Class<?> testClass, String uniqueId) throws IOException, BundleException {
-		Map<String, List<WithBundle>> bundleMap = AnnotationSupport
-				.findRepeatableAnnotations(testClass, WithBundle.class).stream()
-				.collect(Collectors.groupingBy(WithBundle::value));
-		List<String> additionalPackages = AnnotationSupport
-				.findRepeatableAnnotations(testClass, WithExportedPackage.class).stream()
-				.map(WithExportedPackage::value).collect(Collectors.toList());
+		this(testClass, uniqueId, key -> Optional.ofNullable(System.getProperty(key)));
+	}
+
+	/**
+	 * @param testClass               the test class holding the configuration
+	 * @param uniqueId                the unique id of the test class
+	 * @param configurationParameters global configuration parameters used when
+	 *                                the test class does not configure an item
+	 */
+	public JUnit5ConnectFramework(Class<?> testClass, String uniqueId,
+			Function<String, Optional<String>> configurationParameters) throws IOException, BundleException {
+		this(testClass, uniqueId, FrameworkConfiguration.of(testClass).withDefaults(configurationParameters), null);
+	}
+
+	/**
+	 * @param testClass     the test class providing the classpath and the test
+	 *                      probe
+	 * @param uniqueId      the unique id of the test class
+	 * @param configuration the configuration of the framework
+	 * @param poolKey       the key of the framework in the pool or
+	 *                      <code>null</code> if it is not pooled
+	 */
+	JUnit5ConnectFramework(Class<?> testClass, String uniqueId, FrameworkConfiguration configuration,
+			Object poolKey) throws IOException, BundleException {
+		this(testClass, uniqueId, configuration, poolKey, null, true);
+	}
+
+	/**
+	 * @param testClass     the test class providing the classpath and the test
+	 *                      probe
+	 * @param uniqueId      the unique id of the test class
+	 * @param configuration the configuration of the framework
+	 * @param poolKey       the key of the framework in the pool or
+	 *                      <code>null</code> if it is not pooled
+	 * @param classpath     the index of the classpath of the test class or
+	 *                      <code>null</code> if it should be scanned
+	 * @param registerProbe if the test probe is registered for the test class,
+	 *                      otherwise it is only found while a test of this
+	 *                      framework runs as other frameworks are using the same
+	 *                      test class at the same time
+	 */
+	JUnit5ConnectFramework(Class<?> testClass, String uniqueId, FrameworkConfiguration configuration,
+			Object poolKey, ClasspathIndex classpath, boolean registerProbe) throws IOException, BundleException {
+		this.poolKey = poolKey;
+		this.uniqueId = uniqueId;
+		this.configuration = configuration;
 		this.testClass = testClass;
-		List<JUnit5Module> modules = new ArrayList<>();
+		this.classpath = classpath;
+		budgets = new FrameworkBudgets(configuration);
+		try {
+			boot(registerProbe);
+		} catch (Throwable e) {
+			// nothing must keep the framework, its storage or the measurement once
+			// the boot failed
+			abort(e);
+			throw e;
+		}
+	}
+
+	private void boot(boolean registerProbe) throws IOException, BundleException {
+		LeakDetectionConfiguration leakDetection = configuration.getLeakDetection();
+		if (leakDetection.isEnabled()) {
+			leakDetector = new FrameworkLeakDetector(leakDetection.isFailOnLeak(), leakDetection.getTimeout(),
+					testClass);
+		}
 		ClassLoader classLoader = testClass.getClassLoader();
-		TestProbeModule probeModule = new TestProbeModule("test-probe-" + uniqueId, classLoader, additionalPackages);
-		modules.add(probeModule);
-		Enumeration<URL> resources = classLoader.getResources(JarFile.MANIFEST_NAME);
-		Set<String> missingBundles = new HashSet<>(bundleMap.keySet());
-		while (resources.hasMoreElements()) {
-			URL url = resources.nextElement();
-			JUnit5Module module = getModule(url, classLoader);
-			if (module != null) {
-				module.setUseOSGiLoader(bundleMap.getOrDefault(module.getName(), Collections.emptyList()).stream()
-						.anyMatch(WithBundle::isolated));
-				if (bundleMap.containsKey(module.getName())) {
-					missingBundles.remove(module.getName());
-					modules.add(module);
-				}
-			}
+		ClasspathIndex classpath = getClasspath();
+		Set<String> declaredBundles = configuration.getBundles().stream().map(BundleConfiguration::getName)
+				.collect(Collectors.toSet());
+		Set<String> missingBundles = new HashSet<>(declaredBundles);
+		Map<String, JUnit5Module> available = classpath.createModules();
+		for (JUnit5Module module : available.values()) {
+			module.setUseOSGiLoader(
+					configuration.getBundle(module.getName()).map(BundleConfiguration::isIsolated).orElse(false));
+			missingBundles.remove(module.getName());
 		}
 		if (!missingBundles.isEmpty()) {
-			throw new PreconditionViolationException(
+			throw new IllegalStateException(
 					"The follwoing bundles that where requested could not be found: " + missingBundles);
 		}
-		Map<String, String> frameworkProperties = new HashMap<>();
-		frameworkProperties.put(Constants.FRAMEWORK_STORAGE,
-				System.getProperty("java.io.tmpdir") + File.separator + "osgi-test-" + uniqueId);
-		AnnotationSupport.findRepeatableAnnotations(testClass, WithFrameworkProperty.class).stream()
-				.forEach(wp -> frameworkProperties.put(wp.property(), wp.value()));
-		ServiceLoader<ConnectFrameworkFactory> sl = ServiceLoader.load(ConnectFrameworkFactory.class,
-				getClass().getClassLoader());
-		ConnectFrameworkFactory factory = sl.iterator().next();
-		framework = factory.newFramework(frameworkProperties, connector);
-		JUnit5FrameworkUtilHelper.additionalHelpers.add(this);
-		framework.init(frameworkEvents);
+		ConnectFrameworkFactory factory = FrameworkFactories
+				.getFactory(configuration.getImplementation().orElse(null));
+		File frameworkLocation = getFileLocation(
+				factory.getClass().getProtectionDomain().getCodeSource().getLocation());
+		Optional<JUnit5Module> frameworkModule = available.values().stream()
+				.filter(module -> frameworkLocation != null && frameworkLocation.equals(module.getLocation()))
+				.findFirst();
+		systemModule = frameworkModule.map(JUnit5Module::getName).orElse(null);
+		probeFactory = new TestProbeFactory(frameworkModule, configuration.getFrameworkProperties());
+		Set<String> requiredBundles = declaredBundles;
+		if (configuration.isTransitiveBundles()) {
+			requiredBundles = CapabilityIndex.get(classLoader, available::values).closure(declaredBundles,
+					systemModule);
+		}
+		for (JUnit5Module module : available.values()) {
+			if (requiredBundles.contains(module.getName())) {
+				modules.add(module);
+			}
+		}
+		probeModule = probeFactory.create(testClass, uniqueId, modules);
+		modules.add(0, probeModule);
+		if (configuration.isRecordClassLoading()) {
+			recorder = new ClassLoadingRecorder();
+			for (JUnit5Module module : modules) {
+				module.setRecorder(recorder);
+			}
+		}
+		footprint = createFootprint(configuration, testClass, null);
+		for (JUnit5Module module : modules) {
+			module.setFootprint(footprint);
+			module.setTestClass(testClass);
+		}
+		Map<String, String> frameworkProperties = new HashMap<>(configuration.getFrameworkProperties());
+		Optional<String> storageDirectory = configuration.getStorage().getDirectory();
+		if (storageDirectory.isPresent() && !frameworkProperties.containsKey(Constants.FRAMEWORK_STORAGE)) {
+			String directory = storageDirectory.get();
+			storage = FrameworkStorage.acquire(
+					new File(directory.isEmpty() ? System.getProperty("java.io.tmpdir") : directory),
+					FrameworkStorage.fingerprint(configuration.getFrameworkPart(), modules));
+			if (!storage.isReusable()) {
+				frameworkProperties.put(Constants.FRAMEWORK_STORAGE_CLEAN,
+						Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT);
+			}
+			frameworkProperties.put(Constants.FRAMEWORK_STORAGE, storage.getDirectory().getAbsolutePath());
+		} else {
+			frameworkProperties.putIfAbsent(Constants.FRAMEWORK_STORAGE,
+					System.getProperty("java.io.tmpdir") + File.separator + "osgi-test-" + uniqueId);
+		}
+		Optional<FrameworkConcurrencySettings> concurrency = FrameworkConcurrencySettings.of(configuration);
+		concurrency.ifPresent(settings -> settings.applyTo(factory, frameworkProperties));
+		List<PidConfiguration> configurations = configuration.getConfigurations();
+		// configurations are applied after the Configuration Admin but before all
+		// other bundles are started, so the start level can't activate them at once
+		boolean startLevelActivation = concurrency.map(FrameworkConcurrencySettings::isStartLevelActivation)
+				.orElse(false) && configurations.isEmpty();
+		EntryBytesCache.ensureSize(configuration.getStorage().getEntryCacheSize());
+		// persisted bundles are connected while the framework initializes
+		connector.register(modules);
+		try (Span span = FrameworkFlightRecorder.phase("init", testClass)) {
+			framework = factory.newFramework(frameworkProperties, connector);
+			JUnit5FrameworkUtilHelper.additionalHelpers.add(this);
+			framework.init(frameworkEvents);
+		}
 		BundleContext bundleContext = framework.getBundleContext();
 		bundleContext.addFrameworkListener(frameworkEvents);
 		bundleContext.registerService(FrameworkEvents.class, frameworkEvents, null);
-		connector.install(modules, bundleContext);
-		JUnit5FrameworkUtilHelper.testProbeMap.put(testClass, connector.getBundle(probeModule));
-		framework.start();
+		bundleContext.addBundleListener(event -> {
+			TestFootprint current = footprint;
+			// resolving does not run any code of the bundle but its activator does
+			if (current != null && event.getType() == BundleEvent.STARTED) {
+				connector.getLocation(event.getBundle()).ifPresent(current::touched);
+			}
+			if (isLazyActivation() && event.getType() == BundleEvent.STARTED) {
+				activatedBundles.add(event.getBundle().getSymbolicName());
+			}
+		});
+		if (FrameworkFlightRecorder.isEnabled()) {
+			bundleContext.addBundleListener(new BundleEventRecorder(() -> this.testClass));
+		}
+		if (recorder != null) {
+			bundleContext.registerService(new String[] { WeavingHook.class.getName(),
+					WovenClassListener.class.getName(), ClassLoadingReport.class.getName() }, recorder, null);
+		}
+		if (configuration.isTraceServiceRegistry()) {
+			// the lowest ranking lets the tracer see the lookups as filtered by other hooks
+			bundleContext.registerService(new String[] { FindHook.class.getName(),
+					EventListenerHook.class.getName(), ServiceRegistryReport.class.getName() },
+					new ServiceRegistryTracer(), FrameworkUtil
+							.asDictionary(Collections.singletonMap(Constants.SERVICE_RANKING, Integer.MIN_VALUE)));
+		}
+		try (Span span = FrameworkFlightRecorder.phase("install", testClass)) {
+			connector.install(modules, bundleContext);
+		}
+		if (registerProbe) {
+			JUnit5FrameworkUtilHelper.testProbeMap.put(testClass, connector.getBundle(probeModule));
+		}
+		if (!startLevelActivation) {
+			try (Span span = FrameworkFlightRecorder.phase("start", testClass)) {
+				framework.start();
+			}
+		}
+		// failures of the start level are only reported as framework events
+		FrameworkBootVerifier bootVerifier = configuration.isFailOnBootErrors() || startLevelActivation
+				? new FrameworkBootVerifier()
+				: null;
+		List<Bundle> markedBundles = new ArrayList<>();
+		boolean provisioned = configurations.isEmpty();
+		try (Span span = FrameworkFlightRecorder.phase("startBundles", testClass)) {
+			List<JUnit5Module> startOrder = new ArrayList<>(modules);
+			if (!provisioned) {
+				// the Configuration Admin starts first so all configurations are present
+				// before any component is activated
+				startOrder.sort(Comparator.comparing(module -> !ConfigurationProvisioner.isConfigurationAdmin(module)));
+			}
+			for (JUnit5Module module : startOrder) {
+				if (configuration.getBundle(module.getName()).map(BundleConfiguration::isStart).orElse(false)) {
+					// before the framework is started this only marks the bundle to be
+					// activated by the start level
+					Bundle bundle = bundleContext.getBundle(module.getName());
+					start(bundle, getStartOptions(module.getName()), bootVerifier);
+					markedBundles.add(bundle);
+					if (!provisioned) {
+						provisioned = provision(bundleContext, configurations);
+					}
+				}
+			}
+		}
+		if (!provisioned) {
+			throw new BundleException("The configurations " + configurations
+					+ " require a started Configuration Admin, e.g. with @UseFelixConfigurationAdmin");
+		}
+		if (startLevelActivation) {
+			try (Span span = FrameworkFlightRecorder.phase("start", testClass)) {
+				framework.start();
+			}
+			bootVerifier.activated(framework, frameworkEvents, markedBundles);
+		}
+		try (Span span = FrameworkFlightRecorder.phase("startProbe", testClass)) {
+			start(bundleContext.getBundle(probeModule.getName()), 0, bootVerifier);
+		}
+		modules.remove(probeModule);
+		if (bootVerifier != null) {
+			verifyBoot(bootVerifier);
+		}
+		if (poolKey != null) {
+			for (JUnit5Module module : modules) {
+				modificationStamps.put(module.getName(), module.getModificationStamp());
+			}
+		}
+		budgets.started();
+	}
+
+	private static void start(Bundle bundle, int options, FrameworkBootVerifier bootVerifier)
+			throws BundleException {
+		try {
+			bundle.start(options);
+		} catch (BundleException e) {
+			if (bootVerifier == null) {
+				throw e;
+			}
+			// collect all problems of the boot before failing
+			bootVerifier.startFailed(bundle, e);
+		}
+	}
+
+	private void verifyBoot(FrameworkBootVerifier bootVerifier) throws BundleException {
+		if (configuration.isFailOnBootErrors()) {
+			bootVerifier.verify(framework, frameworkEvents);
+		} else {
+			bootVerifier.verifyStarts();
+		}
+	}
+
+	private boolean provision(BundleContext bundleContext, List<PidConfiguration> configurations)
+			throws BundleException {
+		try (Span span = FrameworkFlightRecorder.phase("provision", testClass)) {
+			return ConfigurationProvisioner.apply(bundleContext, configurations);
+		}
+	}
+
+	/**
+	 * Stops the framework that failed to boot at any stage and releases
+	 * everything it holds, unlike {@link #shutdown()} it does not look for leaks
+	 * of a framework that never became usable
+	 * 
+	 * @param e the reason the boot failed, problems while stopping are added as
+	 *          suppressed exceptions
+	 */
+	private void abort(Throwable e) {
+		budgets.cancel();
+		if (framework != null) {
+			try {
+				framework.stop();
+				framework.waitForStop(TimeUnit.SECONDS.toMillis(30));
+			} catch (Exception stopException) {
+				e.addSuppressed(stopException);
+			}
+		}
+		JUnit5FrameworkUtilHelper.additionalHelpers.remove(this);
+		Bundle probe = connector.getBundle(probeModule);
+		if (probe != null) {
+			JUnit5FrameworkUtilHelper.testProbeMap.remove(testClass, probe);
+		}
+		if (storage != null) {
+			try {
+				storage.close();
+			} catch (IOException closeException) {
+				e.addSuppressed(closeException);
+			}
+		}
+		if (recorder != null) {
+			recorder.close();
+		}
+	}
+
+	/**
+	 * Returns an idle framework from the pool if the test class allows pooling
+	 * or creates a new one
+	 * 
+	 * @param testClass               the test class holding the configuration
+	 * @param uniqueId                the unique id of the test class
+	 * @param configurationParameters global configuration parameters used when
+	 *                                the test class does not configure an item
+	 * @return the framework for the test class
+	 */
+	static JUnit5ConnectFramework obtain(Class<?> testClass, String uniqueId,
+			Function<String, Optional<String>> configurationParameters) throws IOException, BundleException {
+		FrameworkConfiguration configuration = FrameworkConfiguration.of(testClass)
+				.withDefaults(configurationParameters);
+		Object key = FrameworkPool.getKey(testClass, configuration);
+		if (key == null) {
+			return new JUnit5ConnectFramework(testClass, uniqueId, configuration, null);
+		}
+		int poolSize = configurationParameters.apply(PooledFramework.POOL_SIZE_PARAMETER).map(Integer::parseInt)
+				.orElse(FrameworkPool.DEFAULT_SIZE);
+		JUnit5ConnectFramework pooled;
+		while ((pooled = FrameworkPool.lease(key)) != null) {
+			try {
+				pooled.attach(testClass, uniqueId);
+				pooled.poolSize = poolSize;
+				return pooled;
+			} catch (IOException | BundleException | InterruptedException | RuntimeException e) {
+				// this one is broken, try the next or create a new one
+				try {
+					pooled.shutdown();
+				} catch (Exception ignored) {
+				}
+			}
+		}
+		JUnit5ConnectFramework framework = new JUnit5ConnectFramework(testClass, uniqueId, configuration, key);
+		framework.poolSize = poolSize;
+		return framework;
+	}
+
+	private void attach(Class<?> testClass, String uniqueId)
+			throws IOException, BundleException, InterruptedException {
+		this.testClass = testClass;
+		this.uniqueId = uniqueId;
+		try (Span span = FrameworkFlightRecorder.phase("attach", testClass)) {
+			attachProbe(testClass, uniqueId);
+		}
+	}
+
+	private void attachProbe(Class<?> testClass, String uniqueId)
+			throws IOException, BundleException, InterruptedException {
+		updateChangedModules();
+		footprint = createFootprint(FrameworkConfiguration.of(testClass), testClass, footprint);
 		for (JUnit5Module module : modules) {
-			if (bundleMap.getOrDefault(module.getName(), Collections.emptyList()).stream()
-					.anyMatch(WithBundle::start)) {
-				bundleContext.getBundle(module.getName()).start();
+			module.setFootprint(footprint);
+			module.setTestClass(testClass);
+		}
+		probeModule = probeFactory.create(testClass, uniqueId, modules);
+		prepare(probeModule, testClass);
+		BundleContext bundleContext = framework.getBundleContext();
+		Bundle probe = connector.install(probeModule, bundleContext);
+		JUnit5FrameworkUtilHelper.testProbeMap.put(testClass, probe);
+		frameworkEvents.clear();
+		for (BundleConfiguration bundleConfiguration : configuration.getBundles()) {
+			if (!bundleConfiguration.isStart()) {
+				continue;
+			}
+			// a previous test might have stopped it
+			String name = bundleConfiguration.getName();
+			Bundle bundle = bundleContext.getBundle(name);
+			if (bundle != null && (bundle.getState() & (Bundle.ACTIVE | Bundle.STARTING)) == 0) {
+				bundle.start(getStartOptions(name));
+			}
+		}
+		probe.start();
+	}
+
+	/**
+	 * Updates all bundles whose location has changed since the framework was
+	 * created (e.g. because classes where recompiled in the IDE), all other
+	 * bundles stay untouched
+	 */
+	private void updateChangedModules() throws IOException, BundleException, InterruptedException {
+		List<Bundle> updated = new ArrayList<>();
+		for (ListIterator<JUnit5Module> iterator = modules.listIterator(); iterator.hasNext();) {
+			JUnit5Module module = iterator.next();
+			File location = module.getLocation();
+			Long stamp = modificationStamps.get(module.getName());
+			if (location == null || stamp == null) {
+				continue;
+			}
+			long current = module.getModificationStamp();
+			if (current == stamp) {
+				continue;
+			}
+			// the manifest might have changed as well
+			URL manifest;
+			if (location.isDirectory()) {
+				manifest = new File(location, JarFile.MANIFEST_NAME).toURI().toURL();
+			} else {
+				manifest = new URL(JAR_SCHEME + ":" + location.toURI() + "!/" + JarFile.MANIFEST_NAME);
+			}
+			JUnit5Module changed = getModule(manifest, testClass.getClassLoader());
+			if (changed == null || !changed.getName().equals(module.getName())) {
+				throw new IllegalStateException("bundle " + module.getName() + " can not be updated in place");
+			}
+			changed.setUseOSGiLoader(module.isUseOSGiLoader());
+			changed.setRecorder(recorder);
+			changed.setTestClass(testClass);
+			Bundle bundle = connector.replace(module, changed);
+			iterator.set(changed);
+			modificationStamps.put(changed.getName(), current);
+			try (Span span = FrameworkFlightRecorder.bundle("update", changed.getName(), testClass.getName())) {
+				bundle.update();
 			}
+			updated.add(bundle);
+		}
+		if (!updated.isEmpty()) {
+			refresh(updated);
+		}
+	}
+
+	/**
+	 * Extends this framework for a nested test class whose configuration only
+	 * adds bundles or exported packages to the configuration of this framework,
+	 * the added bundles are installed (and started) and the nested class gets a
+	 * test probe of its own if it exports other packages
+	 * 
+	 * @param nestedClass         the nested test class
+	 * @param nestedId            the unique id of the nested test class
+	 * @param nestedConfiguration the configuration of the nested test class
+	 * @return the extension that must be closed once the nested class has
+	 *         finished, or an empty optional if the configuration of the nested
+	 *         class requires a framework of its own
+	 */
+	Optional<NestedFramework> nest(Class<?> nestedClass, String nestedId, FrameworkConfiguration nestedConfiguration)
+			throws IOException, BundleException {
+		Optional<List<BundleConfiguration>> additional = nestedConfiguration.getAdditionalBundles(configuration);
+		if (!additional.isPresent() || probeModule == null) {
+			return Optional.empty();
+		}
+		NestedFramework nested = new NestedFramework(this, nestedClass);
+		try (Span span = FrameworkFlightRecorder.phase("nest", nestedClass)) {
+			nested.install(nestedId, nestedConfiguration, additional.get());
+		} catch (IOException | BundleException | RuntimeException e) {
+			try {
+				nested.close();
+			} catch (Exception closeException) {
+				e.addSuppressed(closeException);
+			}
+			throw e;
+		}
+		return Optional.of(nested);
+	}
+
+	private void detach() throws BundleException, InterruptedException {
+		Bundle probe = connector.getBundle(probeModule);
+		JUnit5FrameworkUtilHelper.testProbeMap.remove(testClass);
+		probe.uninstall();
+		connector.unregister(probeModule);
+		refresh(Collections.singleton(probe));
+		probeModule = null;
+		testClass = null;
+	}
+
+	/**
+	 * Refreshes the given bundles and waits until the refresh has finished
+	 * 
+	 * @param bundles the bundles to refresh
+	 */
+	void refresh(Collection<Bundle> bundles) throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		framework.adapt(FrameworkWiring.class).refreshBundles(bundles, event -> latch.countDown());
+		if (!latch.await(30, TimeUnit.SECONDS)) {
+			throw new IllegalStateException("refreshing " + bundles + " did not finish in time");
+		}
+	}
+
+	private static TestFootprint createFootprint(FrameworkConfiguration configuration, Class<?> testClass,
+			TestFootprint previous) {
+		return configuration.getImpactFile().map(file -> new TestFootprint(new File(file), testClass, previous))
+				.orElse(null);
+	}
+
+	private boolean isLazyActivation() {
+		return configuration.getBundles().stream().anyMatch(BundleConfiguration::isLazy);
+	}
+
+	/**
+	 * Sets where leaks found when the framework is closed are reported to unless
+	 * they fail the test, only the first call has an effect so a nested class
+	 * sharing this framework does not take over the report
+	 * 
+	 * @param report receives the leaks found
+	 */
+	void reportLeaksTo(Consumer<String> report) {
+		if (leakReport == null) {
+			leakReport = report;
+		}
+	}
+
+	/**
+	 * @return the framework itself
+	 */
+	Framework getFramework() {
+		return framework;
+	}
+
+	/**
+	 * @return the test probe bundle
+	 */
+	Bundle getProbe() {
+		return connector.getBundle(probeModule);
+	}
+
+	private int getStartOptions(String name) {
+		return configuration.getBundle(name).map(BundleConfiguration::isLazy).orElse(false)
+				? Bundle.START_ACTIVATION_POLICY
+				: 0;
+	}
+
+	/**
+	 * @return the symbolic names of the bundles activated since the last call if
+	 *         the test class starts bundles lazily, an empty list otherwise
+	 */
+	List<String> drainActivatedBundles() {
+		synchronized (activatedBundles) {
+			List<String> list = new ArrayList<>(activatedBundles);
+			activatedBundles.clear();
+			return list;
+		}
+	}
+
+	/**
+	 * Verifies the memory retained by the framework against its budget, this is
+	 * only done once after the framework was created
+	 * 
+	 * @param report receives the measured memory and a warning if the budget is
+	 *               exceeded
+	 * @throws IOException    if writing the trend file fails
+	 * @throws AssertionError if the budget is exceeded and the configuration
+	 *                        requests to fail
+	 * @see FrameworkBudgets#verifyMemory(Class, String, Consumer)
+	 */
+	void verifyMemoryBudget(Consumer<String> report) throws IOException {
+		budgets.verifyMemory(testClass, framework.getSymbolicName(), report);
+	}
+
+	/**
+	 * Verifies the time it took to boot and start the framework against its
+	 * budget, this is only done once after the framework was created
+	 * 
+	 * @param report receives the measured time, regressions and a warning if the
+	 *               budget is exceeded
+	 * @throws IOException    if reading or writing the history file fails
+	 * @throws AssertionError if the budget is exceeded and the configuration
+	 *                        requests to fail
+	 * @see FrameworkBudgets#verifyStartup(Class, String, Consumer)
+	 */
+	void verifyStartupBudget(Consumer<String> report) throws IOException {
+		budgets.verifyStartup(testClass, framework.getSymbolicName(), report);
+	}
+
+	/**
+	 * Called after a test of the test class was executed
+	 * 
+	 * @param testId the unique id of the test
+	 * @param failed if the test has failed
+	 */
+	void afterTest(String testId, boolean failed) {
+		if (footprint != null) {
+			footprint.endTest(testId, failed);
 		}
-		bundleContext.getBundle(probeModule.getName()).start();
 	}
 
 	@Override
-	public void close() throws Throwable {
+	public void close() throws Exception {
+		if (footprint != null) {
+			footprint.write(uniqueId);
+		}
+		if (poolKey != null) {
+			try {
+				detach();
+				FrameworkPool.release(poolKey, this, poolSize);
+				return;
+			} catch (BundleException | RuntimeException e) {
+				// can't be reused...
+			}
+		}
+		shutdown();
+	}
+
+	/**
+	 * Stops the framework and releases all resources
+	 */
+	void shutdown() throws Exception {
+		if (leakDetector != null) {
+			leakDetector.track(framework, connector.getBundles(), JUnit5FrameworkUtilHelper.testProbeMap.get(testClass),
+					testClass.getClassLoader());
+		}
 		framework.getBundleContext().removeFrameworkListener(frameworkEvents);
-		framework.stop();
-		framework.waitForStop(TimeUnit.SECONDS.toMillis(30));
+		try (Span span = FrameworkFlightRecorder.phase("shutdown", testClass)) {
+			framework.stop();
+			framework.waitForStop(TimeUnit.SECONDS.toMillis(30));
+		}
 		JUnit5FrameworkUtilHelper.additionalHelpers.remove(this);
 		JUnit5FrameworkUtilHelper.testProbeMap.remove(testClass);
+		if (storage != null) {
+			storage.close();
+		}
+		if (recorder != null) {
+			recorder.close();
+		}
+		if (leakDetector != null) {
+			leakDetector.verify(this, leakReport == null ? message -> {
+			} : leakReport);
+		}
+	}
+
+	/**
+	 * @param testClass the test class
+	 * @param uniqueId  the unique id of the test class
+	 * @param providers the modules that might provide packages to the probe
+	 * @return a new probe module of the test class
+	 */
+	TestProbeModule createProbe(Class<?> testClass, String uniqueId, Collection<JUnit5Module> providers)
+			throws IOException {
+		return probeFactory.create(testClass, uniqueId, providers);
 	}
 
-	private static final JUnit5Module getModule(URL url, ClassLoader classLoader) {
+	/**
+	 * Prepares a module that is added to this framework
+	 * 
+	 * @param module    the module to prepare
+	 * @param testClass the test class the module is added for
+	 */
+	void prepare(JUnit5Module module, Class<?> testClass) {
+		module.setRecorder(recorder);
+		module.setFootprint(footprint);
+		module.setTestClass(testClass);
+	}
+
+	/**
+	 * @return the index of the classpath of the current test class
+	 * @throws IOException if the classpath can not be scanned
+	 */
+	ClasspathIndex getClasspath() throws IOException {
+		ClassLoader classLoader = testClass.getClassLoader();
+		if (classpath == null || classpath.getClassLoader() != classLoader) {
+			classpath = ClasspathIndex.scan(classLoader);
+		}
+		return classpath;
+	}
+
+	/**
+	 * @return the test class currently using this framework, or
+	 *         <code>null</code> if it is idle
+	 */
+	Class<?> getTestClass() {
+		return testClass;
+	}
+
+	/**
+	 * @return the configuration of this framework
+	 */
+	FrameworkConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * @return the name of the module of the framework implementation or
+	 *         <code>null</code> if it is not on the classpath
+	 */
+	String getSystemModule() {
+		return systemModule;
+	}
+
+	/**
+	 * @return the bundles of the configuration without the test probe
+	 */
+	List<JUnit5Module> getModules() {
+		return modules;
+	}
+
+	/**
+	 * @return the connector of this framework
+	 */
+	JUnit5ModuleConnector getConnector() {
+		return connector;
+	}
+
+	static final JUnit5Module getModule(URL url, ClassLoader classLoader) {
 		try {
 			Manifest manifest;
-			try (InputStream stream = url.openStream()) {
+			// a cached jar file would return the manifest from before a jar was rebuilt
+			URLConnection connection = url.openConnection();
+			connection.setUseCaches(false);
+			try (InputStream stream = connection.getInputStream()) {
 				manifest = new Manifest(stream);
 			}
 			Attributes attributes = manifest.getMainAttributes();
@@ -177,7 +830,7 @@ class JUnit5ConnectFramework implements CloseableResource, FrameworkUtilHelper {
 		return null;
 	}
 
-	private static File getFileLocation(URL url) {
+	static File getFileLocation(URL url) {
 		if (url != null) {
 			try {
 				return getFileLocation(url.toURI());
@@ -189,6 +842,13 @@ class JUnit5ConnectFramework implements CloseableResource, FrameworkUtilHelper {
 
 	@Override
 	public Optional<Bundle> getBundle(Class<?> classFromBundle) {
+		if (classFromBundle == testClass && probeModule != null) {
+			// the probe has no location of its own
+			Bundle probe = connector.getBundle(probeModule);
+			if (probe != null) {
+				return Optional.of(probe);
+			}
+		}
 		ClassLoader classLoader = classFromBundle.getClassLoader();
 		if (classLoader == null) {
 			return Optional.empty();
@@ -205,6 +865,10 @@ class JUnit5ConnectFramework implements CloseableResource, FrameworkUtilHelper {
 		if (location == null) {
 			return Optional.empty();
 		}
-		return connector.getBundle(location);
+		Optional<Bundle> bundle = connector.getBundle(location);
+		if (footprint != null && bundle.isPresent()) {
+			footprint.touched(location);
+		}
+		return bundle;
 	}
 }
@@ -18,13 +18,17 @@
 package de.laeubisoft.osgi.junit5.framework.extension;
 
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.connect.FrameworkUtilHelper;
 
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkFlightRecorder.LookupSpan;
+
 /**
  * Required to support bundle lookups, this class should never be used directly
  * by test code and is only public to be instantiated by the java service
@@ -38,6 +42,38 @@ public class JUnit5FrameworkUtilHelper implements FrameworkUtilHelper {
 
 	@Override
 	public Optional<Bundle> getBundle(Class<?> classFromBundle) {
+		try (LookupSpan span = FrameworkFlightRecorder.lookup(classFromBundle)) {
+			Optional<Bundle> bundle = lookup(classFromBundle);
+			bundle.ifPresent(span::found);
+			return bundle;
+		}
+	}
+
+	/**
+	 * @param bundle a bundle of one of the frameworks known to this helper
+	 * @return the name of the test class the framework of the bundle belongs to
+	 *         or <code>null</code> if it is unknown
+	 */
+	static String getTestClassName(Bundle bundle) {
+		for (Entry<Class<?>, Bundle> probe : testProbeMap.entrySet()) {
+			if (probe.getValue() == bundle) {
+				return probe.getKey().getName();
+			}
+		}
+		for (FrameworkUtilHelper helper : additionalHelpers) {
+			if (helper instanceof JUnit5ConnectFramework) {
+				JUnit5ConnectFramework connect = (JUnit5ConnectFramework) helper;
+				BundleContext context = connect.getFramework().getBundleContext();
+				Class<?> testClass = connect.getTestClass();
+				if (testClass != null && context != null && context.getBundle(bundle.getBundleId()) == bundle) {
+					return testClass.getName();
+				}
+			}
+		}
+		return null;
+	}
+
+	private Optional<Bundle> lookup(Class<?> classFromBundle) {
 		// for the test probe we always know the bundle
 		Bundle probeBundle = testProbeMap.get(classFromBundle);
 		if (probeBundle != null) {
@@ -20,10 +20,15 @@ package de.laeubisoft.osgi.junit5.framework.extension;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
-import java.util.List;
+import java.util.Comparator;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.stream.Collectors;
@@ -33,14 +38,47 @@ import java.util.zip.ZipEntry;
 import org.osgi.framework.connect.ConnectContent;
 import org.osgi.framework.connect.ConnectModule;
 
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkFlightRecorder.Span;
+
 class JUnit5Module implements ConnectContent, ConnectModule {
 
+	/**
+	 * maximum number of entries remembered as missing, the least recently used
+	 * ones are forgotten first
+	 */
+	private static final int		MISSING_ENTRIES_LIMIT	= 1024;
+
+	/**
+	 * directories modified more recently are not trusted to change their
+	 * modification time again as it has only a resolution of seconds on some
+	 * platforms
+	 */
+	private static final long		RACY_MILLIS				= 2000;
+
+	/**
+	 * the directories of missing entries are checked for modifications at most
+	 * once per interval, lookups in between trust the cached miss
+	 */
+	private static final long		VALIDATION_NANOS		= TimeUnit.SECONDS.toNanos(1);
+
 	private Map<String, String>	headers;
 	private ClassLoader			classLoader;
 	private File				location;
 	private JarFile				jarFile;
+	private long				jarModified;
 	private String				name;
 	private boolean				useOSGiLoader;
+	private ClassLoadingRecorder	recorder;
+	private volatile TestFootprint	footprint;
+	private volatile ClassLoader	footprintLoader;
+	private volatile boolean		contentOpen;
+	private volatile String			testClassName;
+	private final ConcurrentMap<String, MissingEntry>	missingEntries		= new ConcurrentHashMap<>();
+	private volatile long									generation;
+	private volatile long									generationStart	= System.nanoTime();
+	private final LongAdder									entryHits			= new LongAdder();
+	private final LongAdder									entryMisses			= new LongAdder();
+	private final LongAdder									cachedEntryMisses	= new LongAdder();
 
 	public JUnit5Module(String name, Map<String, String> headers, ClassLoader classLoader, File location) {
 		this.name = name;
@@ -67,24 +105,178 @@ class JUnit5Module implements ConnectContent, ConnectModule {
 				.collect(Collectors.toList());
 		}
 		if (location != null && location.isDirectory()) {
-			Stream<String> stream = Files.walk(location.toPath())
-				.map(p -> p.toString());
-			List<String> collect = stream
-				.collect(Collectors.toList());
-			stream.close();
-			return collect;
+			Path root = location.toPath();
+			try (Stream<Path> stream = Files.walk(root)) {
+				// entries are relative to the root and use '/' as separator with a
+				// trailing '/' for directories
+				return stream.filter(p -> !p.equals(root))
+					.map(p -> {
+						String entry = root.relativize(p)
+							.toString()
+							.replace(File.separatorChar, '/');
+						return Files.isDirectory(p) ? entry + "/" : entry;
+					})
+					.collect(Collectors.toList());
+			}
 		}
 		return Collections.emptyList();
 	}
 
+	/**
+	 * @return the modification stamp of the location of this module
+	 * @throws IOException if the location can not be read
+	 * @see #getModificationStamp(File)
+	 */
+	long getModificationStamp() throws IOException {
+		return getModificationStamp(location);
+	}
+
+	/**
+	 * @param location a jar, a single file or a directory
+	 * @return a stamp that changes whenever the content of the location changes,
+	 *         for directories all contained files are considered
+	 * @throws IOException if the location can not be read
+	 */
+	static long getModificationStamp(File location) throws IOException {
+		if (location == null) {
+			return 0;
+		}
+		if (location.isDirectory()) {
+			try (Stream<Path> stream = Files.walk(location.toPath())) {
+				long[] stamp = new long[2];
+				stream.forEach(p -> {
+					stamp[0] = Math.max(stamp[0], p.toFile()
+						.lastModified());
+					stamp[1]++;
+				});
+				return stamp[0] * 31 + stamp[1];
+			}
+		}
+		return location.lastModified() * 31 + location.length();
+	}
+
 	@Override
 	public Optional<ConnectEntry> getEntry(String path) {
+		long start = recorder == null ? 0 : System.nanoTime();
+		MissingEntry missing = missingEntries.get(path);
+		if (missing != null) {
+			if (missing.isValid(getGeneration())) {
+				entryMisses.increment();
+				cachedEntryMisses.increment();
+				if (recorder != null) {
+					recorder.entryLookup(this, path, false, true, start);
+				}
+				return Optional.empty();
+			}
+			missingEntries.remove(path, missing);
+		}
+		Optional<ConnectEntry> entry;
+		try (Span span = FrameworkFlightRecorder.entry(name, path, testClassName)) {
+			entry = lookupEntry(path);
+		}
+		TestFootprint footprint = this.footprint;
+		if (footprint != null && entry.isPresent()) {
+			footprint.touched(location);
+		}
+		if (entry.isPresent()) {
+			entryHits.increment();
+		} else {
+			entryMisses.increment();
+			if (contentOpen) {
+				createMissingEntry(path).ifPresent(miss -> rememberMissingEntry(path, miss));
+			}
+		}
+		if (recorder != null) {
+			recorder.entryLookup(this, path, entry.isPresent(), false, start);
+		}
+		return entry;
+	}
+
+	/**
+	 * A jar does not change while it is open, while a directory is only known to
+	 * still miss the entry as long as the nearest existing directory of the path
+	 * is not modified
+	 */
+	private Optional<MissingEntry> createMissingEntry(String path) {
+		if (jarFile != null) {
+			return Optional.of(new MissingEntry(null, 0, 0));
+		}
+		if (location == null || !location.isDirectory()) {
+			return Optional.empty();
+		}
+		File directory = new File(location, path).getParentFile();
+		while (directory != null && !directory.isDirectory()) {
+			directory = directory.getParentFile();
+		}
+		if (directory == null) {
+			return Optional.empty();
+		}
+		long modified = directory.lastModified();
+		if (System.currentTimeMillis() - modified < RACY_MILLIS) {
+			return Optional.empty();
+		}
+		return Optional.of(new MissingEntry(directory, modified, getGeneration()));
+	}
+
+	private void rememberMissingEntry(String path, MissingEntry missing) {
+		missingEntries.put(path, missing);
+		if (missingEntries.size() > MISSING_ENTRIES_LIMIT) {
+			forgetLeastRecentlyUsed();
+		}
+	}
+
+	/**
+	 * Forgets a quarter of the missing entries at once, so the sort is only
+	 * needed every few hundred new misses
+	 */
+	private synchronized void forgetLeastRecentlyUsed() {
+		int size = missingEntries.size();
+		if (size <= MISSING_ENTRIES_LIMIT) {
+			return;
+		}
+		int excess = size - MISSING_ENTRIES_LIMIT * 3 / 4;
+		missingEntries.entrySet()
+			.stream()
+			.sorted(Comparator.comparingLong(e -> e.getValue().used))
+			.limit(excess)
+			.collect(Collectors.toList())
+			.forEach(e -> missingEntries.remove(e.getKey(), e.getValue()));
+	}
+
+	/**
+	 * @return the current validation generation of this module, a new one is
+	 *         started once the validation interval has passed
+	 */
+	private long getGeneration() {
+		if (System.nanoTime() - generationStart >= VALIDATION_NANOS) {
+			synchronized (this) {
+				long now = System.nanoTime();
+				if (now - generationStart >= VALIDATION_NANOS) {
+					generationStart = now;
+					generation++;
+				}
+			}
+		}
+		return generation;
+	}
+
+	/**
+	 * Starts a new validation generation so the next lookup of every cached miss
+	 * checks its directory again
+	 */
+	synchronized void revalidateMissingEntries() {
+		generationStart = System.nanoTime();
+		generation++;
+	}
+
+	private Optional<ConnectEntry> lookupEntry(String path) {
 		if (jarFile != null) {
 			final ZipEntry entry = jarFile.getEntry(path);
 			if (entry == null) {
 				return Optional.empty();
 			}
-			return Optional.of(new ZipConnectEntry(jarFile, entry));
+			// only the classloaders of isolated bundles read class files
+			return Optional.of(new ZipConnectEntry(jarFile, entry, useOSGiLoader ? jarModified : -1));
 		}
 		if (location != null && location.isDirectory()) {
 			File file = new File(location, path);
@@ -100,20 +292,41 @@ class JUnit5Module implements ConnectContent, ConnectModule {
 		if (useOSGiLoader) {
 			return Optional.empty();
 		}
-		return Optional.of(classLoader);
+		// the wiring reports this classloader, so it is only used while footprints
+		// are recorded and then kept for the lifetime of the module
+		ClassLoader loader = footprintLoader;
+		if (loader == null && footprint != null) {
+			synchronized (this) {
+				if (footprintLoader == null) {
+					footprintLoader = new FootprintClassLoader(this);
+				}
+				loader = footprintLoader;
+			}
+		}
+		return Optional.of(loader == null ? classLoader : loader);
 	}
 
 	@Override
 	public void open() throws IOException {
-		if (location != null && jarFile == null && location.isFile()) {
-			jarFile = new JarFile(location);
+		try (Span span = FrameworkFlightRecorder.content("open", name, testClassName)) {
+			missingEntries.clear();
+			if (location != null && jarFile == null && location.isFile()) {
+				jarFile = new JarFile(location);
+				jarModified = location.lastModified();
+			}
+			contentOpen = true;
 		}
 	}
 
 	@Override
 	public void close() throws IOException {
-		if (jarFile != null) {
-			jarFile.close();
+		try (Span span = FrameworkFlightRecorder.content("close", name, testClassName)) {
+			contentOpen = false;
+			missingEntries.clear();
+			if (jarFile != null) {
+				jarFile.close();
+				jarFile = null;
+			}
 		}
 	}
 
@@ -129,4 +342,103 @@ class JUnit5Module implements ConnectContent, ConnectModule {
 		this.useOSGiLoader = useOSGiLoader;
 	}
 
+	public boolean isUseOSGiLoader() {
+		return useOSGiLoader;
+	}
+
+	void setRecorder(ClassLoadingRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	void setFootprint(TestFootprint footprint) {
+		this.footprint = footprint;
+	}
+
+	void setTestClass(Class<?> testClass) {
+		this.testClassName = testClass.getName();
+	}
+
+	String getTestClassName() {
+		return testClassName;
+	}
+
+	/**
+	 * @return the number of entries found by {@link #getEntry(String)}
+	 */
+	long getEntryHits() {
+		return entryHits.sum();
+	}
+
+	/**
+	 * @return the number of entries missed by {@link #getEntry(String)}
+	 *         including the cached ones
+	 */
+	long getEntryMisses() {
+		return entryMisses.sum();
+	}
+
+	/**
+	 * @return the number of misses answered from the cache of missing entries
+	 */
+	long getCachedEntryMisses() {
+		return cachedEntryMisses.sum();
+	}
+
+	/**
+	 * Delegates to the shared classloader but records the use of this module
+	 * whenever the framework loads a class through this bundle
+	 */
+	private static final class FootprintClassLoader extends ClassLoader {
+
+		static {
+			registerAsParallelCapable();
+		}
+
+		private final JUnit5Module module;
+
+		FootprintClassLoader(JUnit5Module module) {
+			super(module.classLoader);
+			this.module = module;
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			TestFootprint footprint = module.footprint;
+			if (footprint != null) {
+				footprint.touched(module.location);
+			}
+			return super.loadClass(name, resolve);
+		}
+	}
+
+	/**
+	 * An entry known to be missing as long as its directory is not modified, the
+	 * directory is checked at most once per generation
+	 */
+	private static final class MissingEntry {
+
+		private final File		directory;
+		private final long		modified;
+		private volatile long	validated;
+		private volatile long	used	= System.nanoTime();
+
+		MissingEntry(File directory, long modified, long generation) {
+			this.directory = directory;
+			this.modified = modified;
+			this.validated = generation;
+		}
+
+		boolean isValid(long generation) {
+			used = System.nanoTime();
+			if (directory == null || validated == generation) {
+				return true;
+			}
+			if (directory.lastModified() != modified) {
+				return false;
+			}
+			validated = generation;
+			return true;
+		}
+	}
+
 }
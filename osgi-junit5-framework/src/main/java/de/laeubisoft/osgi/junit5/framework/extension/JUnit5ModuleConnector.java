@@ -18,10 +18,11 @@
 package de.laeubisoft.osgi.junit5.framework.extension;
 
 import java.io.File;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
@@ -30,10 +31,13 @@ import org.osgi.framework.BundleException;
 import org.osgi.framework.connect.ConnectModule;
 import org.osgi.framework.connect.ModuleConnector;
 
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkFlightRecorder.Span;
+
 class JUnit5ModuleConnector implements ModuleConnector {
 
-	private Map<String, JUnit5Module> moduleMap = new HashMap<>();
-	private Map<JUnit5Module, Bundle>	bundleMap	= new HashMap<>();
+	// modules are replaced and unregistered while the framework resolves bundles
+	private Map<String, JUnit5Module> moduleMap = new ConcurrentHashMap<>();
+	private Map<JUnit5Module, Bundle>	bundleMap	= new ConcurrentHashMap<>();
 
 	@Override
 	public void initialize(File storage, Map<String, String> configuration) {
@@ -50,15 +54,56 @@ class JUnit5ModuleConnector implements ModuleConnector {
 		return Optional.empty();
 	}
 
-	public void install(List<JUnit5Module> modules, BundleContext bundleContext) throws BundleException {
+	void register(Collection<JUnit5Module> modules) {
 		for (JUnit5Module module : modules) {
 			moduleMap.put(module.getName(), module);
-			bundleMap.put(module, bundleContext.installBundle(module.getName()));
 		}
 	}
 
+	public void install(List<JUnit5Module> modules, BundleContext bundleContext) throws BundleException {
+		for (JUnit5Module module : modules) {
+			install(module, bundleContext);
+		}
+	}
+
+	Bundle install(JUnit5Module module, BundleContext bundleContext) throws BundleException {
+		moduleMap.put(module.getName(), module);
+		try (Span span = FrameworkFlightRecorder.bundle("install", module.getName(), module.getTestClassName())) {
+			Bundle bundle = bundleContext.installBundle(module.getName());
+			bundleMap.put(module, bundle);
+			return bundle;
+		}
+	}
+
+	Bundle replace(JUnit5Module module, JUnit5Module replacement) {
+		moduleMap.put(replacement.getName(), replacement);
+		Bundle bundle = bundleMap.remove(module);
+		if (bundle != null) {
+			bundleMap.put(replacement, bundle);
+		}
+		return bundle;
+	}
+
+	void unregister(JUnit5Module module) {
+		moduleMap.remove(module.getName());
+		bundleMap.remove(module);
+	}
+
+	Collection<Bundle> getBundles() {
+		return bundleMap.values();
+	}
+
 	Bundle getBundle(JUnit5Module module) {
-		return bundleMap.get(module);
+		return module == null ? null : bundleMap.get(module);
+	}
+
+	Optional<File> getLocation(Bundle bundle) {
+		return bundleMap.entrySet()
+			.stream()
+			.filter(entry -> bundle.equals(entry.getValue()))
+			.findAny()
+			.map(entry -> entry.getKey()
+				.getLocation());
 	}
 
 	public Optional<Bundle> getBundle(File location) {
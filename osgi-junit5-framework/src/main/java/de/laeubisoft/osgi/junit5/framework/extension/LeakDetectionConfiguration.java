@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.Objects;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.DetectFrameworkLeaks;
+
+/**
+ * How leaked frameworks are detected
+ * 
+ * @see DetectFrameworkLeaks
+ */
+public final class LeakDetectionConfiguration {
+
+	/**
+	 * Leaks are not detected
+	 */
+	static final LeakDetectionConfiguration NONE = new LeakDetectionConfiguration(false, false, 0);
+
+	private final boolean enabled;
+	private final boolean failOnLeak;
+	private final long timeout;
+
+	LeakDetectionConfiguration(boolean enabled, boolean failOnLeak, long timeout) {
+		this.enabled = enabled;
+		this.failOnLeak = failOnLeak;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return <code>true</code> if framework leaks are detected
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return <code>true</code> if a leak fails the test, only relevant if
+	 *         {@link #isEnabled()}
+	 */
+	public boolean isFailOnLeak() {
+		return failOnLeak;
+	}
+
+	/**
+	 * @return the time in milliseconds to wait for the framework to be
+	 *         collected, only relevant if {@link #isEnabled()}
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(enabled, failOnLeak, timeout);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof LeakDetectionConfiguration)) {
+			return false;
+		}
+		LeakDetectionConfiguration other = (LeakDetectionConfiguration) obj;
+		return enabled == other.enabled && failOnLeak == other.failOnLeak && timeout == other.timeout;
+	}
+
+	@Override
+	public String toString() {
+		return "LeakDetectionConfiguration [enabled=" + enabled + ", failOnLeak=" + failOnLeak + ", timeout="
+				+ timeout + "]";
+	}
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkMemoryBudget;
+
+/**
+ * The budget for the memory retained by a framework
+ * 
+ * @see FrameworkMemoryBudget
+ */
+public final class MemoryBudgetConfiguration {
+
+	/**
+	 * The memory is not measured
+	 */
+	static final MemoryBudgetConfiguration NONE = new MemoryBudgetConfiguration(false, 0, false, null);
+
+	private final boolean enabled;
+	private final long maxRetainedMb;
+	private final boolean failOnExceed;
+	private final String trendFile;
+
+	MemoryBudgetConfiguration(boolean enabled, long maxRetainedMb, boolean failOnExceed, String trendFile) {
+		this.enabled = enabled;
+		this.maxRetainedMb = maxRetainedMb;
+		this.failOnExceed = failOnExceed;
+		this.trendFile = trendFile;
+	}
+
+	/**
+	 * @return <code>true</code> if the memory retained by the framework is
+	 *         measured
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return the maximum memory in megabytes the framework may retain, only
+	 *         relevant if {@link #isEnabled()}
+	 */
+	public long getMaxRetainedMb() {
+		return maxRetainedMb;
+	}
+
+	/**
+	 * @return <code>true</code> if exceeding the budget fails the test, only
+	 *         relevant if {@link #isEnabled()}
+	 */
+	public boolean isFailOnExceed() {
+		return failOnExceed;
+	}
+
+	/**
+	 * @return the file the measurements are appended to, or an empty optional if
+	 *         they are not recorded
+	 */
+	public Optional<String> getTrendFile() {
+		return Optional.ofNullable(trendFile);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(enabled, maxRetainedMb, failOnExceed, trendFile);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof MemoryBudgetConfiguration)) {
+			return false;
+		}
+		MemoryBudgetConfiguration other = (MemoryBudgetConfiguration) obj;
+		return enabled == other.enabled && maxRetainedMb == other.maxRetainedMb
+				&& failOnExceed == other.failOnExceed && Objects.equals(trendFile, other.trendFile);
+	}
+
+	@Override
+	public String toString() {
+		return "MemoryBudgetConfiguration [enabled=" + enabled + ", maxRetainedMb=" + maxRetainedMb
+				+ ", failOnExceed=" + failOnExceed + ", trendFile=" + trendFile + "]";
+	}
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkConfiguration.BundleConfiguration;
+
+/**
+ * The bundles and test probe a nested test class has added to the framework
+ * of its enclosing class, closing it uninstalls them again
+ */
+final class NestedFramework implements AutoCloseable {
+
+	private final JUnit5ConnectFramework connect;
+	private final Class<?> nestedClass;
+	private final List<Bundle> installed = new ArrayList<>();
+	private final List<Bundle> started = new ArrayList<>();
+	private final List<JUnit5Module> nestedModules = new ArrayList<>();
+
+	/**
+	 * @param connect     the framework of the enclosing class
+	 * @param nestedClass the nested test class
+	 */
+	NestedFramework(JUnit5ConnectFramework connect, Class<?> nestedClass) {
+		this.connect = connect;
+		this.nestedClass = nestedClass;
+	}
+
+	/**
+	 * @return the framework that was extended
+	 */
+	JUnit5ConnectFramework getFramework() {
+		return connect;
+	}
+
+	/**
+	 * Installs (and starts) the additional bundles and the test probe of the
+	 * nested class if it needs one of its own
+	 * 
+	 * @param nestedId            the unique id of the nested test class
+	 * @param nestedConfiguration the configuration of the nested test class
+	 * @param additional          the bundles the nested class adds
+	 */
+	void install(String nestedId, FrameworkConfiguration nestedConfiguration, List<BundleConfiguration> additional)
+			throws IOException, BundleException {
+		BundleContext bundleContext = connect.getFramework().getBundleContext();
+		JUnit5ModuleConnector connector = connect.getConnector();
+		Set<String> names = additional.stream().map(BundleConfiguration::getName)
+				.collect(Collectors.toCollection(LinkedHashSet::new));
+		ClasspathIndex classpath = connect.getClasspath();
+		Map<String, JUnit5Module> available = classpath.createModules();
+		if (connect.getConfiguration().isTransitiveBundles()) {
+			names = CapabilityIndex.get(classpath.getClassLoader(), available::values).closure(names,
+					connect.getSystemModule());
+		}
+		Set<String> missingBundles = new LinkedHashSet<>();
+		for (String name : names) {
+			if (bundleContext.getBundle(name) != null) {
+				// added by an enclosing nested class or required transitively
+				continue;
+			}
+			JUnit5Module module = available.get(name);
+			if (module == null) {
+				missingBundles.add(name);
+				continue;
+			}
+			module.setUseOSGiLoader(
+					nestedConfiguration.getBundle(name).map(BundleConfiguration::isIsolated).orElse(false));
+			connect.prepare(module, nestedClass);
+			nestedModules.add(module);
+		}
+		if (!missingBundles.isEmpty()) {
+			throw new IllegalStateException(
+					"The following bundles that were requested could not be found: " + missingBundles);
+		}
+		for (JUnit5Module module : nestedModules) {
+			installed.add(connector.install(module, bundleContext));
+		}
+		Bundle probe = connect.getProbe();
+		FrameworkConfiguration probeConfiguration = FrameworkConfiguration.of(connect.getTestClass());
+		FrameworkConfiguration nestedProbeConfiguration = FrameworkConfiguration.of(nestedClass);
+		if (!nestedProbeConfiguration.getExportedPackages().equals(probeConfiguration.getExportedPackages())
+				|| nestedProbeConfiguration.isAnalyzeProbePackages() != probeConfiguration.isAnalyzeProbePackages()) {
+			List<JUnit5Module> providers = new ArrayList<>(connect.getModules());
+			providers.addAll(nestedModules);
+			TestProbeModule nestedProbe = connect.createProbe(nestedClass, nestedId, providers);
+			connect.prepare(nestedProbe, nestedClass);
+			nestedModules.add(nestedProbe);
+			probe = connector.install(nestedProbe, bundleContext);
+			installed.add(probe);
+		}
+		JUnit5FrameworkUtilHelper.testProbeMap.put(nestedClass, probe);
+		for (BundleConfiguration bundleConfiguration : additional) {
+			Bundle bundle = bundleContext.getBundle(bundleConfiguration.getName());
+			if (bundleConfiguration.isStart() && bundle != null
+					&& (bundle.getState() & (Bundle.ACTIVE | Bundle.STARTING)) == 0) {
+				bundle.start(bundleConfiguration.isLazy() ? Bundle.START_ACTIVATION_POLICY : 0);
+				started.add(bundle);
+			}
+		}
+		if (probe.getState() != Bundle.ACTIVE) {
+			probe.start();
+		}
+	}
+
+	@Override
+	public void close() throws Exception {
+		JUnit5FrameworkUtilHelper.testProbeMap.remove(nestedClass);
+		for (Bundle bundle : started) {
+			if (!installed.contains(bundle)) {
+				bundle.stop();
+			}
+		}
+		for (int i = installed.size() - 1; i >= 0; i--) {
+			installed.get(i).uninstall();
+		}
+		for (JUnit5Module module : nestedModules) {
+			connect.getConnector().unregister(module);
+		}
+		if (!installed.isEmpty()) {
+			connect.refresh(installed);
+		}
+	}
+}
@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Analyzes the compiled classes of the test probe to compute the packages it
+ * contains and the packages it references, the result of a location is cached
+ * until its modification stamp changes and the result of each class file is
+ * cached by the hash of its content
+ */
+final class ProbePackageAnalyzer {
+
+	private static final String CLASS_SUFFIX = ".class";
+	private static final Pattern TYPE_DESCRIPTOR = Pattern.compile("L([\\w/$]+)[;<]");
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int CONSTANT_METHOD_HANDLE = 15;
+	private static final int CONSTANT_METHOD_TYPE = 16;
+	private static final int CONSTANT_DYNAMIC = 17;
+	private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+	private static final int CONSTANT_MODULE = 19;
+	private static final int CONSTANT_PACKAGE = 20;
+
+	/**
+	 * referenced packages by the hash of the class file
+	 */
+	private static final Map<String, Set<String>> referencesCache = new ConcurrentHashMap<>();
+
+	/**
+	 * analyzers of locations by the location, valid as long as the location has
+	 * the modification stamp of the analyzer
+	 */
+	private static final Map<File, ProbePackageAnalyzer> locationCache = new ConcurrentHashMap<>();
+
+	private final Set<String> containedPackages = new TreeSet<>();
+	private final Set<String> referencedPackages = new TreeSet<>();
+	private final long modificationStamp;
+
+	private ProbePackageAnalyzer(long modificationStamp) {
+		this.modificationStamp = modificationStamp;
+	}
+
+	/**
+	 * @return the packages that contain classes of the probe
+	 */
+	Set<String> getExports() {
+		return Collections.unmodifiableSet(containedPackages);
+	}
+
+	/**
+	 * @param excluded packages that should never be imported
+	 * @return the packages referenced by the probe classes that are not
+	 *         contained in the probe itself
+	 */
+	Set<String> getImports(Set<String> excluded) {
+		return referencedPackages.stream()
+				.filter(pkg -> !pkg.equals("java") && !pkg.startsWith("java.") && !containedPackages.contains(pkg)
+						&& !excluded.contains(pkg))
+				.collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	/**
+	 * Analyzes all classes found in the location of the given test class
+	 * 
+	 * @param testClass the test class
+	 * @return the analyzer holding the result
+	 * @throws IOException if reading the classes failed
+	 */
+	static ProbePackageAnalyzer analyze(Class<?> testClass) throws IOException {
+		String testPackage = packageOf(testClass.getName().replace('.', '/'));
+		File location = getLocation(testClass);
+		if (location == null) {
+			ProbePackageAnalyzer analyzer = new ProbePackageAnalyzer(0);
+			analyzer.containedPackages.add(testPackage);
+			String resource = testClass.getName().replace('.', '/') + CLASS_SUFFIX;
+			try (InputStream stream = testClass.getClassLoader().getResourceAsStream(resource)) {
+				if (stream != null) {
+					analyzer.analyzeClass(resource, readAll(stream));
+				}
+			}
+			return analyzer;
+		}
+		long stamp = JUnit5Module.getModificationStamp(location);
+		ProbePackageAnalyzer cached = locationCache.get(location);
+		if (cached == null || cached.modificationStamp != stamp) {
+			cached = analyze(location, stamp);
+			locationCache.put(location, cached);
+		}
+		if (cached.containedPackages.contains(testPackage)) {
+			return cached;
+		}
+		// the test class is not part of its location, e.g. it was generated
+		ProbePackageAnalyzer analyzer = new ProbePackageAnalyzer(stamp);
+		analyzer.containedPackages.addAll(cached.containedPackages);
+		analyzer.containedPackages.add(testPackage);
+		analyzer.referencedPackages.addAll(cached.referencedPackages);
+		return analyzer;
+	}
+
+	private static ProbePackageAnalyzer analyze(File location, long stamp) throws IOException {
+		ProbePackageAnalyzer analyzer = new ProbePackageAnalyzer(stamp);
+		if (location.isDirectory()) {
+			Path root = location.toPath();
+			List<Path> classFiles;
+			try (Stream<Path> walk = Files.walk(root)) {
+				classFiles = walk.filter(path -> path.toString().endsWith(CLASS_SUFFIX))
+						.collect(Collectors.toList());
+			}
+			for (Path path : classFiles) {
+				analyzer.analyzeClass(root.relativize(path).toString().replace(File.separatorChar, '/'),
+						Files.readAllBytes(path));
+			}
+		} else {
+			try (JarFile jarFile = new JarFile(location)) {
+				Enumeration<JarEntry> entries = jarFile.entries();
+				while (entries.hasMoreElements()) {
+					JarEntry entry = entries.nextElement();
+					if (entry.getName().endsWith(CLASS_SUFFIX) && !entry.getName().startsWith("META-INF/")) {
+						try (InputStream stream = jarFile.getInputStream(entry)) {
+							analyzer.analyzeClass(entry.getName(), readAll(stream));
+						}
+					}
+				}
+			}
+		}
+		return analyzer;
+	}
+
+	/**
+	 * @param testClass the test class
+	 * @return the jar or directory the test class was loaded from, or
+	 *         <code>null</code> if it is unknown
+	 */
+	static File getLocation(Class<?> testClass) {
+		ProtectionDomain protectionDomain = testClass.getProtectionDomain();
+		if (protectionDomain == null || protectionDomain.getCodeSource() == null) {
+			return null;
+		}
+		return JUnit5ConnectFramework.getFileLocation(protectionDomain.getCodeSource().getLocation());
+	}
+
+	private void analyzeClass(String path, byte[] bytes) throws IOException {
+		String name = path.substring(0, path.length() - CLASS_SUFFIX.length());
+		if (name.endsWith("module-info") || name.endsWith("package-info")) {
+			return;
+		}
+		containedPackages.add(packageOf(name));
+		String hash = hash(bytes);
+		Set<String> references = referencesCache.get(hash);
+		if (references == null) {
+			references = Collections.unmodifiableSet(parseReferences(bytes));
+			referencesCache.put(hash, references);
+		}
+		referencedPackages.addAll(references);
+	}
+
+	private static Set<String> parseReferences(byte[] bytes) throws IOException {
+		Set<String> packages = parseTypes(bytes).stream().map(ProbePackageAnalyzer::packageOf)
+				.collect(Collectors.toCollection(HashSet::new));
+		packages.remove("");
+		return packages;
+	}
+
+	/**
+	 * @param bytes the content of a class file
+	 * @return the internal names of all classes referenced by the class file
+	 * @throws IOException if the class file can not be parsed
+	 */
+	static Set<String> parseTypes(byte[] bytes) throws IOException {
+		Set<String> types = new HashSet<>();
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			if (in.readInt() != 0xCAFEBABE) {
+				return types;
+			}
+			in.readUnsignedShort();
+			in.readUnsignedShort();
+			int count = in.readUnsignedShort();
+			String[] utf8 = new String[count];
+			Set<Integer> classes = new HashSet<>();
+			Set<Integer> strings = new HashSet<>();
+			for (int i = 1; i < count; i++) {
+				int tag = in.readUnsignedByte();
+				switch (tag) {
+				case CONSTANT_UTF8:
+					utf8[i] = in.readUTF();
+					break;
+				case CONSTANT_CLASS:
+					classes.add(in.readUnsignedShort());
+					break;
+				case CONSTANT_STRING:
+					strings.add(in.readUnsignedShort());
+					break;
+				case CONSTANT_METHOD_TYPE:
+				case CONSTANT_MODULE:
+				case CONSTANT_PACKAGE:
+					in.readUnsignedShort();
+					break;
+				case CONSTANT_METHOD_HANDLE:
+					in.readUnsignedByte();
+					in.readUnsignedShort();
+					break;
+				case CONSTANT_INTEGER:
+				case CONSTANT_FLOAT:
+				case CONSTANT_FIELDREF:
+				case CONSTANT_METHODREF:
+				case CONSTANT_INTERFACE_METHODREF:
+				case CONSTANT_NAME_AND_TYPE:
+				case CONSTANT_DYNAMIC:
+				case CONSTANT_INVOKE_DYNAMIC:
+					in.readInt();
+					break;
+				case CONSTANT_LONG:
+				case CONSTANT_DOUBLE:
+					in.readLong();
+					i++;
+					break;
+				default:
+					throw new IOException("unknown constant pool tag " + tag);
+				}
+			}
+			for (int index : classes) {
+				String className = utf8[index];
+				if (className == null) {
+					continue;
+				}
+				if (className.startsWith("[")) {
+					addDescriptorTypes(className, types);
+				} else {
+					types.add(className);
+				}
+			}
+			// all other UTF8 constants that are not string literals might be
+			// descriptors or signatures of fields, methods or annotations
+			for (int i = 1; i < count; i++) {
+				if (utf8[i] != null && !strings.contains(i) && !classes.contains(i)) {
+					addDescriptorTypes(utf8[i], types);
+				}
+			}
+		}
+		return types;
+	}
+
+	private static void addDescriptorTypes(String descriptor, Set<String> types) {
+		if (descriptor.indexOf('L') < 0) {
+			return;
+		}
+		Matcher matcher = TYPE_DESCRIPTOR.matcher(descriptor);
+		while (matcher.find()) {
+			types.add(matcher.group(1));
+		}
+	}
+
+	private static String packageOf(String internalName) {
+		int index = internalName.lastIndexOf('/');
+		if (index < 0) {
+			return "";
+		}
+		return internalName.substring(0, index).replace('/', '.');
+	}
+
+	private static String hash(byte[] bytes) {
+		try {
+			return new BigInteger(1, MessageDigest.getInstance("SHA-1").digest(bytes)).toString(16);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+	}
+
+	private static byte[] readAll(InputStream stream) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = stream.read(buffer)) > 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+}
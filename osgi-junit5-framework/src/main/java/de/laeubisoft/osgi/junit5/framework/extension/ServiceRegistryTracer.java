@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.hooks.service.EventListenerHook;
+import org.osgi.framework.hooks.service.FindHook;
+import org.osgi.framework.hooks.service.ListenerHook.ListenerInfo;
+
+import de.laeubisoft.osgi.junit5.framework.services.ServiceRegistryReport;
+
+/**
+ * Traces the calls to the service registry through the service hooks of the
+ * framework, it is registered with the lowest ranking so it sees the lookups
+ * after all other hooks have filtered them
+ */
+class ServiceRegistryTracer implements ServiceRegistryReport, FindHook, EventListenerHook {
+
+	private static final String ANY_SERVICE = "*";
+
+	private final Map<Bundle, Statistics> statistics = new ConcurrentHashMap<>();
+
+	@Override
+	public void find(BundleContext context, String name, String filter, boolean allServices,
+			Collection<ServiceReference<?>> references) {
+		Statistics bundleStatistics = statistics(context);
+		if (bundleStatistics == null) {
+			return;
+		}
+		bundleStatistics.lookups.increment();
+		if (references.isEmpty()) {
+			bundleStatistics.emptyLookups.increment();
+		} else {
+			bundleStatistics.referencesFound.add(references.size());
+		}
+		String service = name != null ? name : filter != null ? filter : ANY_SERVICE;
+		bundleStatistics.lookupsByService.computeIfAbsent(service, key -> new LongAdder()).increment();
+	}
+
+	@Override
+	public void event(ServiceEvent event, Map<BundleContext, Collection<ListenerInfo>> listeners) {
+		for (Map.Entry<BundleContext, Collection<ListenerInfo>> entry : listeners.entrySet()) {
+			Statistics bundleStatistics = statistics(entry.getKey());
+			if (bundleStatistics != null) {
+				bundleStatistics.serviceEvents.add(entry.getValue().size());
+			}
+		}
+	}
+
+	@Override
+	public Stream<BundleServiceUsage> bundles() {
+		return statistics.values().stream().map(BundleServiceUsage.class::cast);
+	}
+
+	@Override
+	public void reset() {
+		statistics.clear();
+	}
+
+	private Statistics statistics(BundleContext context) {
+		Bundle bundle;
+		try {
+			bundle = context.getBundle();
+		} catch (IllegalStateException e) {
+			// the bundle was stopped meanwhile
+			return null;
+		}
+		return statistics.computeIfAbsent(bundle, Statistics::new);
+	}
+
+	private static final class Statistics implements BundleServiceUsage {
+
+		private final Bundle bundle;
+		private final LongAdder lookups = new LongAdder();
+		private final LongAdder emptyLookups = new LongAdder();
+		private final LongAdder referencesFound = new LongAdder();
+		private final LongAdder serviceEvents = new LongAdder();
+		private final Map<String, LongAdder> lookupsByService = new ConcurrentHashMap<>();
+
+		Statistics(Bundle bundle) {
+			this.bundle = bundle;
+		}
+
+		@Override
+		public String getSymbolicName() {
+			String symbolicName = bundle.getSymbolicName();
+			return symbolicName == null ? bundle.getLocation() : symbolicName;
+		}
+
+		@Override
+		public long getLookups() {
+			return lookups.sum();
+		}
+
+		@Override
+		public long getEmptyLookups() {
+			return emptyLookups.sum();
+		}
+
+		@Override
+		public long getReferencesFound() {
+			return referencesFound.sum();
+		}
+
+		@Override
+		public Map<String, Long> getLookupsByService() {
+			return Collections.unmodifiableMap(lookupsByService.entrySet().stream()
+					.collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().sum())));
+		}
+
+		@Override
+		public long getServiceEvents() {
+			return serviceEvents.sum();
+		}
+
+		@Override
+		public int getServicesInUse() {
+			try {
+				ServiceReference<?>[] inUse = bundle.getServicesInUse();
+				return inUse == null ? 0 : inUse.length;
+			} catch (IllegalStateException e) {
+				// the bundle was uninstalled meanwhile
+				return 0;
+			}
+		}
+	}
+
+}
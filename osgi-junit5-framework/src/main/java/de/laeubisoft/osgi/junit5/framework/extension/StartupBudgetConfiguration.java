@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkStartupBudget;
+
+/**
+ * The budget for the time to boot and start a framework
+ * 
+ * @see FrameworkStartupBudget
+ */
+public final class StartupBudgetConfiguration {
+
+	/**
+	 * The startup time is not measured
+	 */
+	static final StartupBudgetConfiguration NONE = new StartupBudgetConfiguration(false, 0, false, null, 0);
+
+	private final boolean enabled;
+	private final long millis;
+	private final boolean failOnExceed;
+	private final String historyFile;
+	private final int percentile;
+
+	StartupBudgetConfiguration(boolean enabled, long millis, boolean failOnExceed, String historyFile,
+			int percentile) {
+		if (enabled && (percentile < 1 || percentile > 100)) {
+			throw new IllegalArgumentException("percentile must be between 1 and 100: " + percentile);
+		}
+		this.enabled = enabled;
+		this.millis = millis;
+		this.failOnExceed = failOnExceed;
+		this.historyFile = historyFile;
+		this.percentile = percentile;
+	}
+
+	/**
+	 * @return <code>true</code> if the startup time of the framework is
+	 *         measured
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return the maximum time in milliseconds to boot and start the framework,
+	 *         only relevant if {@link #isEnabled()}
+	 */
+	public long getMillis() {
+		return millis;
+	}
+
+	/**
+	 * @return <code>true</code> if exceeding the budget fails the test, only
+	 *         relevant if {@link #isEnabled()}
+	 */
+	public boolean isFailOnExceed() {
+		return failOnExceed;
+	}
+
+	/**
+	 * @return the file the startup times are appended to, or an empty optional
+	 *         if they are not recorded
+	 */
+	public Optional<String> getHistoryFile() {
+		return Optional.ofNullable(historyFile);
+	}
+
+	/**
+	 * @return the percentile of previous startup times a startup time must not
+	 *         exceed, only relevant if {@link #getHistoryFile()} is present
+	 */
+	public int getPercentile() {
+		return percentile;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(enabled, millis, failOnExceed, historyFile, percentile);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof StartupBudgetConfiguration)) {
+			return false;
+		}
+		StartupBudgetConfiguration other = (StartupBudgetConfiguration) obj;
+		return enabled == other.enabled && millis == other.millis && failOnExceed == other.failOnExceed
+				&& Objects.equals(historyFile, other.historyFile) && percentile == other.percentile;
+	}
+
+	@Override
+	public String toString() {
+		return "StartupBudgetConfiguration [enabled=" + enabled + ", millis=" + millis + ", failOnExceed="
+				+ failOnExceed + ", historyFile=" + historyFile + ", percentile=" + percentile + "]";
+	}
+}
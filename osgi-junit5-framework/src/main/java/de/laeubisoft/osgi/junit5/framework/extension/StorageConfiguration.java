@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.ReuseFrameworkStorage;
+
+/**
+ * Where the framework keeps its storage and how the content of its bundles is
+ * cached
+ */
+public final class StorageConfiguration {
+
+	/**
+	 * A new storage for every framework and no cache
+	 */
+	static final StorageConfiguration DEFAULT = new StorageConfiguration(null, 0);
+
+	private final String directory;
+	private final long entryCacheSize;
+
+	StorageConfiguration(String directory, long entryCacheSize) {
+		this.directory = directory;
+		this.entryCacheSize = entryCacheSize;
+	}
+
+	/**
+	 * @return the directory of reused framework storages, an empty string for
+	 *         the default one, or an empty optional if the storage is not reused
+	 * @see ReuseFrameworkStorage
+	 */
+	public Optional<String> getDirectory() {
+		return Optional.ofNullable(directory);
+	}
+
+	/**
+	 * @return the size in megabytes of the cache for the class bytes of isolated
+	 *         bundles or <code>0</code> if they are not cached
+	 * @see FrameworkExtension#ENTRY_CACHE_SIZE_PARAMETER
+	 */
+	public long getEntryCacheSize() {
+		return entryCacheSize;
+	}
+
+	/**
+	 * @param directory the directory of reused storages
+	 * @return a copy of this configuration that reuses the storage
+	 */
+	StorageConfiguration reuse(String directory) {
+		return new StorageConfiguration(Objects.requireNonNull(directory), entryCacheSize);
+	}
+
+	/**
+	 * @param entryCacheSize the size in megabytes of the cache
+	 * @return a copy of this configuration with the given cache size
+	 */
+	StorageConfiguration withEntryCacheSize(long entryCacheSize) {
+		return new StorageConfiguration(directory, entryCacheSize);
+	}
+
+	/**
+	 * @param configurationParameters the global configuration parameters
+	 * @return this configuration with the cache size of the configuration
+	 *         parameters if it does not define one
+	 */
+	StorageConfiguration withDefaults(Function<String, Optional<String>> configurationParameters) {
+		if (entryCacheSize != 0) {
+			return this;
+		}
+		Optional<String> size = configurationParameters.apply(FrameworkExtension.ENTRY_CACHE_SIZE_PARAMETER);
+		try {
+			return withEntryCacheSize(size.map(String::trim).map(Long::parseLong).orElse(0L));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("invalid entry cache size: " + size.get(), e);
+		}
+	}
+
+	/**
+	 * @return this configuration without the cache, it is shared by all
+	 *         frameworks of the JVM
+	 */
+	StorageConfiguration getFrameworkPart() {
+		return withEntryCacheSize(0);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(directory, entryCacheSize);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof StorageConfiguration)) {
+			return false;
+		}
+		StorageConfiguration other = (StorageConfiguration) obj;
+		return Objects.equals(directory, other.directory) && entryCacheSize == other.entryCacheSize;
+	}
+
+	@Override
+	public String toString() {
+		return "StorageConfiguration [directory=" + directory + ", entryCacheSize=" + entryCacheSize + "]";
+	}
+}
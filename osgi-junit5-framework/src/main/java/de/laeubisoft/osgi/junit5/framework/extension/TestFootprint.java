@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the locations used while a test class and its tests are running and
+ * persists them together with their modification stamp, so a later run can
+ * find out if a test is affected by a change
+ */
+final class TestFootprint {
+
+	/**
+	 * modification stamps are computed once per JVM
+	 */
+	private static final Map<File, Long> stamps = new ConcurrentHashMap<>();
+	/**
+	 * footprints of the last run, only loaded once per JVM so tests executed in
+	 * this run do not influence the selection
+	 */
+	private static final Map<File, Properties> recorded = new ConcurrentHashMap<>();
+
+	private final File file;
+	private final Set<File> classFiles;
+	/**
+	 * a class is only loaded by the first test using it, so every location used
+	 * since the framework was created is part of the footprint of a test
+	 */
+	private final Set<File> touched = ConcurrentHashMap.newKeySet();
+	private final Map<String, Set<File>> tests = new LinkedHashMap<>();
+	private boolean failed;
+
+	/**
+	 * @param file      the file the footprints are written to
+	 * @param testClass the test class
+	 * @param previous  the footprint of the test class that used the framework
+	 *                  before, or <code>null</code> if the framework is new
+	 */
+	TestFootprint(File file, Class<?> testClass, TestFootprint previous) {
+		this.file = file.getAbsoluteFile();
+		this.classFiles = getClassFiles(testClass);
+		if (previous != null) {
+			touched.addAll(previous.touched);
+		}
+	}
+
+	/**
+	 * Records that the given location was used
+	 * 
+	 * @param location the location
+	 */
+	void touched(File location) {
+		if (location != null) {
+			touched.add(location);
+		}
+	}
+
+	synchronized void endTest(String uniqueId, boolean testFailed) {
+		if (testFailed) {
+			failed = true;
+			tests.put(uniqueId, null);
+		} else {
+			Set<File> locations = new HashSet<>(classFiles);
+			locations.addAll(touched);
+			tests.put(uniqueId, locations);
+		}
+	}
+
+	/**
+	 * Writes the footprints of all tests of the test class, footprints of failed
+	 * tests are removed so they are always executed in the next run
+	 * 
+	 * @param classId the unique id of the test class
+	 * @throws IOException if writing the file fails
+	 */
+	void write(String classId) throws IOException {
+		Map<String, Set<File>> footprints;
+		boolean classFailed;
+		synchronized (this) {
+			footprints = new LinkedHashMap<>(tests);
+			classFailed = failed;
+		}
+		Set<File> union = new HashSet<>(classFiles);
+		union.addAll(touched);
+		File parent = file.getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		synchronized (TestFootprint.class) {
+			File lockFile = new File(file.getPath() + ".lock");
+			try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+				Properties properties = load(file);
+				for (Entry<String, Set<File>> entry : footprints.entrySet()) {
+					if (entry.getValue() == null) {
+						properties.remove(entry.getKey());
+					} else {
+						properties.setProperty(entry.getKey(), format(entry.getValue()).values().stream().sorted()
+								.collect(Collectors.joining("\n")));
+					}
+				}
+				if (classFailed) {
+					properties.remove(classId);
+				} else {
+					// tests skipped in this run keep their footprint and the class must
+					// run if any of them is affected
+					Map<String, String> lines = format(union);
+					for (String key : properties.stringPropertyNames()) {
+						if (key.startsWith(classId + "/") && !footprints.containsKey(key)) {
+							for (String line : properties.getProperty(key).split("\n")) {
+								int index = line.indexOf(' ');
+								if (index > 0) {
+									lines.putIfAbsent(line.substring(index + 1), line);
+								}
+							}
+						}
+					}
+					properties.setProperty(classId,
+							lines.values().stream().sorted().collect(Collectors.joining("\n")));
+				}
+				try (OutputStream stream = Files.newOutputStream(file.toPath())) {
+					properties.store(stream, "OSGi test footprints");
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the lines of the given locations by their path
+	 */
+	private static Map<String, String> format(Set<File> locations) {
+		Map<String, String> lines = new HashMap<>();
+		for (File location : locations) {
+			lines.put(location.getAbsolutePath(), stamp(location) + " " + location.getAbsolutePath());
+		}
+		return lines;
+	}
+
+	/**
+	 * For class folders these are the class files of the test class and of all
+	 * classes of the folder it references (e.g. nested, super and helper
+	 * classes), so changes to unrelated test classes do not affect it, a jar is
+	 * used as a whole
+	 */
+	private static Set<File> getClassFiles(Class<?> testClass) {
+		File location = ProbePackageAnalyzer.getLocation(testClass);
+		if (location == null) {
+			return Collections.emptySet();
+		}
+		if (!location.isDirectory()) {
+			return Collections.singleton(location);
+		}
+		Set<File> classFiles = new HashSet<>();
+		Set<String> seen = new HashSet<>();
+		Deque<String> pending = new ArrayDeque<>();
+		pending.add(testClass.getName().replace('.', '/'));
+		while (!pending.isEmpty()) {
+			File classFile = new File(location, pending.poll() + ".class");
+			if (!classFile.isFile()) {
+				continue;
+			}
+			classFiles.add(classFile);
+			try {
+				for (String type : ProbePackageAnalyzer.parseTypes(Files.readAllBytes(classFile.toPath()))) {
+					if (seen.add(type)) {
+						pending.add(type);
+					}
+				}
+			} catch (IOException e) {
+				// can't tell what it uses
+				return Collections.singleton(location);
+			}
+		}
+		return classFiles;
+	}
+
+	/**
+	 * @param file     the file holding the footprints
+	 * @param uniqueId the unique id of a test or test class
+	 * @return the reason the test must be executed because it is affected by a
+	 *         change or was never recorded, or an empty optional if it is not
+	 *         affected by changes since the last run
+	 */
+	static Optional<String> findChange(File file, String uniqueId) {
+		Properties properties = recorded.computeIfAbsent(file.getAbsoluteFile(), f -> {
+			try {
+				return load(f);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		String footprint = properties.getProperty(uniqueId);
+		if (footprint == null) {
+			return Optional.of("no footprint recorded");
+		}
+		for (String line : footprint.split("\n")) {
+			int index = line.indexOf(' ');
+			if (index < 0) {
+				continue;
+			}
+			File location = new File(line.substring(index + 1));
+			if (!line.substring(0, index).equals(String.valueOf(stamp(location)))) {
+				return Optional.of(location + " has changed");
+			}
+		}
+		return Optional.empty();
+	}
+
+	private static long stamp(File location) {
+		return stamps.computeIfAbsent(location.getAbsoluteFile(), f -> {
+			try {
+				return JUnit5Module.getModificationStamp(f);
+			} catch (IOException e) {
+				// treat it as changed
+				return -1L;
+			}
+		});
+	}
+
+	private static Properties load(File file) throws IOException {
+		Properties properties = new Properties();
+		if (file.isFile()) {
+			try (InputStream stream = Files.newInputStream(file.toPath())) {
+				properties.load(stream);
+			}
+		}
+		return properties;
+	}
+
+}
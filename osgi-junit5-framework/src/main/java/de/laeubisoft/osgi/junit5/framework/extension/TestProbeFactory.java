@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.osgi.framework.Constants;
+
+/**
+ * Creates the test probes of a framework, the packages of the probe are
+ * either configured by the test class or analyzed from its bytecode
+ */
+final class TestProbeFactory {
+
+	private final Set<String> systemPackages = new HashSet<>();
+
+	/**
+	 * @param frameworkModule     the module of the framework implementation if it
+	 *                            is on the classpath
+	 * @param frameworkProperties the properties of the framework
+	 */
+	TestProbeFactory(Optional<JUnit5Module> frameworkModule, Map<String, String> frameworkProperties) {
+		// the framework implementation itself provides the system packages
+		frameworkModule.ifPresent(module -> systemPackages.addAll(getExportedPackages(module)));
+		for (String property : Arrays.asList(Constants.FRAMEWORK_SYSTEMPACKAGES,
+				Constants.FRAMEWORK_SYSTEMPACKAGES_EXTRA)) {
+			HeaderClause.parse(frameworkProperties.getOrDefault(property, ""))
+					.forEach(clause -> systemPackages.addAll(clause.getNames()));
+		}
+	}
+
+	/**
+	 * @param testClass the test class
+	 * @param uniqueId  the unique id of the test class
+	 * @param providers the modules that might provide packages to the probe
+	 * @return the probe module of the test class
+	 */
+	TestProbeModule create(Class<?> testClass, String uniqueId, Collection<JUnit5Module> providers)
+			throws IOException {
+		// the probe is configured by the test class even if the framework is shared
+		FrameworkConfiguration probeConfiguration = FrameworkConfiguration.of(testClass);
+		List<String> additionalPackages = probeConfiguration.getExportedPackages();
+		String name = "test-probe-" + uniqueId;
+		if (probeConfiguration.isAnalyzeProbePackages()) {
+			return analyze(testClass, name, additionalPackages, providers);
+		}
+		return new TestProbeModule(name, testClass.getClassLoader(), additionalPackages, Collections.emptyList());
+	}
+
+	private TestProbeModule analyze(Class<?> testClass, String name, List<String> additionalPackages,
+			Collection<JUnit5Module> providers) throws IOException {
+		ProbePackageAnalyzer analyzer = ProbePackageAnalyzer.analyze(testClass);
+		Set<String> excluded = new HashSet<>();
+		List<String> exports = new ArrayList<>(additionalPackages);
+		HeaderClause.parse(String.join(",", additionalPackages))
+				.forEach(clause -> excluded.addAll(clause.getNames()));
+		for (String pkg : analyzer.getExports()) {
+			if (excluded.add(pkg)) {
+				exports.add(pkg);
+			}
+		}
+		// packages of isolated bundles are never visible to the shared classloader
+		// of the probe
+		Set<String> provided = new HashSet<>(systemPackages);
+		for (JUnit5Module module : providers) {
+			if (module.isUseOSGiLoader()) {
+				excluded.addAll(getExportedPackages(module));
+			} else {
+				provided.addAll(getExportedPackages(module));
+			}
+		}
+		// a package nobody provides is still loaded from the shared classloader, all
+		// others must be wired so the probe sees the classes of the framework
+		List<String> imports = analyzer.getImports(excluded).stream()
+				.map(pkg -> provided.contains(pkg) ? pkg
+						: pkg + ";" + Constants.RESOLUTION_DIRECTIVE + ":=" + Constants.RESOLUTION_OPTIONAL)
+				.collect(Collectors.toList());
+		return new TestProbeModule(name, testClass.getClassLoader(), exports, imports);
+	}
+
+	private static List<String> getExportedPackages(JUnit5Module module) {
+		return module.getHeaders().map(headers -> headers.get(Constants.EXPORT_PACKAGE)).map(HeaderClause::parse)
+				.orElse(Collections.emptyList()).stream().flatMap(clause -> clause.getNames().stream())
+				.collect(Collectors.toList());
+	}
+
+}
@@ -26,11 +26,13 @@ import org.osgi.framework.Constants;
 
 class TestProbeModule extends JUnit5Module {
 
-	public TestProbeModule(String name, ClassLoader classLoader, Collection<String> additionalPackages) {
-		super(name, generateManifest(name, additionalPackages), classLoader, null);
+	public TestProbeModule(String name, ClassLoader classLoader, Collection<String> additionalPackages,
+			Collection<String> importedPackages) {
+		super(name, generateManifest(name, additionalPackages, importedPackages), classLoader, null);
 	}
 
-	private static Map<String, String> generateManifest(String name, Collection<String> additionalPackages) {
+	private static Map<String, String> generateManifest(String name, Collection<String> additionalPackages,
+			Collection<String> importedPackages) {
 		LinkedHashMap<String, String> headers = new LinkedHashMap<>();
 		headers.put("Manifest-Version", "1.0");
 		headers.put(Constants.BUNDLE_MANIFESTVERSION, "2");
@@ -40,6 +42,10 @@ class TestProbeModule extends JUnit5Module {
 			headers.put(Constants.EXPORT_PACKAGE, additionalPackages.stream()
 				.collect(Collectors.joining(",")));
 		}
+		if (!importedPackages.isEmpty()) {
+			headers.put(Constants.IMPORT_PACKAGE, importedPackages.stream()
+				.collect(Collectors.joining(",")));
+		}
 		return headers;
 	}
 
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A CSV file measurements are appended to, the file is shared by all JVMs (e.g.
+ * parallel surefire forks) of a build so writes are guarded by a lock file
+ */
+final class TrendFile {
+
+	private final File file;
+	private final String header;
+
+	/**
+	 * @param file   the file to append to
+	 * @param header the column names written when the file is created
+	 */
+	TrendFile(File file, String... header) {
+		this.file = file.getAbsoluteFile();
+		this.header = String.join(",", header);
+	}
+
+	/**
+	 * Reads all lines written so far
+	 * 
+	 * @return the values of each line without the header
+	 * @throws IOException if reading the file fails
+	 */
+	List<String[]> read() throws IOException {
+		List<String[]> lines = new ArrayList<>();
+		if (!file.isFile()) {
+			return lines;
+		}
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			if (!line.isEmpty() && !line.equals(header)) {
+				lines.add(line.split(","));
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Appends a line of values, values must not contain a comma
+	 * 
+	 * @param values the values of the columns
+	 * @throws IOException if writing the file fails
+	 */
+	void append(Object... values) throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (Object value : values) {
+			if (line.length() > 0) {
+				line.append(',');
+			}
+			line.append(value);
+		}
+		line.append(System.lineSeparator());
+		File parent = file.getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		synchronized (TrendFile.class) {
+			File lockFile = new File(file.getPath() + ".lock");
+			try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+				boolean created = !file.isFile() || file.length() == 0;
+				try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+						StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+					if (created) {
+						writer.write(header);
+						writer.write(System.lineSeparator());
+					}
+					writer.write(line.toString());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.Extension;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolutionException;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.junit.jupiter.api.extension.TestTemplateInvocationContext;
+import org.junit.platform.commons.PreconditionViolationException;
+import org.osgi.framework.launch.Framework;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.EmbeddedFramework;
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkVariant;
+
+/**
+ * The frameworks of all {@link FrameworkVariant variants} of a test class,
+ * they are booted concurrently from a single scan of the classpath and live as
+ * long as the test class
+ */
+final class VariantFrameworks implements CloseableResource {
+
+	private static final AtomicInteger threadCounter = new AtomicInteger();
+
+	private final Map<String, JUnit5ConnectFramework> frameworks;
+
+	private VariantFrameworks(Map<String, JUnit5ConnectFramework> frameworks) {
+		this.frameworks = Collections.unmodifiableMap(frameworks);
+	}
+
+	/**
+	 * @return the frameworks by the name of their variant
+	 */
+	Map<String, JUnit5ConnectFramework> getFrameworks() {
+		return frameworks;
+	}
+
+	/**
+	 * @param context the extension context of a test template method
+	 * @return an invocation for each variant
+	 */
+	Stream<TestTemplateInvocationContext> invocationContexts(ExtensionContext context) {
+		return frameworks.entrySet().stream().map(entry -> new VariantInvocationContext(entry.getKey(),
+				entry.getValue(), context.getDisplayName()));
+	}
+
+	@Override
+	public void close() throws Throwable {
+		Throwable failure = null;
+		for (JUnit5ConnectFramework framework : frameworks.values()) {
+			try {
+				framework.close();
+			} catch (Throwable t) {
+				if (failure == null) {
+					failure = t;
+				} else {
+					failure.addSuppressed(t);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Boots the frameworks of all variants concurrently
+	 * 
+	 * @param testClass               the test class holding the configuration
+	 * @param uniqueId                the unique id of the test class
+	 * @param variants                the configurations of the variants by their
+	 *                                name
+	 * @param configurationParameters global configuration parameters used when
+	 *                                a variant does not configure an item
+	 * @return the started frameworks
+	 * @throws Exception if a framework can not be started
+	 */
+	static VariantFrameworks boot(Class<?> testClass, String uniqueId, Map<String, FrameworkConfiguration> variants,
+			Function<String, Optional<String>> configurationParameters) throws Exception {
+		ClasspathIndex classpath = ClasspathIndex.scan(testClass.getClassLoader());
+		ExecutorService executor = Executors.newFixedThreadPool(variants.size(), runnable -> {
+			Thread thread = new Thread(runnable, "framework-variant-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		Map<String, Future<JUnit5ConnectFramework>> futures = new LinkedHashMap<>();
+		try {
+			for (Entry<String, FrameworkConfiguration> entry : variants.entrySet()) {
+				FrameworkConfiguration configuration = entry.getValue().withDefaults(configurationParameters);
+				String variantId = uniqueId + "/[variant:" + entry.getKey() + "]";
+				// variants must not be shared with other test classes as they run
+				// at the same time
+				futures.put(entry.getKey(), executor.submit(() -> new JUnit5ConnectFramework(testClass, variantId,
+						configuration, null, classpath, false)));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Map<String, JUnit5ConnectFramework> frameworks = new LinkedHashMap<>();
+		List<Throwable> failures = new ArrayList<>();
+		for (Entry<String, Future<JUnit5ConnectFramework>> entry : futures.entrySet()) {
+			try {
+				frameworks.put(entry.getKey(), entry.getValue().get());
+			} catch (ExecutionException e) {
+				failures.add(new PreconditionViolationException(
+						"problem starting framework for variant " + entry.getKey() + ": " + e.getCause(),
+						e.getCause()));
+			}
+		}
+		VariantFrameworks variantFrameworks = new VariantFrameworks(frameworks);
+		if (!failures.isEmpty()) {
+			Throwable failure = failures.get(0);
+			failures.stream().skip(1).forEach(failure::addSuppressed);
+			try {
+				variantFrameworks.close();
+			} catch (Throwable t) {
+				failure.addSuppressed(t);
+			}
+			if (failure instanceof Exception) {
+				throw (Exception) failure;
+			}
+			throw (Error) failure;
+		}
+		return variantFrameworks;
+	}
+
+	private static final class VariantInvocationContext implements TestTemplateInvocationContext {
+
+		private final String name;
+		private final JUnit5ConnectFramework connect;
+		private final String displayName;
+
+		VariantInvocationContext(String name, JUnit5ConnectFramework connect, String displayName) {
+			this.name = name;
+			this.connect = connect;
+			this.displayName = displayName;
+		}
+
+		@Override
+		public String getDisplayName(int invocationIndex) {
+			return "[" + name + "] " + displayName;
+		}
+
+		@Override
+		public List<Extension> getAdditionalExtensions() {
+			return Collections.singletonList(new VariantExtension(connect));
+		}
+	}
+
+	/**
+	 * Provides the framework of a variant to a single invocation of a test
+	 * template
+	 */
+	private static final class VariantExtension implements BeforeEachCallback, AfterEachCallback, ParameterResolver {
+
+		private final JUnit5ConnectFramework connect;
+
+		VariantExtension(JUnit5ConnectFramework connect) {
+			this.connect = connect;
+		}
+
+		@Override
+		public void beforeEach(ExtensionContext context) throws Exception {
+			JUnit5FrameworkUtilHelper.threadHelper.set(connect);
+		}
+
+		@Override
+		public void afterEach(ExtensionContext context) throws Exception {
+			connect.afterTest(context.getUniqueId(), context.getExecutionException().isPresent());
+			JUnit5FrameworkUtilHelper.threadHelper.set(null);
+		}
+
+		@Override
+		public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext)
+				throws ParameterResolutionException {
+			return parameterContext.isAnnotated(EmbeddedFramework.class)
+					&& parameterContext.getParameter().getType() == Framework.class;
+		}
+
+		@Override
+		public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext)
+				throws ParameterResolutionException {
+			return connect.framework;
+		}
+	}
+}
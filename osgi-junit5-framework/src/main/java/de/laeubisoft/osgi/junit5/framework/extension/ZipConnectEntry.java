@@ -17,6 +17,8 @@
  *******************************************************************************/
 package de.laeubisoft.osgi.junit5.framework.extension;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.jar.JarFile;
@@ -26,12 +28,23 @@ import org.osgi.framework.connect.ConnectContent.ConnectEntry;
 
 final class ZipConnectEntry implements ConnectEntry {
 
+	private static final String CLASS_SUFFIX = ".class";
+
 	private ZipEntry	entry;
 	private JarFile		jarFile;
+	private long		jarModified;
 
-	public ZipConnectEntry(JarFile jarFile, ZipEntry entry) {
+	/**
+	 * @param jarFile     the jar containing the entry
+	 * @param entry       the entry
+	 * @param jarModified the modification time of the jar, used to share the
+	 *                    bytes of class files through the {@link EntryBytesCache}
+	 *                    or <code>-1</code> if they should not be shared
+	 */
+	ZipConnectEntry(JarFile jarFile, ZipEntry entry, long jarModified) {
 		this.jarFile = jarFile;
 		this.entry = entry;
+		this.jarModified = jarModified;
 	}
 
 	@Override
@@ -51,7 +64,55 @@ final class ZipConnectEntry implements ConnectEntry {
 
 	@Override
 	public InputStream getInputStream() throws IOException {
+		EntryBytesCache cache = getCache();
+		if (cache != null) {
+			byte[] bytes = cache.get(getKey());
+			if (bytes != null) {
+				return new ByteArrayInputStream(bytes);
+			}
+		}
 		return jarFile.getInputStream(entry);
 	}
 
+	@Override
+	public byte[] getBytes() throws IOException {
+		EntryBytesCache cache = getCache();
+		if (cache == null) {
+			return read();
+		}
+		EntryBytesCache.Key key = getKey();
+		byte[] bytes = cache.get(key);
+		if (bytes == null) {
+			bytes = read();
+			cache.put(key, bytes);
+		}
+		// callers (e.g. weaving hooks) may modify the returned array
+		return bytes.clone();
+	}
+
+	private byte[] read() throws IOException {
+		long size = entry.getSize();
+		try (InputStream stream = jarFile.getInputStream(entry)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 ? (int) size : 4096);
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	private EntryBytesCache getCache() {
+		if (jarModified < 0 || !entry.getName().endsWith(CLASS_SUFFIX)) {
+			return null;
+		}
+		EntryBytesCache cache = EntryBytesCache.get();
+		return cache != null && cache.accepts(entry.getSize()) ? cache : null;
+	}
+
+	private EntryBytesCache.Key getKey() {
+		return new EntryBytesCache.Key(jarFile.getName(), jarModified, entry.getName(), entry.getCrc());
+	}
+
 }
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.services;
+
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Per bundle class loading statistics of an embedded framework, this can be
+ * acquired as a service from an embedded Framework that records class loading.
+ * <p>
+ * Classes are only counted for bundles using an isolated (OSGi managed)
+ * classloader, bundles sharing the classloader with the test only report the
+ * entries looked up through the connect layer.
+ */
+public interface ClassLoadingReport {
+
+	/**
+	 * @return the statistics of all bundles that have loaded classes or looked up
+	 *         entries so far
+	 */
+	Stream<BundleClassLoading> bundles();
+
+	/**
+	 * @param symbolicName the symbolic name of the bundle
+	 * @return the statistics of the given bundle or an empty optional if nothing
+	 *         was recorded for it
+	 */
+	default Optional<BundleClassLoading> bundle(String symbolicName) {
+		return bundles().filter(bundle -> bundle.getSymbolicName().equals(symbolicName)).findFirst();
+	}
+
+	/**
+	 * Prints the statistics ordered by the time spent loading classes to the
+	 * given log consumer
+	 * 
+	 * @param log for each line, this consumer will receive a string
+	 */
+	default void print(Consumer<String> log) {
+		log.accept("============ Class Loading ==================");
+		bundles().sorted(Comparator.comparingLong(BundleClassLoading::getLoadTime)
+				.thenComparingLong(BundleClassLoading::getEntryLookupTime).reversed()).forEachOrdered(bundle -> {
+					log.accept(bundle.getSymbolicName() + " | " + bundle.getClassesLoaded() + " classes in "
+							+ TimeUnit.NANOSECONDS.toMillis(bundle.getLoadTime()) + " ms ("
+							+ TimeUnit.NANOSECONDS.toMillis(bundle.getLockTime()) + " ms blocked) | " + bundle.getEntryLookups() + " entry lookups ("
+							+ bundle.getEntryMisses() + " misses, " + bundle.getCachedEntryMisses() + " cached) in "
+							+ TimeUnit.NANOSECONDS.toMillis(bundle.getEntryLookupTime()) + " ms");
+				});
+	}
+
+	/**
+	 * The class loading statistics of a single bundle
+	 */
+	interface BundleClassLoading {
+
+		/**
+		 * @return the symbolic name of the bundle
+		 */
+		String getSymbolicName();
+
+		/**
+		 * @return the number of classes defined by the bundle classloader
+		 */
+		long getClassesLoaded();
+
+		/**
+		 * @return the total time in nanoseconds spent from reading the class bytes
+		 *         until the class was defined
+		 */
+		long getLoadTime();
+
+		/**
+		 * @return the total time in nanoseconds threads where blocked or waiting
+		 *         (e.g. on classloader locks) while classes of the bundle where
+		 *         loaded, or <code>0</code> if the JVM does not support thread
+		 *         contention monitoring
+		 */
+		long getLockTime();
+
+		/**
+		 * @return the number of entries looked up from the bundle content
+		 */
+		long getEntryLookups();
+
+		/**
+		 * @return the number of entry lookups that did not find an entry
+		 */
+		long getEntryMisses();
+
+		/**
+		 * @return the number of entry misses answered from the cache of missing
+		 *         entries without accessing the bundle content
+		 */
+		long getCachedEntryMisses();
+
+		/**
+		 * @return the total time in nanoseconds spent looking up entries
+		 */
+		long getEntryLookupTime();
+	}
+}
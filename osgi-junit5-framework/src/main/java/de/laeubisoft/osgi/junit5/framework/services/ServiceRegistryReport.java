@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.services;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Per bundle statistics of the calls to the service registry, this can be
+ * acquired as a service from an embedded Framework that traces the service
+ * registry.
+ * <p>
+ * Lookups are recorded for the bundle whose context was used to query the
+ * registry, service events for the bundle whose listeners received them.
+ */
+public interface ServiceRegistryReport {
+
+	/**
+	 * @return the statistics of all bundles that have used the service registry
+	 *         since the framework was started or the report was last reset
+	 */
+	Stream<BundleServiceUsage> bundles();
+
+	/**
+	 * @param symbolicName the symbolic name of the bundle
+	 * @return the statistics of the given bundle or an empty optional if nothing
+	 *         was recorded for it
+	 */
+	default Optional<BundleServiceUsage> bundle(String symbolicName) {
+		return bundles().filter(bundle -> bundle.getSymbolicName().equals(symbolicName)).findFirst();
+	}
+
+	/**
+	 * Discards everything recorded so far, e.g. to only measure the registry
+	 * calls made by the code under test
+	 */
+	void reset();
+
+	/**
+	 * Collects the lookups per service name of all bundles
+	 * 
+	 * @return the total number of lookups per service name
+	 */
+	default Map<String, Long> getLookupsByService() {
+		return bundles().flatMap(bundle -> bundle.getLookupsByService().entrySet().stream())
+				.collect(Collectors.groupingBy(Map.Entry::getKey, Collectors.summingLong(Map.Entry::getValue)));
+	}
+
+	/**
+	 * Prints the statistics ordered by the number of lookups to the given log
+	 * consumer
+	 * 
+	 * @param log for each line, this consumer will receive a string
+	 */
+	default void print(Consumer<String> log) {
+		log.accept("============ Service Registry ================");
+		bundles().sorted(Comparator.comparingLong(BundleServiceUsage::getLookups)
+				.thenComparingLong(BundleServiceUsage::getServiceEvents).reversed()).forEachOrdered(bundle -> {
+					log.accept(bundle.getSymbolicName() + " | " + bundle.getLookups() + " lookups ("
+							+ bundle.getEmptyLookups() + " empty, " + bundle.getReferencesFound()
+							+ " references) | " + bundle.getServiceEvents() + " service events | "
+							+ bundle.getServicesInUse() + " services in use");
+					bundle.getLookupsByService().entrySet().stream()
+							.sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+							.forEachOrdered(entry -> log.accept("\t" + entry.getKey() + ": " + entry.getValue()));
+				});
+	}
+
+	/**
+	 * The service registry statistics of a single bundle
+	 */
+	interface BundleServiceUsage {
+
+		/**
+		 * @return the symbolic name of the bundle
+		 */
+		String getSymbolicName();
+
+		/**
+		 * @return the number of service reference lookups made with the context of
+		 *         the bundle, this includes the lookups made on behalf of the bundle
+		 *         e.g. by service trackers
+		 */
+		long getLookups();
+
+		/**
+		 * @return the number of lookups that did not find any service
+		 */
+		long getEmptyLookups();
+
+		/**
+		 * @return the total number of service references returned by all lookups
+		 */
+		long getReferencesFound();
+
+		/**
+		 * @return the number of lookups per service name, lookups without a name
+		 *         are recorded with their filter or <code>*</code> if they have
+		 *         none
+		 */
+		Map<String, Long> getLookupsByService();
+
+		/**
+		 * @return the number of service events delivered to the listeners of the
+		 *         bundle
+		 */
+		long getServiceEvents();
+
+		/**
+		 * @return the number of services the bundle currently uses (has gotten but
+		 *         not yet released)
+		 */
+		int getServicesInUse();
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.PooledFramework;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithBundle;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithFrameworkImplementation;
+import de.laeubisoft.osgi.junit5.framework.annotations.composites.UseFelixServiceComponentRuntime;
+
+class AnnotationsTest {
+
+	@UseFelixServiceComponentRuntime
+	@WithBundle("base")
+	@WithFrameworkImplementation("felix")
+	static class Base {
+	}
+
+	@WithBundle("first")
+	@WithBundle("second")
+	interface Mixin {
+	}
+
+	@PooledFramework
+	static class Derived extends Base implements Mixin {
+	}
+
+	@WithFrameworkImplementation("equinox")
+	static class Overriding extends Base {
+	}
+
+	@Retention(RetentionPolicy.RUNTIME)
+	@WithFrameworkImplementation("equinox")
+	@interface UseEquinox {
+	}
+
+	@UseEquinox
+	static class Composed {
+	}
+
+	@Test
+	void findsRepeatableAnnotationsInheritedFirst() {
+		assertEquals(Arrays.asList("org.apache.felix.scr", "org.osgi.util.promise", "org.osgi.util.function",
+				"org.osgi.service.component", "base", "first", "second"),
+				Annotations.findRepeatableAnnotations(Derived.class, WithBundle.class).stream()
+						.map(WithBundle::value).collect(Collectors.toList()));
+	}
+
+	@Test
+	void findsMetaPresentAnnotations() {
+		assertEquals("equinox",
+				Annotations.findAnnotation(Composed.class, WithFrameworkImplementation.class).get().value());
+	}
+
+	@Test
+	void findsTheNearestInheritedAnnotation() {
+		assertEquals("felix",
+				Annotations.findAnnotation(Derived.class, WithFrameworkImplementation.class).get().value());
+		assertEquals("equinox",
+				Annotations.findAnnotation(Overriding.class, WithFrameworkImplementation.class).get().value());
+		assertTrue(Annotations.isAnnotated(Derived.class, PooledFramework.class));
+		assertFalse(Annotations.isAnnotated(Base.class, PooledFramework.class));
+	}
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.WithBundle;
+
+class CdsTrainingRunTest {
+
+	@Test
+	void bootsAndStopsTheFrameworkOfEachTestClass() throws IOException, InterruptedException {
+		List<String> lines = train(0, Fixture.class.getName());
+		String output = String.join("\n", lines);
+		assertTrue(lines.stream().anyMatch(line -> line.contains("org.osgi.service.component")), output);
+		assertTrue(lines.stream().anyMatch(line -> line.startsWith("Booted framework for " + Fixture.class.getName())),
+				output);
+	}
+
+	@Test
+	void requiresATestClass() throws IOException, InterruptedException {
+		List<String> lines = train(1);
+		assertTrue(lines.get(0).startsWith("usage: "), () -> String.join("\n", lines));
+	}
+
+	private static List<String> train(int exitValue, String... testClasses) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getAbsolutePath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(CdsTrainingRun.class.getName());
+		command.addAll(Arrays.asList(testClasses));
+		Path output = Files.createTempFile("cds-training", ".log");
+		try {
+			Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(output.toFile())
+					.start();
+			// the JVM only exits if the frameworks left no threads behind
+			assertTrue(process.waitFor(60, TimeUnit.SECONDS), "training run did not finish in time");
+			List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+			assertEquals(exitValue, process.exitValue(), () -> String.join("\n", lines));
+			return lines;
+		} finally {
+			Files.delete(output);
+		}
+	}
+
+	/**
+	 * The test class whose configuration is trained, it declares no tests so it
+	 * is never executed itself
+	 */
+	@WithBundle("org.osgi.service.component")
+	static class Fixture {
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.hooks.weaving.WovenClass;
+import org.osgi.framework.wiring.BundleWiring;
+
+import de.laeubisoft.osgi.junit5.framework.services.ClassLoadingReport.BundleClassLoading;
+
+class ClassLoadingRecorderTest {
+
+	private static final String MODULE = "module";
+
+	@Test
+	void contentionMonitoringIsRestoredWhenTheLastRecorderCloses() {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		assumeTrue(threadMXBean.isThreadContentionMonitoringSupported());
+		boolean before = threadMXBean.isThreadContentionMonitoringEnabled();
+		threadMXBean.setThreadContentionMonitoringEnabled(false);
+		try {
+			ClassLoadingRecorder first = new ClassLoadingRecorder();
+			ClassLoadingRecorder second = new ClassLoadingRecorder();
+			assertTrue(threadMXBean.isThreadContentionMonitoringEnabled());
+			first.close();
+			first.close();
+			assertTrue(threadMXBean.isThreadContentionMonitoringEnabled());
+			second.close();
+			assertEquals(false, threadMXBean.isThreadContentionMonitoringEnabled());
+		} finally {
+			threadMXBean.setThreadContentionMonitoringEnabled(before);
+		}
+	}
+
+	@Test
+	void classesReadButNeverDefinedDoNotLinger() {
+		JUnit5Module module = new JUnit5Module(MODULE, Collections.emptyMap(), getClass().getClassLoader(),
+				new File("."));
+		module.setUseOSGiLoader(true);
+		try (ClassLoadingRecorder recorder = new ClassLoadingRecorder()) {
+			long stale = System.nanoTime() - TimeUnit.SECONDS.toNanos(10);
+			recorder.entryLookup(module, "test/Read.class", true, false, stale);
+			define(recorder, "test.Other");
+			define(recorder, "test.Read");
+			BundleClassLoading loading = recorder.bundle(MODULE).get();
+			assertEquals(2, loading.getClassesLoaded());
+			assertTrue(loading.getLoadTime() < TimeUnit.SECONDS.toNanos(1), "load time includes a stale lookup");
+		}
+	}
+
+	@Test
+	void failedDefinitionsAreNotRecorded() {
+		try (ClassLoadingRecorder recorder = new ClassLoadingRecorder()) {
+			WovenClass wovenClass = wovenClass("test.Failing", WovenClass.DEFINE_FAILED);
+			recorder.weave(wovenClass);
+			recorder.modified(wovenClass);
+			define(recorder, "test.Other");
+			assertEquals(1, recorder.bundle(MODULE).get().getClassesLoaded());
+		}
+	}
+
+	private static void define(ClassLoadingRecorder recorder, String className) {
+		recorder.weave(wovenClass(className, WovenClass.TRANSFORMED));
+		recorder.modified(wovenClass(className, WovenClass.DEFINED));
+	}
+
+	private static WovenClass wovenClass(String className, int state) {
+		Bundle bundle = proxy(Bundle.class, "getSymbolicName", MODULE);
+		BundleWiring wiring = proxy(BundleWiring.class, "getBundle", bundle);
+		return proxy(WovenClass.class, "getClassName", className, "getState", state, "getBundleWiring", wiring);
+	}
+
+	private static <T> T proxy(Class<T> type, Object... methodsAndResults) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (p, method, args) -> {
+			for (int i = 0; i < methodsAndResults.length; i += 2) {
+				if (methodsAndResults[i].equals(method.getName())) {
+					return methodsAndResults[i + 1];
+				}
+			}
+			throw new UnsupportedOperationException(method.getName());
+		}));
+	}
+
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkUtil;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.ConcurrentStress;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithFrameworkProperty;
+
+class ConcurrentStressTest {
+
+	@Test
+	void stressRunsAgainstTheFrameworkOfTheClass() {
+		EngineRunner runner = EngineRunner.run(WithFramework.class, Collections.emptyMap());
+		assertEquals(Collections.emptyList(), runner.getFailure("stress()").map(Collections::singletonList)
+				.orElse(Collections.emptyList()));
+		assertTrue(runner.getReportEntries().containsKey("stressThroughput"), runner.getReportEntries()::toString);
+		assertEquals("2 platform threads x 5 iterations", runner.getReportEntries().get("stressThreads"));
+	}
+
+	@Test
+	void stressWithoutFrameworkFailsWithAClearMessage() {
+		EngineRunner runner = EngineRunner.run(WithoutFramework.class, Collections.emptyMap());
+		String failure = runner.getFailure("stress()").orElseThrow(() -> new AssertionError("stress passed"));
+		assertTrue(failure.contains("requires a framework"), failure);
+		assertTrue(failure.contains(WithoutFramework.class.getName()), failure);
+	}
+
+	@WithFrameworkProperty(property = Constants.FRAMEWORK_STORAGE_CLEAN,
+			value = Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT)
+	static class WithFramework {
+
+		@Test
+		@ConcurrentStress(threads = 2, iterations = 5)
+		void stress() {
+			// the workers see the framework of the test
+			assertNotNull(FrameworkUtil.getBundle(WithFramework.class));
+		}
+	}
+
+	static class WithoutFramework {
+
+		@Test
+		@ConcurrentStress(threads = 2, iterations = 5)
+		void stress() {
+		}
+	}
+}
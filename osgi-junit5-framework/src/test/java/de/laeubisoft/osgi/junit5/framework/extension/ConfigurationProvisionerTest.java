@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.BundleException;
+
+class ConfigurationProvisionerTest {
+
+	@BeforeEach
+	void clearLog() {
+		ProvisioningFixture.log.clear();
+	}
+
+	@Test
+	void configurationsArePresentBeforeOtherBundlesStart() throws Exception {
+		try (TestClasspath classpath = new TestClasspath()
+				.bundle("consumer", "Bundle-Activator: " + ProvisioningFixture.ConsumerActivator.class.getName())
+				.bundle("admin", "Bundle-Activator: " + ProvisioningFixture.AdminActivator.class.getName(),
+						"Provide-Capability: osgi.implementation;osgi.implementation=\"osgi.cm\"")) {
+			// the consumer is declared first, still the admin must start before it
+			FrameworkConfiguration configuration = classpath.configuration()
+					.withBundle("consumer", true, false, false).withBundle("admin", true, false, false)
+					.withConfiguration("my.pid", null, Collections.singletonMap("key", "value")).build();
+			classpath.boot(configuration).shutdown();
+			assertEquals(Arrays.asList("admin started", "updated my.pid[key]", "consumer started"),
+					ProvisioningFixture.log);
+		}
+	}
+
+	@Test
+	void configurationsRequireAConfigurationAdmin() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("consumer",
+				"Bundle-Activator: " + ProvisioningFixture.ConsumerActivator.class.getName())) {
+			FrameworkConfiguration configuration = classpath.configuration()
+					.withBundle("consumer", true, false, false)
+					.withConfiguration("my.pid", null, Collections.singletonMap("key", "value")).build();
+			BundleException exception = assertThrows(BundleException.class, () -> classpath.boot(configuration));
+			assertTrue(exception.getMessage().contains("require a started Configuration Admin"),
+					exception::getMessage);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.jupiter.engine.JupiterTestEngine;
+import org.junit.platform.engine.ConfigurationParameters;
+import org.junit.platform.engine.DiscoveryFilter;
+import org.junit.platform.engine.DiscoverySelector;
+import org.junit.platform.engine.EngineDiscoveryRequest;
+import org.junit.platform.engine.EngineExecutionListener;
+import org.junit.platform.engine.ExecutionRequest;
+import org.junit.platform.engine.TestDescriptor;
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.discovery.DiscoverySelectors;
+import org.junit.platform.engine.reporting.ReportEntry;
+
+/**
+ * Runs the tests of a fixture class with the Jupiter engine and records the
+ * results, so the extension can be tested the way JUnit uses it
+ */
+final class EngineRunner implements EngineExecutionListener {
+
+	private final Map<String, TestExecutionResult> results = new LinkedHashMap<>();
+	private final Map<String, String> reportEntries = new LinkedHashMap<>();
+
+	private EngineRunner() {
+	}
+
+	/**
+	 * @param testClass  the class holding the tests
+	 * @param parameters the configuration parameters of the run
+	 * @return the runner holding the results
+	 */
+	static EngineRunner run(Class<?> testClass, Map<String, String> parameters) {
+		JupiterTestEngine engine = new JupiterTestEngine();
+		Parameters configurationParameters = new Parameters(parameters);
+		DiscoverySelector selector = DiscoverySelectors.selectClass(testClass);
+		TestDescriptor root = engine.discover(new EngineDiscoveryRequest() {
+
+			@Override
+			public <T extends DiscoverySelector> List<T> getSelectorsByType(Class<T> selectorType) {
+				return selectorType.isInstance(selector) ? Collections.singletonList(selectorType.cast(selector))
+						: Collections.emptyList();
+			}
+
+			@Override
+			public <T extends DiscoveryFilter<?>> List<T> getFiltersByType(Class<T> filterType) {
+				return Collections.emptyList();
+			}
+
+			@Override
+			public ConfigurationParameters getConfigurationParameters() {
+				return configurationParameters;
+			}
+		}, UniqueId.forEngine(engine.getId()));
+		EngineRunner runner = new EngineRunner();
+		engine.execute(new ExecutionRequest(root, runner, configurationParameters));
+		return runner;
+	}
+
+	/**
+	 * @param name the display name of a test or container
+	 * @return the result of the test or container
+	 */
+	TestExecutionResult getResult(String name) {
+		TestExecutionResult result = results.get(name);
+		if (result == null) {
+			throw new AssertionError("no result for " + name + " in " + results.keySet());
+		}
+		return result;
+	}
+
+	/**
+	 * @param name the display name of a test or container
+	 * @return the failure message of the test or container, empty if it was
+	 *         successful
+	 */
+	Optional<String> getFailure(String name) {
+		return getResult(name).getThrowable().map(Throwable::getMessage);
+	}
+
+	/**
+	 * @return the values of all published report entries by their key
+	 */
+	Map<String, String> getReportEntries() {
+		return reportEntries;
+	}
+
+	@Override
+	public void executionFinished(TestDescriptor testDescriptor, TestExecutionResult testExecutionResult) {
+		results.put(testDescriptor.getDisplayName(), testExecutionResult);
+	}
+
+	@Override
+	public void reportingEntryPublished(TestDescriptor testDescriptor, ReportEntry entry) {
+		reportEntries.putAll(entry.getKeyValuePairs());
+	}
+
+	private static final class Parameters implements ConfigurationParameters {
+
+		private final Map<String, String> parameters;
+
+		Parameters(Map<String, String> parameters) {
+			this.parameters = parameters;
+		}
+
+		@Override
+		public Optional<String> get(String key) {
+			return Optional.ofNullable(parameters.get(key));
+		}
+
+		@Override
+		public Optional<Boolean> getBoolean(String key) {
+			return get(key).map(Boolean::parseBoolean);
+		}
+
+		@Override
+		@Deprecated
+		public int size() {
+			return parameters.size();
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return parameters.keySet();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.BundleException;
+
+class FrameworkBootVerifierTest {
+
+	private static final String ACTIVATOR = "Bundle-Activator: " + FailingActivator.class.getName();
+
+	@Test
+	void allBootErrorsAreCollected() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("first", ACTIVATOR).bundle("second", ACTIVATOR)
+				.bundle("unresolvable", "Import-Package: does.not.exist")) {
+			FrameworkConfiguration configuration = classpath.configuration().withBundle("first", true, false, false)
+					.withBundle("second", true, false, false).withBundle("unresolvable").failOnBootErrors(true)
+					.build();
+			BundleException exception = assertThrows(BundleException.class, () -> classpath.boot(configuration));
+			String message = exception.getMessage();
+			assertTrue(message.contains("first failed to start: "), message);
+			assertTrue(message.contains("second failed to start: "), message);
+			assertTrue(message.contains("unresolvable can not be resolved: osgi.wiring.package"
+					+ "(osgi.wiring.package=does.not.exist) (missing)"), message);
+			assertEquals(2, exception.getSuppressed().length);
+		}
+	}
+
+	@Test
+	void withoutFailOnBootErrorsOnlyTheFirstFailingStartIsReported() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("first", ACTIVATOR).bundle("second", ACTIVATOR)
+				.bundle("unresolvable", "Import-Package: does.not.exist")) {
+			FrameworkConfiguration configuration = classpath.configuration().withBundle("first", true, false, false)
+					.withBundle("second", true, false, false).withBundle("unresolvable").build();
+			BundleException exception = assertThrows(BundleException.class, () -> classpath.boot(configuration));
+			String message = exception.getMessage();
+			assertFalse(message.contains("second"), message);
+			assertFalse(message.contains("unresolvable"), message);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FrameworkBudgetsTest {
+
+	@Test
+	void exceededMemoryBudgetsAreReported() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("budget")) {
+			// a negative budget is always exceeded, regardless of what the garbage
+			// collector freed meanwhile
+			JUnit5ConnectFramework connect = classpath.boot(
+					classpath.configuration().withBundle("budget").memoryBudget(-1_000_000, false, null).build());
+			List<String> report = new ArrayList<>();
+			String err = captureErr(() -> {
+				try {
+					connect.verifyMemoryBudget(report::add);
+				} finally {
+					connect.shutdown();
+				}
+			});
+			assertEquals(2, report.size(), report.toString());
+			assertTrue(report.get(1).endsWith("exceeds the budget of -1000000MB"), report.get(1));
+			assertEquals("", err);
+		}
+	}
+
+	@Test
+	void concurrentBootsSkipTheMemoryBudget(@TempDir Path directory) throws Exception {
+		Path trendFile = directory.resolve("memory.csv");
+		// would fail if it was verified
+		FrameworkConfiguration configuration = FrameworkConfiguration.builder()
+				.memoryBudget(-1_000_000, true, trendFile.toString()).build();
+		FrameworkBudgets first = new FrameworkBudgets(configuration);
+		FrameworkBudgets second = new FrameworkBudgets(configuration);
+		first.started();
+		second.started();
+		List<String> report = new ArrayList<>();
+		first.verifyMemory(getClass(), "first", report::add);
+		second.verifyMemory(getClass(), "second", report::add);
+		String skipped = "Memory budget skipped as other frameworks booted concurrently";
+		assertEquals(Arrays.asList(skipped, skipped), report);
+		assertFalse(Files.exists(trendFile));
+	}
+
+	@Test
+	void exceededStartupBudgetsAreReported() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("budget")) {
+			JUnit5ConnectFramework connect = classpath
+					.boot(classpath.configuration().withBundle("budget").startupBudget(0, false, null, 90).build());
+			List<String> report = new ArrayList<>();
+			String err = captureErr(() -> {
+				try {
+					connect.verifyStartupBudget(report::add);
+				} finally {
+					connect.shutdown();
+				}
+			});
+			assertEquals(2, report.size(), report.toString());
+			assertTrue(report.get(1).endsWith("exceeds the budget of 0ms"), report.get(1));
+			assertEquals("", err);
+		}
+	}
+
+	@Test
+	void malformedStartupHistoryLinesAreSkipped(@TempDir Path directory) throws Exception {
+		Path historyFile = directory.resolve("startup.csv");
+		String name = getClass().getName();
+		List<String> lines = new ArrayList<>();
+		lines.add("timestamp,class,framework,millis,budget");
+		for (int i = 0; i < 5; i++) {
+			lines.add(i + "," + name + ",fw,0,60000");
+		}
+		lines.add("5," + name + ",fw,12x,60000");
+		Files.write(historyFile, lines);
+		FrameworkBudgets budgets = new FrameworkBudgets(
+				FrameworkConfiguration.builder().startupBudget(60_000, true, historyFile.toString(), 90).build());
+		Thread.sleep(5);
+		budgets.started();
+		List<String> report = new ArrayList<>();
+		budgets.verifyStartup(getClass(), "fw", report::add);
+		// slower than all well formed startups
+		assertEquals(2, report.size(), report.toString());
+		assertTrue(report.get(1).contains("of the last 5 startups"), report.get(1));
+		assertEquals(lines.size() + 1, Files.readAllLines(historyFile).size());
+	}
+
+	@Test
+	void concurrentBootsSkipTheStartupBudget(@TempDir Path directory) throws Exception {
+		Path historyFile = directory.resolve("startup.csv");
+		// would fail if it was verified
+		FrameworkConfiguration configuration = FrameworkConfiguration.builder()
+				.startupBudget(-1, true, historyFile.toString(), 90).build();
+		FrameworkBudgets first = new FrameworkBudgets(configuration);
+		FrameworkBudgets second = new FrameworkBudgets(configuration);
+		first.started();
+		second.started();
+		List<String> report = new ArrayList<>();
+		first.verifyStartup(getClass(), "first", report::add);
+		second.verifyStartup(getClass(), "second", report::add);
+		String skipped = "Startup budget skipped as other frameworks booted concurrently";
+		assertEquals(Arrays.asList(skipped, skipped), report);
+		assertFalse(Files.exists(historyFile));
+	}
+
+	@Test
+	void exceededStartupBudgetsFailIfRequested() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("budget")) {
+			JUnit5ConnectFramework connect = classpath
+					.boot(classpath.configuration().withBundle("budget").startupBudget(0, true, null, 90).build());
+			try {
+				assertThrows(AssertionError.class, () -> connect.verifyStartupBudget(message -> {
+				}));
+			} finally {
+				connect.shutdown();
+			}
+		}
+	}
+
+	private static String captureErr(Verification verification) throws Exception {
+		PrintStream err = System.err;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(output, true));
+		try {
+			verification.verify();
+		} finally {
+			System.setErr(err);
+		}
+		return output.toString();
+	}
+
+	private interface Verification {
+
+		void verify() throws Exception;
+	}
+}
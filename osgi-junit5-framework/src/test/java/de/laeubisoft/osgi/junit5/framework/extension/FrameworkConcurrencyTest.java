@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.BundleException;
+
+class FrameworkConcurrencyTest {
+
+	@Test
+	void activatesBundlesWithTheAvailableProcessorsByDefault() {
+		assertEquals(Runtime.getRuntime().availableProcessors() > 1, isStartLevelActivation(0));
+		assertFalse(isStartLevelActivation(1));
+		assertTrue(isStartLevelActivation(2));
+	}
+
+	@Test
+	void failingActivatorFailsTheBoot() throws Exception {
+		assertActivationFails(1);
+	}
+
+	@Test
+	void failingActivatorFailsTheBootWithTheDefaultThreads() throws Exception {
+		assertActivationFails(0);
+	}
+
+	@Test
+	void failingActivatorFailsTheBootWithStartLevelActivation() throws Exception {
+		assertActivationFails(4);
+	}
+
+	private static void assertActivationFails(int startLevelThreads) throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("failing",
+				"Bundle-Activator: " + FailingActivator.class.getName())) {
+			FrameworkConfiguration configuration = classpath.configuration().withBundle("failing", true, false, false)
+					.withConcurrency(0, startLevelThreads).build();
+			BundleException exception = assertThrows(BundleException.class, () -> classpath.boot(configuration));
+			assertTrue(exception.getMessage().contains("failing"), exception::getMessage);
+		}
+	}
+
+	private static boolean isStartLevelActivation(int startLevelThreads) {
+		return FrameworkConcurrencySettings.of(FrameworkConfiguration.builder().withConcurrency(0, startLevelThreads)
+				.build()).get().isStartLevelActivation();
+	}
+}
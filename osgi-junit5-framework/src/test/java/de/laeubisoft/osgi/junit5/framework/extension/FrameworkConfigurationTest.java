@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkConfiguration.BundleConfiguration;
+import de.laeubisoft.osgi.junit5.framework.extension.FrameworkConfiguration.PidConfiguration;
+
+class FrameworkConfigurationTest {
+
+	@Test
+	void variantsAreCompiledFromTheTestClass() {
+		FrameworkConfiguration configuration = FrameworkConfiguration.of(NestingFixture.Enclosing.class);
+		assertEquals(Arrays.asList("a", "b"), Arrays.asList(configuration.getVariants().keySet().toArray()));
+		FrameworkConfiguration variant = configuration.getVariants().get("a");
+		assertEquals("a", variant.getFrameworkProperties().get("variant"));
+		assertEquals(Collections.singletonList("enclosing"), getBundleNames(variant));
+	}
+
+	@Test
+	void nestedClassesInheritTheConfigurationButNotTheVariants() {
+		FrameworkConfiguration configuration = FrameworkConfiguration.of(NestingFixture.Enclosing.Plain.class);
+		assertTrue(configuration.getVariants().isEmpty());
+		assertEquals(Collections.singletonList("enclosing"), getBundleNames(configuration));
+		assertEquals("enclosing", configuration.getFrameworkProperties().get("level"));
+	}
+
+	@Test
+	void variantsOfNestedClassesReplaceTheEnclosingOnes() {
+		FrameworkConfiguration configuration = FrameworkConfiguration
+				.of(NestingFixture.Enclosing.OwnVariants.class);
+		assertEquals(Collections.singleton("c"), configuration.getVariants().keySet());
+		FrameworkConfiguration variant = configuration.getVariants().get("c");
+		assertEquals("c", variant.getFrameworkProperties().get("variant"));
+		assertEquals("enclosing", variant.getFrameworkProperties().get("level"));
+		assertEquals(Arrays.asList("enclosing", "nested"), getBundleNames(variant));
+	}
+
+	@Test
+	void theEntryCacheSizeIsAConfigurationParameter() throws Exception {
+		FrameworkConfiguration configuration = FrameworkConfiguration.builder().build().withDefaults(
+				name -> FrameworkExtension.ENTRY_CACHE_SIZE_PARAMETER.equals(name) ? Optional.of(" 64 ")
+						: Optional.empty());
+		assertEquals(64, configuration.getStorage().getEntryCacheSize());
+		assertEquals(0, configuration.getFrameworkPart().getStorage().getEntryCacheSize());
+		assertEquals(8, FrameworkConfiguration.builder().entryCacheSize(8).build()
+				.withDefaults(name -> Optional.of("64")).getStorage().getEntryCacheSize());
+		assertThrows(IllegalArgumentException.class, () -> FrameworkConfiguration.builder().build()
+				.withDefaults(name -> Optional.of("many")));
+		EntryBytesCache.reset();
+		try (TestClasspath classpath = new TestClasspath()) {
+			assertNull(EntryBytesCache.get());
+			classpath.boot(classpath.configuration().entryCacheSize(1).build()).shutdown();
+			assertNotNull(EntryBytesCache.get());
+		} finally {
+			// the cache is shared by all tests of the JVM
+			EntryBytesCache.reset();
+		}
+	}
+
+	@Test
+	void everyItemIsBuiltComparedAndCopied() throws Exception {
+		FrameworkConfiguration empty = FrameworkConfiguration.builder().build();
+		for (Field field : FrameworkConfiguration.class.getDeclaredFields()) {
+			if (Modifier.isStatic(field.getModifiers()) || field.getName().equals("hashCode")) {
+				continue;
+			}
+			Field builderField = getField(FrameworkConfiguration.Builder.class, field.getName());
+			FrameworkConfiguration.Builder builder = FrameworkConfiguration.builder();
+			change(builder, builderField);
+			FrameworkConfiguration changed = builder.build();
+			String name = field.getName();
+			assertNotEquals(empty, changed, name);
+			assertNotEquals(empty.hashCode(), changed.hashCode(), name);
+			assertNotEquals(empty.toString(), changed.toString(), name);
+			FrameworkConfiguration copy = FrameworkConfiguration.builder(changed).build();
+			assertEquals(changed, copy, name);
+			field.setAccessible(true);
+			assertEquals(field.get(changed), field.get(copy), name);
+		}
+	}
+
+	@Test
+	void everyItemOfTheSettingsIsCompared() throws Exception {
+		for (Class<?> type : Arrays.asList(ConcurrencyConfiguration.class, StorageConfiguration.class,
+				LeakDetectionConfiguration.class, MemoryBudgetConfiguration.class, StartupBudgetConfiguration.class)) {
+			Constructor<?> constructor = type.getDeclaredConstructors()[0];
+			Class<?>[] parameters = constructor.getParameterTypes();
+			long fields = Arrays.stream(type.getDeclaredFields())
+					.filter(field -> !Modifier.isStatic(field.getModifiers())).count();
+			assertEquals(fields, parameters.length, type.getSimpleName());
+			Object base = constructor.newInstance(values(parameters, -1));
+			assertEquals(base, constructor.newInstance(values(parameters, -1)), type.getSimpleName());
+			for (int i = 0; i < parameters.length; i++) {
+				Object changed = constructor.newInstance(values(parameters, i));
+				String name = type.getSimpleName() + " parameter " + i;
+				assertNotEquals(base, changed, name);
+				assertNotEquals(base.hashCode(), changed.hashCode(), name);
+				assertNotEquals(base.toString(), changed.toString(), name);
+			}
+		}
+	}
+
+	private static Object[] values(Class<?>[] types, int changed) {
+		Object[] values = new Object[types.length];
+		for (int i = 0; i < types.length; i++) {
+			boolean change = i == changed;
+			if (types[i] == boolean.class) {
+				values[i] = change;
+			} else if (types[i] == int.class) {
+				values[i] = change ? 43 : 42;
+			} else if (types[i] == long.class) {
+				values[i] = change ? 43L : 42L;
+			} else if (types[i] == String.class) {
+				values[i] = change ? "changed" : "base";
+			} else {
+				throw new AssertionError("no value for " + types[i]);
+			}
+		}
+		return values;
+	}
+
+	private static Field getField(Class<?> type, String name) {
+		try {
+			Field field = type.getDeclaredField(name);
+			field.setAccessible(true);
+			return field;
+		} catch (NoSuchFieldException e) {
+			throw new AssertionError(type.getSimpleName() + " has no field " + name, e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void change(Object builder, Field field) throws IllegalAccessException {
+		Class<?> type = field.getType();
+		if (type == boolean.class) {
+			field.setBoolean(builder, true);
+		} else if (type == int.class) {
+			field.setInt(builder, 42);
+		} else if (type == long.class) {
+			field.setLong(builder, 42);
+		} else if (type == String.class) {
+			field.set(builder, "changed");
+		} else if (type.getSimpleName().endsWith("Configuration")) {
+			field.set(builder, sample(type));
+		} else if (Map.class.isAssignableFrom(type)) {
+			Type valueType = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[1];
+			((Map<String, Object>) field.get(builder)).put("key", sample(valueType));
+		} else if (List.class.isAssignableFrom(type)) {
+			Type elementType = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+			((List<Object>) field.get(builder)).add(sample(elementType));
+		} else {
+			throw new AssertionError("no sample for " + field);
+		}
+	}
+
+	private static Object sample(Type type) {
+		if (type == String.class) {
+			return "changed";
+		}
+		if (type == BundleConfiguration.class) {
+			return new BundleConfiguration("changed", true, true, true);
+		}
+		if (type == PidConfiguration.class) {
+			return new PidConfiguration("changed", null, Collections.emptyMap());
+		}
+		if (type == FrameworkConfiguration.class) {
+			return FrameworkConfiguration.builder().build();
+		}
+		if (type == ConcurrencyConfiguration.class) {
+			return new ConcurrencyConfiguration(true, 1, 1);
+		}
+		if (type == StorageConfiguration.class) {
+			return new StorageConfiguration("changed", 1);
+		}
+		if (type == LeakDetectionConfiguration.class) {
+			return new LeakDetectionConfiguration(true, true, 1);
+		}
+		if (type == MemoryBudgetConfiguration.class) {
+			return new MemoryBudgetConfiguration(true, 1, true, "changed");
+		}
+		if (type == StartupBudgetConfiguration.class) {
+			return new StartupBudgetConfiguration(true, 1, true, "changed", 1);
+		}
+		throw new AssertionError("no sample for " + type);
+	}
+
+	private static List<String> getBundleNames(FrameworkConfiguration configuration) {
+		return configuration.getBundles().stream().map(BundleConfiguration::getName).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.launch.Framework;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.EmbeddedFramework;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithBundle;
+
+class FrameworkDaemonTest {
+
+	private static final Pattern FRAMEWORK = Pattern.compile("framework@(\\d+)");
+
+	@TempDir
+	Path directory;
+
+	private File stateFile;
+	private FrameworkDaemon daemon;
+	private Thread thread;
+
+	@BeforeEach
+	void startDaemon() throws IOException {
+		stateFile = directory.resolve("daemon.properties").toFile();
+		daemon = new FrameworkDaemon(stateFile);
+		thread = new Thread(() -> {
+			try {
+				daemon.serve();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}, "framework-daemon");
+		thread.start();
+	}
+
+	@AfterEach
+	void stopDaemon() throws IOException, InterruptedException {
+		daemon.close();
+		thread.join(30_000);
+	}
+
+	@Test
+	void rerunsUseTheWarmFramework() throws IOException {
+		String first = run(0, Passing.class);
+		assertTrue(first.contains("Starting a runner"), first);
+		String second = run(0, Passing.class);
+		assertTrue(second.contains("Reusing the warm runner"), second);
+		assertEquals(getFramework(first), getFramework(second), second);
+	}
+
+	@Test
+	void failedTestsFailTheRun() throws IOException {
+		String output = run(1, Failing.class);
+		assertTrue(output.contains("1 tests failed"), output);
+	}
+
+	@Test
+	void requestsRequireTheToken() throws IOException {
+		Properties state = new Properties();
+		try (InputStream stream = Files.newInputStream(stateFile.toPath())) {
+			state.load(stream);
+		}
+		state.setProperty(FrameworkDaemon.TOKEN, "guessed");
+		try (OutputStream stream = Files.newOutputStream(stateFile.toPath())) {
+			state.store(stream, null);
+		}
+		String output = run(2, Passing.class);
+		assertTrue(output.startsWith("Invalid token"), output);
+		assertFalse(output.contains("framework@"), output);
+	}
+
+	@Test
+	void stopEndsTheDaemon() throws IOException, InterruptedException {
+		assertEquals(0, FrameworkDaemonClient.stop(stateFile, new ByteArrayOutputStream()));
+		thread.join(30_000);
+		assertFalse(thread.isAlive());
+		assertFalse(stateFile.exists());
+	}
+
+	private String run(int exitValue, Class<?> testClass) throws IOException {
+		List<String> classpath = Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		int actual = FrameworkDaemonClient.run(stateFile, classpath, Collections.emptyMap(),
+				Collections.singletonList(testClass.getName()), output);
+		String text = new String(output.toByteArray(), StandardCharsets.UTF_8);
+		assertEquals(exitValue, actual, text);
+		return text;
+	}
+
+	private static String getFramework(String output) {
+		Matcher matcher = FRAMEWORK.matcher(output);
+		assertTrue(matcher.find(), output);
+		return matcher.group(1);
+	}
+
+	/**
+	 * Executed by the daemon only, prints the identity of its framework
+	 */
+	@WithBundle("org.osgi.service.component")
+	static class Passing {
+
+		@Test
+		void printFramework(@EmbeddedFramework Framework framework) {
+			System.out.println("framework@" + System.identityHashCode(framework));
+		}
+	}
+
+	/**
+	 * Executed by the daemon only
+	 */
+	static class Failing {
+
+		@Test
+		void failing() {
+			fail("expected");
+		}
+	}
+}
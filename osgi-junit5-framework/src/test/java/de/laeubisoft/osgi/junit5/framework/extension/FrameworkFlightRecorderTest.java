@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class FrameworkFlightRecorderTest {
+
+	private static final String LOOKUP = "de.laeubisoft.osgi.junit5.framework.Lookup";
+
+	@Test
+	void noEventsAreCreatedWithoutRecording() {
+		assertSame(FrameworkFlightRecorder.NOOP, FrameworkFlightRecorder.entry("bundle", "path", "test"));
+		assertSame(FrameworkFlightRecorder.NOOP_LOOKUP, FrameworkFlightRecorder.lookup(getClass()));
+	}
+
+	@Test
+	void lookupsRecordTheBundleAndTestClass(@TempDir Path directory) throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("a")) {
+			JUnit5ConnectFramework framework = classpath.boot(classpath.configuration().build());
+			Class<?> testClass = framework.getTestClass();
+			Path dump = directory.resolve("lookup.jfr");
+			try (Recording recording = new Recording()) {
+				recording.enable(LOOKUP);
+				recording.start();
+				assertEquals(framework.getProbe(), FrameworkUtil.getBundle(testClass));
+				recording.stop();
+				recording.dump(dump);
+			} finally {
+				framework.shutdown();
+			}
+			List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+					.filter(event -> LOOKUP.equals(event.getEventType().getName())).collect(Collectors.toList());
+			assertEquals(1, events.size(), events::toString);
+			RecordedEvent event = events.get(0);
+			assertEquals(testClass.getName(), event.getString("lookupClass"));
+			assertEquals(framework.getProbe().getSymbolicName(), event.getString("bundle"));
+			assertEquals(testClass.getName(), event.getString("testClass"));
+			Files.delete(dump);
+		}
+	}
+
+	@Test
+	void otherBundlesResolveTheTestClassOfTheirFramework() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("a")) {
+			JUnit5ConnectFramework framework = classpath
+					.boot(classpath.configuration().withBundle("a", true, false, false).build());
+			try {
+				Bundle bundle = null;
+				for (Bundle candidate : framework.getFramework().getBundleContext().getBundles()) {
+					if ("a".equals(candidate.getSymbolicName())) {
+						bundle = candidate;
+					}
+				}
+				assertEquals(framework.getTestClass().getName(), JUnit5FrameworkUtilHelper.getTestClassName(bundle));
+			} finally {
+				framework.shutdown();
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.connect.ConnectFrameworkFactory;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.WithFrameworkImplementation;
+
+class FrameworkImplementationBenchmarkTest {
+
+	@Test
+	void selectedImplementationIsTheOnlyOneBenchmarked() {
+		List<ConnectFrameworkFactory> factories = FrameworkImplementationBenchmark
+				.getFactories(FrameworkConfiguration.of(WithEquinox.class));
+		assertEquals(1, factories.size());
+		assertEquals("org.eclipse.osgi.launch.EquinoxFactory", factories.get(0).getClass().getName());
+	}
+
+	@Test
+	void allImplementationsAreBenchmarkedWithoutSelection() {
+		assertEquals(names(FrameworkFactories.getFactories()),
+				names(FrameworkImplementationBenchmark.getFactories(FrameworkConfiguration.of(getClass()))));
+	}
+
+	@Test
+	void bundleLookupsUseAClassOfAnIsolatedBundle() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("isolated", "Import-Package: org.osgi.framework")) {
+			// the isolated bundle defines the class itself
+			Path target = classpath.getLocation("isolated")
+					.resolve(FailingActivator.class.getName().replace('.', '/') + ".class");
+			Files.createDirectories(target.getParent());
+			try (InputStream stream = FailingActivator.class.getResourceAsStream("FailingActivator.class")) {
+				Files.copy(stream, target);
+			}
+			FrameworkConfiguration configuration = classpath.configuration().withBundle("isolated", false, true, false)
+					.build();
+			JUnit5ConnectFramework connect = classpath.boot(configuration);
+			try {
+				Class<?> type = FrameworkImplementationBenchmark.loadIsolatedClass(connect.framework, configuration);
+				assertEquals(FailingActivator.class.getName(), type.getName());
+				assertNotSame(FailingActivator.class, type);
+				assertEquals("isolated", FrameworkUtil.getBundle(type).getSymbolicName());
+				assertTrue(FrameworkImplementationBenchmark.getBundle(type) >= 0);
+			} finally {
+				connect.shutdown();
+			}
+		}
+	}
+
+	@Test
+	void bundleLookupsRequireAnIsolatedBundle() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("shared")) {
+			FrameworkConfiguration configuration = classpath.configuration().withBundle("shared").build();
+			JUnit5ConnectFramework connect = classpath.boot(configuration);
+			try {
+				assertNull(FrameworkImplementationBenchmark.loadIsolatedClass(connect.framework, configuration));
+			} finally {
+				connect.shutdown();
+			}
+		}
+	}
+
+	private static List<String> names(List<ConnectFrameworkFactory> factories) {
+		return factories.stream().map(factory -> factory.getClass().getName()).collect(Collectors.toList());
+	}
+
+	@WithFrameworkImplementation("equinox")
+	static class WithEquinox {
+	}
+
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.connect.ConnectFrameworkFactory;
+import org.osgi.framework.launch.Framework;
+import org.osgi.util.tracker.ServiceTracker;
+
+class FrameworkLauncherTest {
+
+	@Test
+	void launchesWithoutJUnit() throws IOException, InterruptedException {
+		// only the launcher, the OSGi API and the framework implementations
+		Set<String> entries = new LinkedHashSet<>();
+		for (Class<?> type : Arrays.asList(LauncherMain.class, FrameworkLauncher.class, Framework.class,
+				ServiceTracker.class)) {
+			entries.add(location(type));
+		}
+		for (ConnectFrameworkFactory factory : ServiceLoader.load(ConnectFrameworkFactory.class)) {
+			entries.add(location(factory.getClass()));
+		}
+		String classpath = String.join(File.pathSeparator, entries);
+		Path output = Files.createTempFile("launcher", ".log");
+		try {
+			Process process = new ProcessBuilder(
+					new File(System.getProperty("java.home"), "bin" + File.separator + "java").getAbsolutePath(),
+					"-cp", classpath, LauncherMain.class.getName()).redirectErrorStream(true)
+					.redirectOutput(output.toFile()).start();
+			assertTrue(process.waitFor(60, TimeUnit.SECONDS), "launcher did not finish in time");
+			List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+			assertEquals(0, process.exitValue(), () -> String.join("\n", lines));
+			assertTrue(lines.contains("state=" + Bundle.ACTIVE), () -> String.join("\n", lines));
+			assertTrue(lines.contains("property=configured"), () -> String.join("\n", lines));
+			assertTrue(lines.contains("probe=" + Bundle.ACTIVE), () -> String.join("\n", lines));
+		} finally {
+			Files.delete(output);
+		}
+	}
+
+	private static String location(Class<?> type) {
+		try {
+			return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+		} catch (URISyntaxException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleWiring;
+
+class FrameworkLeakDetectorTest {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final List<String> reports = new ArrayList<>();
+
+	@AfterEach
+	void verifyPending() {
+		release.countDown();
+		FrameworkLeakDetector.verifyPending(leaks -> {
+		});
+	}
+
+	@Test
+	void threadsOfTheTestAreNotReported() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("worker")) {
+			JUnit5ConnectFramework connect = classpath.boot(classpath.configuration()
+					.withBundle("worker", true, true, false).detectLeaks(false, 5000).build());
+			connect.reportLeaksTo(reports::add);
+			Thread thread = startThread("test-thread", null);
+			long start = System.currentTimeMillis();
+			connect.close();
+			assertTrue(System.currentTimeMillis() - start < 5000, "waited for an unrelated thread");
+			assertTrue(thread.isAlive());
+			assertTrue(reports.stream().noneMatch(report -> report.contains("test-thread")), reports::toString);
+		}
+	}
+
+	@Test
+	void threadsOfBundlesAreReported() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("worker")) {
+			JUnit5ConnectFramework connect = classpath.boot(classpath.configuration()
+					.withBundle("worker", true, true, false).detectLeaks(false, 200).build());
+			connect.reportLeaksTo(reports::add);
+			Bundle worker = Arrays.stream(connect.getFramework().getBundleContext().getBundles())
+					.filter(bundle -> "worker".equals(bundle.getSymbolicName())).findFirst().get();
+			startThread("bundle-thread", worker.adapt(BundleWiring.class).getClassLoader());
+			connect.close();
+			assertEquals(1, reports.size(), reports::toString);
+			assertTrue(reports.get(0).contains("thread 'bundle-thread'"), reports::toString);
+		}
+	}
+
+	@Test
+	void lastFrameworkIsVerifiedWhenAllTestsHaveFinished() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("worker")) {
+			JUnit5ConnectFramework connect = classpath.boot(classpath.configuration()
+					.withBundle("worker", true, true, false).detectLeaks(true, 200).build());
+			connect.close();
+			// the framework is still reachable through this test
+			assertFalse(connect.getFramework() == null);
+			AssertionError error = assertThrows(AssertionError.class,
+					() -> FrameworkLeakDetector.verifyPending(reports::add));
+			assertTrue(error.getMessage().contains("framework of " + ClasspathAnchor.class.getName()),
+					error::getMessage);
+			assertTrue(reports.isEmpty());
+		}
+	}
+
+	private Thread startThread(String name, ClassLoader contextClassLoader) {
+		Thread thread = new Thread(() -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, name);
+		thread.setDaemon(true);
+		if (contextClassLoader != null) {
+			thread.setContextClassLoader(contextClassLoader);
+		}
+		thread.start();
+		return thread;
+	}
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+
+class FrameworkPoolTest {
+
+	@Test
+	void idleFrameworksAreEvictedLeastRecentlyUsedFirst() throws Exception {
+		try (TestClasspath first = new TestClasspath().bundle("first");
+				TestClasspath second = new TestClasspath().bundle("second")) {
+			JUnit5ConnectFramework evicted = first.boot(first.configuration().withBundle("first").build());
+			JUnit5ConnectFramework kept = second.boot(second.configuration().withBundle("second").build());
+			FrameworkPool.release("evicted", evicted, 1);
+			assertEquals(Bundle.ACTIVE, evicted.getFramework().getState());
+			FrameworkPool.release("kept", kept, 1);
+			assertEquals(Bundle.RESOLVED, evicted.getFramework().getState());
+			assertNull(FrameworkPool.lease("evicted"));
+			assertSame(kept, FrameworkPool.lease("kept"));
+			assertEquals(Bundle.ACTIVE, kept.getFramework().getState());
+			kept.shutdown();
+		}
+	}
+
+	@Test
+	void idleFrameworksAreNoHelpers() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("idle")) {
+			JUnit5ConnectFramework framework = classpath.boot(classpath.configuration().withBundle("idle").build());
+			assertTrue(JUnit5FrameworkUtilHelper.additionalHelpers.contains(framework));
+			FrameworkPool.release("idle", framework, 1);
+			assertFalse(JUnit5FrameworkUtilHelper.additionalHelpers.contains(framework));
+			assertSame(framework, FrameworkPool.lease("idle"));
+			assertTrue(JUnit5FrameworkUtilHelper.additionalHelpers.contains(framework));
+			framework.shutdown();
+			assertFalse(JUnit5FrameworkUtilHelper.additionalHelpers.contains(framework));
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.BundleException;
+
+class FrameworkStorageTest {
+
+	private static final long OUTDATED = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30);
+
+	@TempDir
+	Path parent;
+
+	@Test
+	void freshStorageIsDeletedOnClose() throws IOException {
+		try (FrameworkStorage reusable = FrameworkStorage.acquire(parent.toFile(), "abc")) {
+			FrameworkStorage fresh = FrameworkStorage.acquire(parent.toFile(), "abc");
+			assertFalse(fresh.isReusable());
+			Files.createDirectories(fresh.getDirectory().toPath().resolve("org.eclipse.osgi"));
+			fresh.close();
+			assertFalse(fresh.getDirectory().exists());
+			Files.createDirectories(reusable.getDirectory().toPath());
+		}
+		assertTrue(parent.resolve("osgi-test-abc").toFile().isDirectory());
+	}
+
+	@Test
+	void outdatedStoragesArePruned() throws IOException {
+		File outdated = storage("osgi-test-0dd", true);
+		File recent = storage("osgi-test-4ec", false);
+		File crashed = storage("osgi-test-0dd-123e4567-e89b-12d3-a456-426614174000", true);
+		File unrelated = storage("osgi-test-[engine:junit-jupiter]", true);
+		FrameworkStorage.acquire(parent.toFile(), "abc").close();
+		assertFalse(outdated.exists());
+		assertFalse(crashed.exists());
+		assertTrue(recent.exists());
+		assertTrue(unrelated.exists());
+	}
+
+	@Test
+	void outdatedStoragesInUseAreKept() throws IOException {
+		File outdated = storage("osgi-test-0dd", true);
+		try (FrameworkStorage used = FrameworkStorage.acquire(parent.toFile(), "0dd")) {
+			new File(parent.toFile(), "osgi-test-0dd.lock").setLastModified(OUTDATED);
+			FrameworkStorage.acquire(parent.toFile(), "abc").close();
+			assertTrue(outdated.exists());
+		}
+	}
+
+	@Test
+	void fingerprintChangesWithNestedContent() throws IOException {
+		Path location = Files.createDirectories(parent.resolve("bundle/org/example"));
+		JUnit5Module module = new JUnit5Module("bundle", Collections.emptyMap(), getClass().getClassLoader(),
+				parent.resolve("bundle").toFile());
+		List<JUnit5Module> modules = Collections.singletonList(module);
+		FrameworkConfiguration configuration = FrameworkConfiguration.builder().build();
+		String before = FrameworkStorage.fingerprint(configuration, modules);
+		long rootModified = parent.resolve("bundle").toFile().lastModified();
+		Files.write(location.resolve("Example.class"), new byte[] { 1 });
+		parent.resolve("bundle").toFile().setLastModified(rootModified);
+		assertNotEquals(before, FrameworkStorage.fingerprint(configuration, modules));
+	}
+
+	@Test
+	void failedBootReleasesTheStorage() throws Exception {
+		try (TestClasspath classpath = new TestClasspath().bundle("failing",
+				"Bundle-Activator: " + FailingActivator.class.getName())) {
+			int helpers = JUnit5FrameworkUtilHelper.additionalHelpers.size();
+			FrameworkConfiguration configuration = FrameworkConfiguration.builder().reuseStorage(parent.toString())
+					.withBundle("failing", true, false, false).build();
+			assertThrows(BundleException.class, () -> classpath.boot(configuration));
+			assertEquals(helpers, JUnit5FrameworkUtilHelper.additionalHelpers.size());
+			List<Path> locks;
+			try (Stream<Path> files = Files.list(parent)) {
+				locks = files.filter(file -> file.getFileName().toString().endsWith(".lock"))
+						.collect(Collectors.toList());
+			}
+			assertEquals(1, locks.size(), locks::toString);
+			// the storage can be used by the next framework with the same fingerprint
+			try (FileChannel channel = FileChannel.open(locks.get(0), StandardOpenOption.WRITE);
+					FileLock lock = channel.tryLock()) {
+				assertNotNull(lock);
+			}
+		}
+	}
+
+	private File storage(String name, boolean outdated) throws IOException {
+		File directory = Files.createDirectories(parent.resolve(name).resolve("org.eclipse.osgi")).toFile()
+				.getParentFile();
+		File lockFile = new File(parent.toFile(), name + ".lock");
+		lockFile.createNewFile();
+		if (outdated) {
+			directory.setLastModified(OUTDATED);
+			lockFile.setLastModified(OUTDATED);
+		}
+		return directory;
+	}
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.Constants;
+
+class JUnit5ModuleTest {
+
+	@TempDir
+	Path root;
+
+	private JUnit5Module module;
+	private File directory;
+
+	@BeforeEach
+	void openModule() throws IOException {
+		directory = Files.createDirectory(root.resolve("OSGI-INF")).toFile();
+		module = new JUnit5Module("module", Collections.emptyMap(), getClass().getClassLoader(), root.toFile());
+		module.open();
+	}
+
+	@Test
+	void missesAreCachedUntilTheDirectoryChanges() throws IOException {
+		age(directory);
+		assertFalse(module.getEntry("OSGI-INF/component.xml").isPresent());
+		assertFalse(module.getEntry("OSGI-INF/component.xml").isPresent());
+		assertEquals(1, getCachedMisses());
+		Files.write(directory.toPath().resolve("component.xml"), new byte[0]);
+		module.revalidateMissingEntries();
+		assertTrue(module.getEntry("OSGI-INF/component.xml").isPresent());
+		assertEquals(1, getCachedMisses());
+		assertEquals(1, module.getEntryHits());
+		assertEquals(2, module.getEntryMisses());
+	}
+
+	@Test
+	void missesOfRecentlyModifiedDirectoriesAreNotCached() {
+		assertFalse(module.getEntry("OSGI-INF/component.xml").isPresent());
+		assertFalse(module.getEntry("OSGI-INF/component.xml").isPresent());
+		assertEquals(0, getCachedMisses());
+	}
+
+	@Test
+	void missesOfMissingDirectoriesAreCachedUntilTheParentChanges() throws IOException {
+		age(root.toFile());
+		assertFalse(module.getEntry("META-INF/services/missing").isPresent());
+		assertFalse(module.getEntry("META-INF/services/missing").isPresent());
+		assertEquals(1, getCachedMisses());
+		Path services = Files.createDirectories(root.resolve("META-INF/services"));
+		Files.write(services.resolve("missing"), new byte[0]);
+		module.revalidateMissingEntries();
+		assertTrue(module.getEntry("META-INF/services/missing").isPresent());
+	}
+
+	@Test
+	void leastRecentlyUsedMissesAreForgottenFirst() {
+		age(directory);
+		for (int i = 0; i < 1024; i++) {
+			module.getEntry("OSGI-INF/" + i + ".xml");
+		}
+		module.getEntry("OSGI-INF/0.xml");
+		module.getEntry("OSGI-INF/1024.xml");
+		assertEquals(1, getCachedMisses());
+		module.getEntry("OSGI-INF/0.xml");
+		assertEquals(2, getCachedMisses());
+		module.getEntry("OSGI-INF/1.xml");
+		assertEquals(2, getCachedMisses());
+	}
+
+	@Test
+	void entriesOfDirectoriesAreRelativeToTheLocation() throws IOException {
+		Files.write(directory.toPath().resolve("component.xml"), new byte[0]);
+		List<String> entries = new ArrayList<>();
+		module.getEntries().forEach(entries::add);
+		Collections.sort(entries);
+		assertEquals(Arrays.asList("OSGI-INF/", "OSGI-INF/component.xml"), entries);
+		assertTrue(module.getEntry(entries.get(1)).isPresent());
+	}
+
+	@Test
+	void manifestOfRebuiltJarIsReadAgain() throws IOException {
+		Path jar = root.resolve("bundle.jar");
+		URL manifest = new URL("jar:" + jar.toUri() + "!/" + JarFile.MANIFEST_NAME);
+		writeJar(jar, "1.0.0");
+		assertEquals("1.0.0", getVersion(manifest));
+		writeJar(jar, "2.0.0");
+		assertEquals("2.0.0", getVersion(manifest));
+	}
+
+	private String getVersion(URL manifest) {
+		// keep the jar file open like a classloader would do
+		try (InputStream stream = manifest.openStream()) {
+			return JUnit5ConnectFramework.getModule(manifest, getClass().getClassLoader()).getHeaders()
+					.map(headers -> headers.get(Constants.BUNDLE_VERSION)).orElse(null);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void writeJar(Path jar, String version) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, "bundle");
+		manifest.getMainAttributes().putValue(Constants.BUNDLE_VERSION, version);
+		Path file = Files.createTempFile(jar.getParent(), "bundle", ".jar");
+		try (JarOutputStream stream = new JarOutputStream(Files.newOutputStream(file), manifest)) {
+			stream.putNextEntry(new JarEntry("content/" + version));
+		}
+		Files.move(file, jar, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private long getCachedMisses() {
+		return module.getCachedEntryMisses();
+	}
+
+	private static void age(File file) {
+		assertTrue(file.setLastModified(System.currentTimeMillis() - 60_000));
+	}
+}
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import org.osgi.framework.launch.Framework;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.WithFrameworkProperty;
+
+/**
+ * Boots a framework with the {@link FrameworkLauncher} in a JVM without JUnit
+ */
+@WithFrameworkProperty(property = "launcher.test", value = "configured")
+public class LauncherMain {
+
+	public static void main(String[] args) throws Exception {
+		try {
+			Class.forName("org.junit.platform.commons.PreconditionViolationException");
+			throw new IllegalStateException("JUnit must not be on the classpath");
+		} catch (ClassNotFoundException e) {
+			// expected
+		}
+		try (FrameworkLauncher launcher = FrameworkLauncher.launch(LauncherMain.class)) {
+			Framework framework = launcher.getFramework();
+			System.out.println("state=" + framework.getState());
+			System.out.println("property=" + framework.getBundleContext().getProperty("launcher.test"));
+			System.out.println("probe=" + launcher.getBundleContext().getBundle().getState());
+		}
+	}
+}
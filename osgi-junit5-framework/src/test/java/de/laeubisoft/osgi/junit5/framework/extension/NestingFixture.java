@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import org.junit.jupiter.api.Nested;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.FrameworkVariant;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithBundle;
+import de.laeubisoft.osgi.junit5.framework.annotations.WithFrameworkProperty;
+
+/**
+ * Test classes whose configurations are compiled, they declare no tests so they
+ * are never executed themselves
+ */
+final class NestingFixture {
+
+	private NestingFixture() {
+	}
+
+	@WithBundle("enclosing")
+	@WithFrameworkProperty(property = "level", value = "enclosing")
+	@FrameworkVariant(name = "a", properties = "variant=a")
+	@FrameworkVariant(name = "b", properties = "variant=b")
+	static class Enclosing {
+
+		@Nested
+		class Plain {
+		}
+
+		@Nested
+		@WithBundle("nested")
+		@FrameworkVariant(name = "c", properties = "variant=c")
+		class OwnVariants {
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.Constants;
+
+import de.laeubisoft.osgi.junit5.framework.annotations.AnalyzeProbePackages;
+
+class ProbePackageAnalyzerTest {
+
+	@TempDir
+	Path location;
+
+	@Test
+	void locationIsAnalyzedAgainWhenItChanges() throws Exception {
+		copyClass(ClasspathAnchor.class);
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { location.toUri().toURL() }, null)) {
+			Class<?> anchor = classLoader.loadClass(ClasspathAnchor.class.getName());
+			ProbePackageAnalyzer analyzer = ProbePackageAnalyzer.analyze(anchor);
+			assertSame(analyzer, ProbePackageAnalyzer.analyze(anchor));
+			assertFalse(analyzer.getImports(Collections.emptySet()).contains("org.osgi.framework"));
+			copyClass(FailingActivator.class);
+			ProbePackageAnalyzer changed = ProbePackageAnalyzer.analyze(anchor);
+			assertNotSame(analyzer, changed);
+			assertTrue(changed.getImports(Collections.emptySet()).contains("org.osgi.framework"));
+		}
+	}
+
+	@Test
+	void importsAreOnlyOptionalWithoutProvider() throws Exception {
+		try (TestClasspath classpath = new TestClasspath()) {
+			JUnit5ConnectFramework connect = new JUnit5ConnectFramework(AnalyzedProbe.class, "analyzed-probe",
+					classpath.configuration().build(), null);
+			try {
+				Map<String, HeaderClause> imports = HeaderClause
+						.parse(connect.getProbe().getHeaders().get(Constants.IMPORT_PACKAGE)).stream()
+						.collect(Collectors.toMap(clause -> clause.getNames().get(0), Function.identity()));
+				// provided by the framework
+				assertNull(imports.get("org.osgi.framework").getDirective(Constants.RESOLUTION_DIRECTIVE));
+				// no bundle of the framework provides it
+				assertEquals(Constants.RESOLUTION_OPTIONAL,
+						imports.get("org.junit.jupiter.api").getDirective(Constants.RESOLUTION_DIRECTIVE));
+			} finally {
+				connect.close();
+			}
+		}
+	}
+
+	@AnalyzeProbePackages
+	static final class AnalyzedProbe {
+	}
+
+	private void copyClass(Class<?> type) throws IOException {
+		String resource = type.getName().replace('.', '/') + ".class";
+		Path file = location.resolve(resource);
+		Files.createDirectories(file.getParent());
+		try (InputStream stream = type.getClassLoader().getResourceAsStream(resource)) {
+			Files.copy(stream, file);
+		}
+	}
+}
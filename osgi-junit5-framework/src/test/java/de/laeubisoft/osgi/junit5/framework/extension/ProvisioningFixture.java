@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+/**
+ * Activators of bundles that provide a Configuration Admin or consume its
+ * configurations, both record what happened in the same log
+ */
+final class ProvisioningFixture {
+
+	static final List<String> log = new CopyOnWriteArrayList<>();
+
+	private ProvisioningFixture() {
+	}
+
+	/**
+	 * Registers a Configuration Admin that logs all updates
+	 */
+	public static final class AdminActivator implements BundleActivator, ConfigurationAdmin {
+
+		@Override
+		public void start(BundleContext context) throws Exception {
+			log.add("admin started");
+			context.registerService(ConfigurationAdmin.class, this, null);
+		}
+
+		@Override
+		public void stop(BundleContext context) throws Exception {
+		}
+
+		@Override
+		public Configuration getConfiguration(String pid, String location) {
+			return (Dictionary<String, ?> properties) -> log
+					.add("updated " + pid + Collections.list(properties.keys()));
+		}
+	}
+
+	/**
+	 * Logs its start, a consumer must only start once its configuration is
+	 * present
+	 */
+	public static final class ConsumerActivator implements BundleActivator {
+
+		@Override
+		public void start(BundleContext context) throws Exception {
+			log.add("consumer started");
+		}
+
+		@Override
+		public void stop(BundleContext context) throws Exception {
+		}
+	}
+}
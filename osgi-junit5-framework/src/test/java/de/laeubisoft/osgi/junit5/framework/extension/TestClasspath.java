@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+import org.osgi.framework.Constants;
+
+/**
+ * A classpath of bundles created by a test, the bundles only consist of their
+ * manifest and share the classes of the test classpath (e.g. their activator)
+ */
+final class TestClasspath implements AutoCloseable {
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	private final Path root;
+	private final List<URL> urls = new ArrayList<>();
+	private AnchorClassLoader classLoader;
+
+	TestClasspath() throws IOException {
+		root = Files.createTempDirectory("osgi-test-classpath");
+	}
+
+	/**
+	 * Adds a bundle to the classpath
+	 * 
+	 * @param symbolicName the symbolic name of the bundle
+	 * @param headers      additional headers of the form <code>name: value</code>
+	 * @return this classpath
+	 */
+	TestClasspath bundle(String symbolicName, String... headers) throws IOException {
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+		attributes.putValue(Constants.BUNDLE_SYMBOLICNAME, symbolicName);
+		for (String header : headers) {
+			int index = header.indexOf(':');
+			attributes.putValue(header.substring(0, index).trim(), header.substring(index + 1).trim());
+		}
+		Path location = root.resolve(symbolicName);
+		Path file = location.resolve(JarFile.MANIFEST_NAME);
+		Files.createDirectories(file.getParent());
+		try (OutputStream stream = Files.newOutputStream(file)) {
+			manifest.write(stream);
+		}
+		urls.add(location.toUri().toURL());
+		return this;
+	}
+
+	/**
+	 * @param symbolicName the symbolic name of a bundle of this classpath
+	 * @return the location of the bundle
+	 */
+	Path getLocation(String symbolicName) {
+		return root.resolve(symbolicName);
+	}
+
+	/**
+	 * @return a class whose classloader sees the bundles of this classpath, it
+	 *         takes the role of the test class
+	 */
+	Class<?> anchor() throws ClassNotFoundException {
+		if (classLoader == null) {
+			classLoader = new AnchorClassLoader(urls.toArray(new URL[0]), TestClasspath.class.getClassLoader());
+		}
+		return classLoader.loadClass(ClasspathAnchor.class.getName());
+	}
+
+	/**
+	 * @return a builder for a configuration whose framework storage is part of
+	 *         this classpath
+	 */
+	FrameworkConfiguration.Builder configuration() {
+		return FrameworkConfiguration.builder()
+				.withFrameworkProperty(Constants.FRAMEWORK_STORAGE, root.resolve("storage").toString())
+				.withFrameworkProperty(Constants.FRAMEWORK_STORAGE_CLEAN,
+						Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT);
+	}
+
+	/**
+	 * @param configuration the configuration of the framework
+	 * @return a started framework for the bundles of this classpath
+	 */
+	JUnit5ConnectFramework boot(FrameworkConfiguration configuration) throws Exception {
+		return new JUnit5ConnectFramework(anchor(), "classpath-" + counter.incrementAndGet(), configuration, null);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (classLoader != null) {
+			classLoader.close();
+		}
+		try (Stream<Path> files = Files.walk(root)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	/**
+	 * Defines the {@link ClasspathAnchor} itself so it belongs to this classpath
+	 */
+	private static final class AnchorClassLoader extends URLClassLoader {
+
+		AnchorClassLoader(URL[] urls, ClassLoader parent) {
+			super(urls, parent);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!name.equals(ClasspathAnchor.class.getName())) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> anchor = findLoadedClass(name);
+				if (anchor == null) {
+					String resource = name.replace('.', '/') + ".class";
+					try (InputStream stream = getParent().getResourceAsStream(resource)) {
+						byte[] bytes = readAll(stream);
+						anchor = defineClass(name, bytes, 0, bytes.length);
+					} catch (IOException e) {
+						throw new ClassNotFoundException(name, e);
+					}
+				}
+				return anchor;
+			}
+		}
+
+		private static byte[] readAll(InputStream stream) throws IOException {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			int read;
+			while ((read = stream.read(chunk)) > 0) {
+				buffer.write(chunk, 0, read);
+			}
+			return buffer.toByteArray();
+		}
+	}
+}
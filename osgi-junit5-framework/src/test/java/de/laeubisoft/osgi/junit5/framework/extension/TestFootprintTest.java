@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) Läubisoft GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+package de.laeubisoft.osgi.junit5.framework.extension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TestFootprintTest {
+
+	private static final String CLASS_ID = "[engine:junit-jupiter]/[class:FootprintSubject]";
+	private static final String TEST_A = CLASS_ID + "/[method:a()]";
+	private static final String TEST_B = CLASS_ID + "/[method:b()]";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void recordsTheClassFilesUsedByTheTestClass() throws IOException {
+		File file = directory.resolve("footprints.properties").toFile();
+		TestFootprint footprint = new TestFootprint(file, FootprintSubject.class, null);
+		footprint.endTest(TEST_A, false);
+		footprint.write(CLASS_ID);
+		String classFootprint = load(file).getProperty(CLASS_ID);
+		assertTrue(classFootprint.contains(File.separator + "FootprintSubject.class"), classFootprint);
+		assertTrue(classFootprint.contains(File.separator + "FootprintHelper.class"), classFootprint);
+		assertFalse(classFootprint.contains(File.separator + "TestFootprintTest.class"), classFootprint);
+		assertFalse(TestFootprint.findChange(file, TEST_A).isPresent());
+		// a change of the helper must select the test again
+		File changed = directory.resolve("changed.properties").toFile();
+		Properties properties = load(file);
+		properties.setProperty(TEST_A, Arrays.stream(properties.getProperty(TEST_A).split("\n"))
+				.map(line -> line.endsWith("FootprintHelper.class") ? "0" + line.substring(line.indexOf(' ')) : line)
+				.collect(Collectors.joining("\n")));
+		store(properties, changed);
+		Optional<String> change = TestFootprint.findChange(changed, TEST_A);
+		assertTrue(change.isPresent());
+		assertTrue(change.get().contains("FootprintHelper.class"), change.get());
+	}
+
+	@Test
+	void laterTestsIncludeLocationsUsedBefore() throws IOException {
+		File file = directory.resolve("footprints.properties").toFile();
+		File bundle = Files.createFile(directory.resolve("bundle.jar")).toFile();
+		TestFootprint footprint = new TestFootprint(file, FootprintSubject.class, null);
+		footprint.touched(bundle);
+		footprint.endTest(TEST_A, false);
+		// the classes of the bundle are already loaded
+		footprint.endTest(TEST_B, false);
+		footprint.write(CLASS_ID);
+		Properties properties = load(file);
+		assertTrue(properties.getProperty(TEST_A).contains(bundle.getAbsolutePath()));
+		assertTrue(properties.getProperty(TEST_B).contains(bundle.getAbsolutePath()));
+	}
+
+	@Test
+	void skippedTestsKeepTheirFootprintInTheClass() throws IOException {
+		File file = directory.resolve("footprints.properties").toFile();
+		File bundle = Files.createFile(directory.resolve("bundle.jar")).toFile();
+		TestFootprint first = new TestFootprint(file, FootprintSubject.class, null);
+		first.endTest(TEST_B, false);
+		first.touched(bundle);
+		first.endTest(TEST_A, false);
+		first.write(CLASS_ID);
+		// only b is selected in the next run
+		TestFootprint second = new TestFootprint(file, FootprintSubject.class, null);
+		second.endTest(TEST_B, false);
+		second.write(CLASS_ID);
+		Properties properties = load(file);
+		assertFalse(properties.getProperty(TEST_B).contains(bundle.getAbsolutePath()));
+		assertTrue(properties.getProperty(TEST_A).contains(bundle.getAbsolutePath()));
+		assertTrue(properties.getProperty(CLASS_ID).contains(bundle.getAbsolutePath()));
+		assertEquals(1, Arrays.stream(properties.getProperty(CLASS_ID).split("\n"))
+				.filter(line -> line.endsWith(bundle.getAbsolutePath())).count());
+	}
+
+	@Test
+	void failedTestsAreAlwaysSelected() throws IOException {
+		File file = directory.resolve("footprints.properties").toFile();
+		TestFootprint footprint = new TestFootprint(file, FootprintSubject.class, null);
+		footprint.endTest(TEST_A, false);
+		footprint.endTest(TEST_B, true);
+		footprint.write(CLASS_ID);
+		Properties properties = load(file);
+		assertNull(properties.getProperty(CLASS_ID));
+		assertNull(properties.getProperty(TEST_B));
+		assertTrue(TestFootprint.findChange(file, TEST_B).isPresent());
+		assertFalse(TestFootprint.findChange(file, TEST_A).isPresent());
+	}
+
+	private static Properties load(File file) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream stream = Files.newInputStream(file.toPath())) {
+			properties.load(stream);
+		}
+		return properties;
+	}
+
+	private static void store(Properties properties, File file) throws IOException {
+		try (OutputStream stream = Files.newOutputStream(file.toPath())) {
+			properties.store(stream, null);
+		}
+	}
+}